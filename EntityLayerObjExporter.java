@@ -1,8 +1,20 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.io.UTFDataFormatException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationHandler;
@@ -10,24 +22,56 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
@@ -38,75 +82,192 @@ public final class EntityLayerObjExporter {
     }
 
     public static void main(String[] args) throws Exception {
-        Config config = Config.parse(args);
+        final Config config = Config.parse(args);
         Files.createDirectories(config.outputDir);
 
-        ReflectionContext ctx = new ReflectionContext();
+        if (config.mergeShards > 0) {
+            if (ShardManifest.merge(config.outputDir, config.mergeShards) > 0) {
+                System.exit(2);
+            }
+            return;
+        }
+
+        final ReflectionContext ctx = new ReflectionContext();
 
         ctx.initializeGameData();
         Map<Object, Object> roots = ctx.createRoots();
-        Object entityModelSet = ctx.createEntityModelSet(roots);
-        RuntimeOrientationResolver orientationResolver = RuntimeOrientationResolver.create(ctx, config.clientJarPath);
+        final Object entityModelSet = ctx.createEntityModelSet(roots);
 
         List<Object> locations = new ArrayList<Object>(roots.keySet());
+        if (!config.locationFilter.isEmpty()) {
+            locations.removeIf(location -> !config.locationFilter.matches(String.valueOf(location)));
+            System.out.printf(Locale.ROOT, "Selected %d of %d model layer locations%n", locations.size(), roots.size());
+        }
         locations.sort(Comparator.comparing(Object::toString));
 
+        ShardManifest shardManifest = null;
+        if (config.shard.isSharded()) {
+            shardManifest = new ShardManifest(config.shard, locations, ShardManifest.runIdentity(config));
+            locations.removeIf(location -> !config.shard.owns(String.valueOf(location)));
+            System.out.printf(Locale.ROOT, "Shard %s: %d of %d locations%n", config.shard, locations.size(), shardManifest.total);
+        }
+
+        Path journalPath = shardManifest != null ? config.shard.journalPath(config.outputDir) : config.outputDir.resolve(ExportJournal.FILE_NAME);
+        final ExportJournal journal = ExportJournal.open(journalPath, config.outputSignature(), config.resume);
+        int resumed = 0;
+        if (config.resume) {
+            List<Object> pendingLocations = new ArrayList<Object>(locations.size());
+            for (Object location : locations) {
+                String key = String.valueOf(location);
+                if (journal.isIntact(key)) {
+                    resumed++;
+                    if (shardManifest != null) {
+                        shardManifest.record(key, "resumed");
+                    }
+                } else {
+                    pendingLocations.add(location);
+                }
+            }
+            System.out.printf(Locale.ROOT, "Resume: %d of %d locations already complete in %s%n", resumed, locations.size(), journalPath.getFileName());
+            locations = pendingLocations;
+        }
+
+        Set<String> selectedKeys = null;
+        if (!config.locationFilter.isEmpty() || shardManifest != null || resumed > 0) {
+            selectedKeys = new HashSet<String>();
+            for (Object location : locations) {
+                selectedKeys.add(String.valueOf(location));
+            }
+        }
+
         int exported = 0;
         int failed = 0;
-        int index = 0;
         int extractedTextures = 0;
 
+        ExportManifest previousManifest = null;
+        ExportManifest manifest = null;
+        if (config.incremental) {
+            previousManifest = ExportManifest.load(config.outputDir.resolve(ExportManifest.FILE_NAME));
+            manifest = new ExportManifest();
+        } else if (shardManifest != null) {
+            previousManifest = new ExportManifest();
+            manifest = new ExportManifest();
+        }
+
+        JarIndex jarIndex = null;
         TextureResolver textureResolver = null;
+        ExecutorService executor = null;
         try {
+            LocationCatalog locationCatalog = new LocationCatalog(ctx);
+            RuntimeOrientationResolver.UsageIndex orientationUsage = null;
             if (config.clientJarPath != null) {
-                textureResolver = new TextureResolver(ctx, config.clientJarPath, config.outputDir);
-                extractedTextures = textureResolver.extractAllTrackedTextures();
+                jarIndex = new JarIndex(config.clientJarPath);
+                Set<String> selectedMembers = selectedKeys != null ? locationCatalog.memberNames(selectedKeys) : null;
+                JarScanResult scan = scanClientJar(jarIndex, config, selectedMembers);
+
+                orientationUsage = scan.orientationUsage;
+                RuntimeTextureIndex runtimeTextureIndex = RuntimeTextureIndex.create(locationCatalog, scan.textureUsages, selectedKeys);
+                textureResolver = new TextureResolver(
+                    jarIndex.zipFile(),
+                    scan.textureEntries,
+                    runtimeTextureIndex,
+                    config.outputDir,
+                    previousManifest,
+                    manifest,
+                    config.textureMode,
+                    config.threads
+                );
+                if (config.textureMode == TextureMode.ALL) {
+                    textureResolver.extractAllTrackedTextures(config.threads, config.shard);
+                }
+            }
+            final RuntimeOrientationResolver orientationResolver = RuntimeOrientationResolver.create(locationCatalog, orientationUsage, selectedKeys);
+            final VertexTransformKernel vertexKernel = loadVertexKernel(config.vertexKernel);
+
+            executor = Executors.newFixedThreadPool(config.threads, new ExportThreadFactory("entity-export"));
+            BlockingQueue<Future<BakedLayer>> bakedLayers = new ArrayBlockingQueue<Future<BakedLayer>>(Math.max(4, config.threads * 2));
+            SharedGeometryIndex sharedGeometry = config.layerDedupe != LayerDedupe.OFF ? new SharedGeometryIndex() : null;
+            WriteStage writeStage = new WriteStage(bakedLayers, locations.size(), config, previousManifest, manifest, sharedGeometry, textureResolver, shardManifest, journal);
+            Thread writeThread = new ExportThreadFactory("entity-export-io").newThread(writeStage);
+            writeThread.start();
+
+            for (final Object location : locations) {
+                final TextureResolver resolver = textureResolver;
+                Future<BakedLayer> baked = executor.submit(new Callable<BakedLayer>() {
+                    @Override
+                    public BakedLayer call() {
+                        return bakeLocation(ctx, entityModelSet, location, config, resolver, orientationResolver, vertexKernel);
+                    }
+                });
+                while (!bakedLayers.offer(baked, 100L, TimeUnit.MILLISECONDS)) {
+                    if (!writeThread.isAlive()) {
+                        break;
+                    }
+                }
+                if (!writeThread.isAlive()) {
+                    break;
+                }
             }
 
-            for (Object location : locations) {
-                index++;
-                try {
-                    LocationInfo info = describeLocation(ctx, location);
-                    String stem = fileStemForLocation(info);
-
-                    Path objPath = config.outputDir.resolve(stem + ".obj");
-                    Path mtlPath = config.outputDir.resolve(stem + ".mtl");
-
-                    ResolvedTexture texture = null;
-                    if (textureResolver != null) {
-                        texture = textureResolver.resolveAndExtract(info);
-                    }
+            writeThread.join();
+            if (writeStage.error != null) {
+                throw new IllegalStateException("Write stage failed.", writeStage.error);
+            }
+            exported = writeStage.exported;
+            failed = writeStage.failed;
+            if (manifest != null && selectedKeys != null && shardManifest == null) {
+                manifest.retainUnselected(previousManifest, selectedKeys);
+            }
+            if (textureResolver != null) {
+                extractedTextures = textureResolver.extractedCount();
+            }
 
-                    String textureMapPath = texture != null ? texture.mapKdPath : null;
-                    String textureSource = texture != null ? texture.sourceEntry : null;
-                    boolean applyRuntimeOrientation = config.applyRuntimeOrientation && orientationResolver.shouldApply(location);
+            if (sharedGeometry != null) {
+                sharedGeometry.write(config.outputDir.resolve(SharedGeometryIndex.FILE_NAME));
+                System.out.printf(
+                    Locale.ROOT,
+                    "Shared geometry: %d layers reuse %d meshes (%d hardlinked)%n",
+                    sharedGeometry.references.size(),
+                    sharedGeometry.sharedMeshCount(),
+                    sharedGeometry.hardlinkCount()
+                );
+            }
 
-                    try (ObjWriter writer = new ObjWriter(objPath, mtlPath, location.toString(), textureMapPath, textureSource)) {
-                        Object rootPart = ctx.bakeLayer(entityModelSet, location);
-                        exportModel(ctx, rootPart, writer, config, applyRuntimeOrientation);
-                    }
-                    if (config.liftToGrid) {
-                        liftModelToGrid(objPath);
-                    }
-                    exported++;
-                    System.out.printf(Locale.ROOT, "[%4d/%4d] exported %s%n", index, locations.size(), objPath.getFileName());
-                } catch (Throwable t) {
-                    failed++;
-                    Throwable cause = rootCause(t);
-                    System.err.printf(Locale.ROOT, "[%4d/%4d] failed %s (%s)%n", index, locations.size(), location, cause.toString());
-                }
+            if (shardManifest != null) {
+                manifest.write(config.shard.manifestPath(config.outputDir));
+                shardManifest.write(config.shard.partialPath(config.outputDir));
+            } else if (manifest != null) {
+                manifest.write(config.outputDir.resolve(ExportManifest.FILE_NAME));
+            }
+            if (config.incremental) {
+                System.out.printf(
+                    Locale.ROOT,
+                    "Incremental: %d/%d layers unchanged, %d/%d textures unchanged%n",
+                    writeStage.unchanged,
+                    exported,
+                    textureResolver != null ? textureResolver.unchangedTextures.get() : 0,
+                    manifest.textures.size()
+                );
             }
         }
         finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
             if (textureResolver != null) {
                 textureResolver.close();
             }
+            journal.close();
+            if (jarIndex != null) {
+                jarIndex.close();
+            }
         }
 
         System.out.printf(
             Locale.ROOT,
-            "Done. Exported: %d, Failed: %d, Extracted textures: %d, Output: %s%n",
+            "Done. Exported: %d, Resumed: %d, Failed: %d, Extracted textures: %d, Output: %s%n",
             exported,
+            resumed,
             failed,
             extractedTextures,
             config.outputDir.toAbsolutePath().toString()
@@ -117,88 +278,373 @@ public final class EntityLayerObjExporter {
         }
     }
 
+    private static JarScanResult scanClientJar(JarIndex jarIndex, Config config, Set<String> selectedMembers) throws IOException {
+        Path cachePath = config.outputDir.resolve(JarIndexCache.FILE_NAME);
+        if (config.jarCache) {
+            JarScanResult cached = JarIndexCache.load(cachePath, config.clientJarPath);
+            if (cached != null) {
+                System.out.println("Using cached jar index: " + cachePath.toAbsolutePath());
+                return cached;
+            }
+        }
+
+        RuntimeTextureIndex.UsageCollector textureUsages = new RuntimeTextureIndex.UsageCollector(selectedMembers);
+        RuntimeOrientationResolver.UsageCollector orientationUsages = new RuntimeOrientationResolver.UsageCollector(selectedMembers);
+        TextureResolver.EntryCollector textureEntries = new TextureResolver.EntryCollector();
+
+        jarIndex.register(textureUsages);
+        jarIndex.register(orientationUsages);
+        jarIndex.register(textureEntries);
+        jarIndex.scan(config.threads);
+
+        JarScanResult scan = new JarScanResult(textureUsages.usages, orientationUsages.index, textureEntries.entries);
+        if (config.jarCache && selectedMembers == null) {
+            JarIndexCache.store(cachePath, config.clientJarPath, scan);
+        }
+        return scan;
+    }
+
+    private static BakedLayer bakeLocation(
+            ReflectionContext ctx,
+            Object entityModelSet,
+            Object location,
+            Config config,
+            TextureResolver textureResolver,
+            RuntimeOrientationResolver orientationResolver,
+            VertexTransformKernel vertexKernel) {
+        try {
+            LocationInfo info = describeLocation(ctx, location);
+            String stem = fileStemForLocation(info);
+
+            Path objPath = config.outputDir.resolve(stem + ".obj");
+            Path mtlPath = config.outputDir.resolve(stem + ".mtl");
+            Path glbPath = config.outputDir.resolve(stem + ".glb");
+
+            ResolvedTexture texture = null;
+            if (textureResolver != null) {
+                texture = textureResolver.resolveAndExtract(info);
+            }
+
+            boolean applyRuntimeOrientation = config.applyRuntimeOrientation && orientationResolver.shouldApply(location);
+
+            MeshBuffer mesh = new MeshBuffer();
+            Object rootPart = ctx.bakeLayer(entityModelSet, location);
+            exportModel(ctx, rootPart, mesh, config, applyRuntimeOrientation, vertexKernel);
+            return new BakedLayer(location, stem, objPath, mtlPath, glbPath, texture, mesh, null);
+        } catch (Throwable t) {
+            return new BakedLayer(location, null, null, null, null, null, null, t);
+        }
+    }
+
+    private static boolean writeLayer(
+            BakedLayer layer,
+            Config config,
+            ExportManifest previousManifest,
+            ExportManifest manifest,
+            SharedGeometryIndex sharedGeometry)
+            throws IOException {
+        String textureMapPath = layer.texture != null ? layer.texture.mapKdPath : null;
+        String textureSource = layer.texture != null ? layer.texture.sourceEntry : null;
+
+        SharedGeometryIndex.Reference shared = null;
+        if (sharedGeometry != null && config.outputFormat.writesObj()) {
+            MessageDigest digest = sha256();
+            layer.mesh.digest(digest);
+            shared = sharedGeometry.register(layer.stem, toHex(digest.digest()), textureMapPath, config.layerDedupe == LayerDedupe.HARDLINK);
+        }
+        boolean objShared = shared != null && !shared.hardlink;
+
+        if (manifest != null) {
+            ExportManifest.TextureRecord texture = textureSource != null ? manifest.textures.get(textureSource) : null;
+            ExportManifest.LayerRecord record = new ExportManifest.LayerRecord(
+                layer.stem,
+                String.valueOf(layer.location),
+                layerHash(layer, config),
+                textureSource,
+                texture != null ? Long.toHexString(texture.crc) : null
+            );
+            manifest.layers.put(record.stem, record);
+            if (record.matches(previousManifest.layers.get(record.stem))
+                && (!config.outputFormat.writesObj() || ((objShared || Files.isRegularFile(layer.objPath)) && Files.isRegularFile(layer.mtlPath)))
+                && (!config.outputFormat.writesGlb() || Files.isRegularFile(layer.glbPath))) {
+                return false;
+            }
+        }
+
+        float offsetY = config.liftToGrid ? layer.mesh.gridLiftOffset() : 0.0f;
+        if (shared != null) {
+            ObjWriter.writeMaterial(layer.mtlPath, textureMapPath, textureSource);
+            Files.deleteIfExists(layer.objPath);
+            if (shared.hardlink) {
+                Path target = layer.objPath.resolveSibling(shared.geometryStem + ".obj");
+                try {
+                    Files.createLink(layer.objPath, target);
+                } catch (IOException | UnsupportedOperationException e) {
+                    Path tempPath = tempSibling(layer.objPath);
+                    try {
+                        Files.copy(target, tempPath);
+                        moveIntoPlace(tempPath, layer.objPath);
+                    } finally {
+                        Files.deleteIfExists(tempPath);
+                    }
+                }
+            }
+        } else if (config.outputFormat.writesObj()) {
+            try (ObjWriter writer = new ObjWriter(layer.objPath, layer.mtlPath, String.valueOf(layer.location), textureMapPath, textureSource, !config.deterministic, config.floatFormat, config.dedupe)) {
+                writer.writeMesh(layer.mesh, offsetY);
+                writer.commit();
+            }
+        }
+        if (config.outputFormat.writesGlb()) {
+            GlbWriter writer = new GlbWriter(layer.glbPath, String.valueOf(layer.location), layer.texture, config.flipV, config.embedTextures);
+            writer.writeMesh(layer.mesh, offsetY);
+        }
+        return true;
+    }
+
+    private static List<Path> layerOutputs(BakedLayer layer, Config config) {
+        List<Path> out = new ArrayList<Path>(3);
+        if (config.outputFormat.writesObj()) {
+            out.add(layer.objPath);
+            out.add(layer.mtlPath);
+        }
+        if (config.outputFormat.writesGlb()) {
+            out.add(layer.glbPath);
+        }
+        out.removeIf(path -> !Files.isRegularFile(path));
+        return out;
+    }
+
+    private static String layerHash(BakedLayer layer, Config config) {
+        MessageDigest digest = sha256();
+        digest.update(config.outputSignature().getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(String.valueOf(layer.location).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        if (layer.texture != null) {
+            digest.update(String.valueOf(layer.texture.mapKdPath).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(layer.texture.sourceEntry.getBytes(StandardCharsets.UTF_8));
+        }
+        digest.update((byte) 0);
+        layer.mesh.digest(digest);
+        return toHex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+    }
+
+    private static byte[] sha256(Path path) throws IOException {
+        MessageDigest digest = sha256();
+        try (InputStream in = Files.newInputStream(path)) {
+            byte[] buffer = new byte[65536];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return digest.digest();
+    }
+
+    private static Path tempSibling(Path target) {
+        return target.resolveSibling(target.getFileName() + "." + UUID.randomUUID() + ".tmp");
+    }
+
+    private static void moveIntoPlace(Path tempPath, Path target) throws IOException {
+        Files.move(tempPath, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeLinesAtomically(Path path, List<String> lines) throws IOException {
+        Path tempPath = tempSibling(path);
+        try {
+            Files.write(tempPath, lines, StandardCharsets.UTF_8);
+            moveIntoPlace(tempPath, path);
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte value : bytes) {
+            builder.append(Character.forDigit((value >> 4) & 0xF, 16));
+            builder.append(Character.forDigit(value & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
     private static void exportModel(
-            final ReflectionContext ctx,
+            ReflectionContext ctx,
             Object rootPart,
-            final ObjWriter writer,
-            final Config config,
-            final boolean applyRuntimeOrientation)
+            MeshBuffer mesh,
+            Config config,
+            boolean applyRuntimeOrientation,
+            VertexTransformKernel vertexKernel)
             throws Exception {
-        final Object poseStack = ctx.poseStackCtor.newInstance();
-        final Map<String, Integer> cubeCountersByPart = new HashMap<String, Integer>();
+        Object poseStack = ctx.poseStackCtor.newInstance();
+        CubeVisitSink sink = new CubeVisitSink(ctx, mesh, config, applyRuntimeOrientation, vertexKernel);
+        Object visitor = ctx.newVisitor(sink);
+        ctx.modelPartVisitMethod.invoke(rootPart, poseStack, visitor);
+        sink.flush();
+    }
 
-        InvocationHandler handler = new InvocationHandler() {
-            @Override
-            public Object invoke(Object proxy, Method method, Object[] arguments) throws Throwable {
-                if (arguments == null || arguments.length == 0) {
-                    return defaultReturnValue(method.getReturnType());
-                }
+    private static final class CubeVisitSink {
+        private final ReflectionContext ctx;
+        private final MeshBuffer mesh;
+        private final Config config;
+        private final VertexTransformKernel vertexKernel;
+        private final float signX;
+        private final float signY;
+        private final float signZ;
+        private final boolean reverseWinding;
+        private final Map<String, Integer> cubeCountersByPart = new HashMap<String, Integer>();
+        private final PoseTransform transform = new PoseTransform();
+        private Object batchPose;
+        private String batchPath;
+        private boolean batchPoseRead;
+
+        CubeVisitSink(
+            ReflectionContext ctx,
+            MeshBuffer mesh,
+            Config config,
+            boolean applyRuntimeOrientation,
+            VertexTransformKernel vertexKernel
+        ) {
+            this.ctx = ctx;
+            this.mesh = mesh;
+            this.config = config;
+            this.vertexKernel = vertexKernel;
+            this.signX = applyRuntimeOrientation ? -1.0f : 1.0f;
+            this.signY = applyRuntimeOrientation ? -1.0f : 1.0f;
+            this.signZ = config.flipZ ? -1.0f : 1.0f;
+            this.reverseWinding = this.signX * this.signY * this.signZ < 0.0f;
+        }
+
+        void visit(Object pose, String path, int cubeIndex, Object cube) throws Exception {
+            if (pose == null || cube == null) {
+                return;
+            }
 
-                Object pose = null;
-                String path = null;
-                Object cube = null;
-                Integer cubeIndex = null;
-                for (Object argument : arguments) {
-                    if (argument == null) {
-                        continue;
-                    }
-                    if (pose == null && ctx.poseClass.isInstance(argument)) {
-                        pose = argument;
-                    }
-                    if (path == null && argument instanceof String) {
-                        path = (String) argument;
-                    }
-                    if (cube == null && ctx.cubeClass.isInstance(argument)) {
-                        cube = argument;
-                    }
-                    if (cubeIndex == null && isIntegralNumber(argument)) {
-                        cubeIndex = Integer.valueOf(((Number) argument).intValue());
-                    }
-                }
+            String normalizedPath = normalizePartPath(path);
+            String partPath = normalizedPath;
+            if (this.config.splitCubes) {
+                int resolvedIndex = resolveCubeIndex(normalizedPath, cubeIndex, this.cubeCountersByPart);
+                partPath = formatSplitPartPath(normalizedPath, resolvedIndex);
+            }
 
-                if (cube == null) {
-                    return defaultReturnValue(method.getReturnType());
-                }
-                if (pose == null) {
-                    return defaultReturnValue(method.getReturnType());
-                }
+            if (pose != this.batchPose || !normalizedPath.equals(this.batchPath)) {
+                flush();
+                this.batchPose = pose;
+                this.batchPath = normalizedPath;
+                this.batchPoseRead = this.ctx.readPoseTransform(pose, this.transform);
+            }
 
-                String normalizedPath = normalizePartPath(path);
-                String partPath = normalizedPath;
-                if (config.splitCubes) {
-                    int resolvedIndex = resolveCubeIndex(normalizedPath, cubeIndex, cubeCountersByPart);
-                    partPath = formatSplitPartPath(normalizedPath, resolvedIndex);
-                }
+            String partName = sanitizeObjName(partPath);
+            if (!this.batchPoseRead) {
+                this.mesh.beginPart(partName);
+                exportCubeReflective(this.ctx, pose, this.ctx.getCubePolygons(cube), this.mesh, this.config, this.signX, this.signY, this.signZ, this.reverseWinding);
+                return;
+            }
+            gatherCube(this.ctx, cube, partName, this.transform.batch);
+        }
 
-                writer.beginPart(sanitizeObjName(partPath));
-                exportCube(ctx, pose, cube, writer, config, applyRuntimeOrientation);
-                return defaultReturnValue(method.getReturnType());
+        void flush() {
+            VertexBatch batch = this.transform.batch;
+            if (batch.cubeCount > 0) {
+                exportBatch(batch, this.mesh, this.config, this.transform, this.vertexKernel, this.signX, this.signY, this.signZ, this.reverseWinding);
+                batch.clear();
             }
-        };
+        }
+    }
+
+    private static void gatherCube(ReflectionContext ctx, Object cube, String partName, VertexBatch batch) throws Exception {
+        batch.beginCube(partName);
+        for (Object polygon : ctx.getCubePolygons(cube)) {
+            Object normal = ctx.getPolygonNormal(polygon);
+            batch.beginPolygon(ctx.getVectorX(normal), ctx.getVectorY(normal), ctx.getVectorZ(normal));
+            for (Object vertex : ctx.getPolygonVertices(polygon)) {
+                batch.addVertex(
+                    ctx.getVertexWorldX(vertex),
+                    ctx.getVertexWorldY(vertex),
+                    ctx.getVertexWorldZ(vertex),
+                    finiteOrDefault(ctx.getVertexU(vertex), 0.0f),
+                    finiteOrDefault(ctx.getVertexV(vertex), 0.0f)
+                );
+            }
+        }
+    }
 
-        Object visitor = Proxy.newProxyInstance(
-            ctx.modelPartVisitorClass.getClassLoader(),
-            new Class<?>[] { ctx.modelPartVisitorClass },
-            handler
+    private static void exportBatch(
+            VertexBatch batch,
+            MeshBuffer mesh,
+            Config config,
+            PoseTransform transform,
+            VertexTransformKernel vertexKernel,
+            float signX,
+            float signY,
+            float signZ,
+            boolean reverseWinding) {
+        vertexKernel.transformNormals(
+            transform.normal,
+            transform.normalizeNormals,
+            signX,
+            signY,
+            signZ,
+            batch.normalX,
+            batch.normalY,
+            batch.normalZ,
+            batch.polygonCount
         );
+        vertexKernel.transformPositions(
+            transform.position,
+            signX * config.scale,
+            signY * config.scale,
+            signZ * config.scale,
+            batch.x,
+            batch.y,
+            batch.z,
+            batch.vertexCount
+        );
+        vertexKernel.adjustTexCoords(config.flipV, config.clampUv, batch.u, batch.v, batch.vertexCount);
 
-        ctx.modelPartVisitMethod.invoke(rootPart, poseStack, visitor);
+        for (int cube = 0; cube < batch.cubeCount; cube++) {
+            mesh.beginPart(batch.cubeParts[cube]);
+            for (int polygon = batch.cubeStarts[cube]; polygon < batch.cubeStarts[cube + 1]; polygon++) {
+                int normalIndex = mesh.addNormal(batch.normalX[polygon], batch.normalY[polygon], batch.normalZ[polygon]);
+
+                int start = batch.polygonStarts[polygon];
+                int count = batch.polygonStarts[polygon + 1] - start;
+                transform.ensureCorners(count);
+                int[] vertexIndices = transform.vertexIndices;
+                int[] uvIndices = transform.uvIndices;
+                for (int i = 0; i < count; i++) {
+                    int vertex = start + i;
+                    vertexIndices[i] = mesh.addVertex(batch.x[vertex], batch.y[vertex], batch.z[vertex]);
+                    uvIndices[i] = mesh.addTexCoord(batch.u[vertex], batch.v[vertex]);
+                }
+
+                mesh.addFace(vertexIndices, uvIndices, count, normalIndex, reverseWinding);
+            }
+        }
     }
 
-    private static void exportCube(
+    private static void exportCubeReflective(
             ReflectionContext ctx,
             Object pose,
-            Object cube,
-            ObjWriter writer,
+            Object[] polygons,
+            MeshBuffer mesh,
             Config config,
-            boolean applyRuntimeOrientation)
+            float signX,
+            float signY,
+            float signZ,
+            boolean reverseWinding)
             throws Exception {
         Object matrix = ctx.posePoseMethod.invoke(pose);
-        Object[] polygons = ctx.getCubePolygons(cube);
-        float signX = applyRuntimeOrientation ? -1.0f : 1.0f;
-        float signY = applyRuntimeOrientation ? -1.0f : 1.0f;
-        float signZ = config.flipZ ? -1.0f : 1.0f;
-        boolean reverseWinding = signX * signY * signZ < 0.0f;
 
         for (Object polygon : polygons) {
             Object normal = ctx.getPolygonNormal(polygon);
@@ -207,7 +653,7 @@ public final class EntityLayerObjExporter {
             float normalX = ctx.getVectorX(transformedNormal) * signX;
             float normalY = ctx.getVectorY(transformedNormal) * signY;
             float normalZ = ctx.getVectorZ(transformedNormal) * signZ;
-            int normalIndex = writer.writeNormal(normalX, normalY, normalZ);
+            int normalIndex = mesh.addNormal(normalX, normalY, normalZ);
 
             Object[] vertices = ctx.getPolygonVertices(polygon);
             int[] vertexIndices = new int[vertices.length];
@@ -230,22 +676,218 @@ public final class EntityLayerObjExporter {
                 y *= signY;
                 z *= signZ;
 
-                vertexIndices[i] = writer.writeVertex(x * config.scale, y * config.scale, z * config.scale);
+                vertexIndices[i] = mesh.addVertex(x * config.scale, y * config.scale, z * config.scale);
+                uvIndices[i] = addVertexTexCoord(ctx, vertex, mesh, config);
+            }
+
+            mesh.addFace(vertexIndices, uvIndices, vertices.length, normalIndex, reverseWinding);
+        }
+    }
 
-                float u = finiteOrDefault(ctx.getVertexU(vertex), 0.0f);
-                float v = finiteOrDefault(ctx.getVertexV(vertex), 0.0f);
-                if (config.flipV) {
-                    v = 1.0f - v;
-                }
-                if (config.clampUv) {
+    private static int addVertexTexCoord(ReflectionContext ctx, Object vertex, MeshBuffer mesh, Config config) {
+        float u = finiteOrDefault(ctx.getVertexU(vertex), 0.0f);
+        float v = finiteOrDefault(ctx.getVertexV(vertex), 0.0f);
+        if (config.flipV) {
+            v = 1.0f - v;
+        }
+        if (config.clampUv) {
+            u = clamp01(u);
+            v = clamp01(v);
+        }
+        return mesh.addTexCoord(u, v);
+    }
+
+    private static final class PoseTransform {
+        final float[] position = new float[16];
+        final float[] normal = new float[9];
+        boolean normalizeNormals;
+        int[] vertexIndices = new int[4];
+        int[] uvIndices = new int[4];
+        final VertexBatch batch = new VertexBatch();
+
+        void ensureCorners(int count) {
+            if (this.vertexIndices.length < count) {
+                this.vertexIndices = new int[count];
+                this.uvIndices = new int[count];
+            }
+        }
+    }
+
+    private static enum VertexKernel {
+        SCALAR,
+        VECTOR
+    }
+
+    interface VertexTransformKernel {
+        void transformPositions(float[] m, float scaleX, float scaleY, float scaleZ, float[] xs, float[] ys, float[] zs, int count);
+
+        void transformNormals(float[] n, boolean normalize, float signX, float signY, float signZ, float[] xs, float[] ys, float[] zs, int count);
+
+        void adjustTexCoords(boolean flipV, boolean clampUv, float[] us, float[] vs, int count);
+    }
+
+    private static VertexTransformKernel loadVertexKernel(VertexKernel kind) {
+        if (kind == VertexKernel.VECTOR) {
+            try {
+                VertexTransformKernel kernel = (VertexTransformKernel) Class.forName("VectorVertexKernel").getDeclaredConstructor().newInstance();
+                System.out.println("Using vector vertex kernel: " + kernel);
+                return kernel;
+            } catch (Throwable t) {
+                System.err.println("Vector vertex kernel unavailable, using scalar kernel (" + rootCause(t) + ")");
+            }
+        }
+        return ScalarVertexKernel.INSTANCE;
+    }
+
+    static final class ScalarVertexKernel implements VertexTransformKernel {
+        static final ScalarVertexKernel INSTANCE = new ScalarVertexKernel();
+
+        @Override
+        public void transformPositions(float[] m, float scaleX, float scaleY, float scaleZ, float[] xs, float[] ys, float[] zs, int count) {
+            transformPositionRange(m, scaleX, scaleY, scaleZ, xs, ys, zs, 0, count);
+        }
+
+        @Override
+        public void transformNormals(float[] n, boolean normalize, float signX, float signY, float signZ, float[] xs, float[] ys, float[] zs, int count) {
+            transformNormalRange(n, normalize, signX, signY, signZ, xs, ys, zs, 0, count);
+        }
+
+        @Override
+        public void adjustTexCoords(boolean flipV, boolean clampUv, float[] us, float[] vs, int count) {
+            adjustTexCoordRange(flipV, clampUv, us, vs, 0, count);
+        }
+
+        static void transformPositionRange(float[] m, float scaleX, float scaleY, float scaleZ, float[] xs, float[] ys, float[] zs, int from, int to) {
+            float m00 = m[0];
+            float m01 = m[1];
+            float m02 = m[2];
+            float m10 = m[4];
+            float m11 = m[5];
+            float m12 = m[6];
+            float m20 = m[8];
+            float m21 = m[9];
+            float m22 = m[10];
+            float m30 = m[12];
+            float m31 = m[13];
+            float m32 = m[14];
+            for (int i = from; i < to; i++) {
+                float x = xs[i];
+                float y = ys[i];
+                float z = zs[i];
+                xs[i] = (m00 * x + (m10 * y + (m20 * z + m30))) * scaleX;
+                ys[i] = (m01 * x + (m11 * y + (m21 * z + m31))) * scaleY;
+                zs[i] = (m02 * x + (m12 * y + (m22 * z + m32))) * scaleZ;
+            }
+        }
+
+        static void transformNormalRange(float[] n, boolean normalize, float signX, float signY, float signZ, float[] xs, float[] ys, float[] zs, int from, int to) {
+            for (int i = from; i < to; i++) {
+                float x = xs[i];
+                float y = ys[i];
+                float z = zs[i];
+                float normalX = n[0] * x + (n[3] * y + n[6] * z);
+                float normalY = n[1] * x + (n[4] * y + n[7] * z);
+                float normalZ = n[2] * x + (n[5] * y + n[8] * z);
+                if (normalize) {
+                    float inverseLength = 1.0f / (float) Math.sqrt(normalX * normalX + (normalY * normalY + normalZ * normalZ));
+                    normalX *= inverseLength;
+                    normalY *= inverseLength;
+                    normalZ *= inverseLength;
+                }
+                xs[i] = normalX * signX;
+                ys[i] = normalY * signY;
+                zs[i] = normalZ * signZ;
+            }
+        }
+
+        static void adjustTexCoordRange(boolean flipV, boolean clampUv, float[] us, float[] vs, int from, int to) {
+            for (int i = from; i < to; i++) {
+                float u = us[i];
+                float v = flipV ? 1.0f - vs[i] : vs[i];
+                if (clampUv) {
                     u = clamp01(u);
                     v = clamp01(v);
                 }
-
-                uvIndices[i] = writer.writeTexCoord(u, v);
+                us[i] = u;
+                vs[i] = v;
             }
+        }
+
+        @Override
+        public String toString() {
+            return "scalar";
+        }
+    }
 
-            writer.writeFace(vertexIndices, uvIndices, normalIndex, reverseWinding);
+    private static final class VertexBatch {
+        float[] x = new float[64];
+        float[] y = new float[64];
+        float[] z = new float[64];
+        float[] u = new float[64];
+        float[] v = new float[64];
+        float[] normalX = new float[16];
+        float[] normalY = new float[16];
+        float[] normalZ = new float[16];
+        int[] polygonStarts = new int[17];
+        String[] cubeParts = new String[4];
+        int[] cubeStarts = new int[5];
+        int vertexCount;
+        int polygonCount;
+        int cubeCount;
+
+        void clear() {
+            this.vertexCount = 0;
+            this.polygonCount = 0;
+            this.cubeCount = 0;
+            this.polygonStarts[0] = 0;
+            this.cubeStarts[0] = 0;
+        }
+
+        void beginCube(String partName) {
+            if (this.cubeCount + 1 >= this.cubeStarts.length) {
+                int capacity = this.cubeStarts.length * 2;
+                this.cubeParts = Arrays.copyOf(this.cubeParts, capacity);
+                this.cubeStarts = Arrays.copyOf(this.cubeStarts, capacity + 1);
+            }
+            this.cubeParts[this.cubeCount] = partName;
+            this.cubeStarts[this.cubeCount] = this.polygonCount;
+            this.cubeCount++;
+            this.cubeStarts[this.cubeCount] = this.polygonCount;
+        }
+
+        void beginPolygon(float normalX, float normalY, float normalZ) {
+            if (this.polygonCount + 1 >= this.polygonStarts.length) {
+                int capacity = this.polygonStarts.length * 2;
+                this.normalX = Arrays.copyOf(this.normalX, capacity);
+                this.normalY = Arrays.copyOf(this.normalY, capacity);
+                this.normalZ = Arrays.copyOf(this.normalZ, capacity);
+                this.polygonStarts = Arrays.copyOf(this.polygonStarts, capacity + 1);
+            }
+            this.normalX[this.polygonCount] = normalX;
+            this.normalY[this.polygonCount] = normalY;
+            this.normalZ[this.polygonCount] = normalZ;
+            this.polygonStarts[this.polygonCount] = this.vertexCount;
+            this.polygonCount++;
+            this.polygonStarts[this.polygonCount] = this.vertexCount;
+            this.cubeStarts[this.cubeCount] = this.polygonCount;
+        }
+
+        void addVertex(float x, float y, float z, float u, float v) {
+            if (this.vertexCount == this.x.length) {
+                int capacity = this.x.length * 2;
+                this.x = Arrays.copyOf(this.x, capacity);
+                this.y = Arrays.copyOf(this.y, capacity);
+                this.z = Arrays.copyOf(this.z, capacity);
+                this.u = Arrays.copyOf(this.u, capacity);
+                this.v = Arrays.copyOf(this.v, capacity);
+            }
+            this.x[this.vertexCount] = x;
+            this.y[this.vertexCount] = y;
+            this.z[this.vertexCount] = z;
+            this.u[this.vertexCount] = u;
+            this.v[this.vertexCount] = v;
+            this.vertexCount++;
+            this.polygonStarts[this.polygonCount] = this.vertexCount;
         }
     }
 
@@ -322,9 +964,9 @@ public final class EntityLayerObjExporter {
         return String.format(Locale.ROOT, "%s.cube_%03d", normalizedPath, Integer.valueOf(cubeIndex));
     }
 
-    private static int resolveCubeIndex(String normalizedPath, Integer cubeIndex, Map<String, Integer> cubeCountersByPart) {
-        if (cubeIndex != null && cubeIndex.intValue() >= 0) {
-            return cubeIndex.intValue();
+    private static int resolveCubeIndex(String normalizedPath, int cubeIndex, Map<String, Integer> cubeCountersByPart) {
+        if (cubeIndex >= 0) {
+            return cubeIndex;
         }
 
         Integer next = cubeCountersByPart.get(normalizedPath);
@@ -371,61 +1013,6 @@ public final class EntityLayerObjExporter {
         return current;
     }
 
-    private static void liftModelToGrid(Path objPath) throws IOException {
-        List<String> lines = Files.readAllLines(objPath, StandardCharsets.UTF_8);
-        float minY = Float.POSITIVE_INFINITY;
-
-        for (String line : lines) {
-            if (!line.startsWith("v ")) {
-                continue;
-            }
-
-            String[] parts = line.trim().split("\\s+");
-            if (parts.length < 4) {
-                continue;
-            }
-
-            float y = Float.parseFloat(parts[2]);
-            if (y < minY) {
-                minY = y;
-            }
-        }
-
-        if (!Float.isFinite(minY) || minY >= -0.000001f) {
-            return;
-        }
-
-        float offsetY = -minY;
-        List<String> updated = new ArrayList<String>(lines.size());
-
-        for (String line : lines) {
-            if (!line.startsWith("v ")) {
-                updated.add(line);
-                continue;
-            }
-
-            String[] parts = line.trim().split("\\s+");
-            if (parts.length < 4) {
-                updated.add(line);
-                continue;
-            }
-
-            float x = Float.parseFloat(parts[1]);
-            float y = Float.parseFloat(parts[2]) + offsetY;
-            float z = Float.parseFloat(parts[3]);
-            updated.add(String.format(Locale.ROOT, "v %.8f %.8f %.8f", Float.valueOf(x), Float.valueOf(y), Float.valueOf(z)));
-        }
-
-        Files.write(
-            objPath,
-            updated,
-            StandardCharsets.UTF_8,
-            StandardOpenOption.CREATE,
-            StandardOpenOption.TRUNCATE_EXISTING,
-            StandardOpenOption.WRITE
-        );
-    }
-
     private static final class Config {
         final Path outputDir;
         final Path clientJarPath;
@@ -436,6 +1023,21 @@ public final class EntityLayerObjExporter {
         final boolean splitCubes;
         final boolean clampUv;
         final float scale;
+        final int threads;
+        final boolean jarCache;
+        final boolean incremental;
+        final boolean deterministic;
+        final FloatFormat floatFormat;
+        final boolean dedupe;
+        final OutputFormat outputFormat;
+        final boolean embedTextures;
+        final VertexKernel vertexKernel;
+        final LayerDedupe layerDedupe;
+        final TextureMode textureMode;
+        final LocationFilter locationFilter;
+        final ShardSpec shard;
+        final int mergeShards;
+        final boolean resume;
 
         Config(
             Path outputDir,
@@ -446,7 +1048,22 @@ public final class EntityLayerObjExporter {
             boolean flipZ,
             boolean splitCubes,
             boolean clampUv,
-            float scale
+            float scale,
+            int threads,
+            boolean jarCache,
+            boolean incremental,
+            boolean deterministic,
+            FloatFormat floatFormat,
+            boolean dedupe,
+            OutputFormat outputFormat,
+            boolean embedTextures,
+            VertexKernel vertexKernel,
+            LayerDedupe layerDedupe,
+            TextureMode textureMode,
+            LocationFilter locationFilter,
+            ShardSpec shard,
+            int mergeShards,
+            boolean resume
         ) {
             this.outputDir = outputDir;
             this.clientJarPath = clientJarPath;
@@ -457,6 +1074,38 @@ public final class EntityLayerObjExporter {
             this.splitCubes = splitCubes;
             this.clampUv = clampUv;
             this.scale = scale;
+            this.threads = threads;
+            this.jarCache = jarCache;
+            this.incremental = incremental;
+            this.deterministic = deterministic;
+            this.floatFormat = floatFormat;
+            this.dedupe = dedupe;
+            this.outputFormat = outputFormat;
+            this.embedTextures = embedTextures;
+            this.vertexKernel = vertexKernel;
+            this.layerDedupe = layerDedupe;
+            this.textureMode = textureMode;
+            this.locationFilter = locationFilter;
+            this.shard = shard;
+            this.mergeShards = mergeShards;
+            this.resume = resume;
+        }
+
+        String outputSignature() {
+            return "runtime-orientation=" + this.applyRuntimeOrientation
+                + ";lift-to-grid=" + this.liftToGrid
+                + ";flip-v=" + this.flipV
+                + ";flip-z=" + this.flipZ
+                + ";split-cubes=" + this.splitCubes
+                + ";clamp-uv=" + this.clampUv
+                + ";scale=" + Integer.toHexString(Float.floatToIntBits(this.scale))
+                + ";deterministic=" + this.deterministic
+                + ";float-format=" + this.floatFormat
+                + ";dedupe=" + this.dedupe
+                + ";format=" + this.outputFormat
+                + ";embed-textures=" + this.embedTextures
+                + ";dedupe-layers=" + this.layerDedupe
+                + ";extract-textures=" + (this.textureMode != TextureMode.NONE);
         }
 
         static Config parse(String[] args) {
@@ -473,6 +1122,22 @@ public final class EntityLayerObjExporter {
             boolean splitCubes = true;
             boolean clampUv = true;
             float scale = 1.0f;
+            int threads = 1;
+            boolean jarCache = true;
+            boolean incremental = false;
+            boolean deterministic = false;
+            FloatFormat floatFormat = FloatFormat.FIXED;
+            boolean dedupe = false;
+            OutputFormat outputFormat = OutputFormat.OBJ;
+            boolean embedTextures = false;
+            VertexKernel vertexKernel = VertexKernel.SCALAR;
+            LayerDedupe layerDedupe = LayerDedupe.OFF;
+            TextureMode textureMode = null;
+            List<String> includes = new ArrayList<String>();
+            List<String> excludes = new ArrayList<String>();
+            ShardSpec shard = ShardSpec.SINGLE;
+            int mergeShards = 0;
+            boolean resume = false;
 
             for (int i = 0; i < args.length; i++) {
                 String arg = args[i];
@@ -496,6 +1161,41 @@ public final class EntityLayerObjExporter {
                     clampUv = parseBoolean(requireValue(args, ++i, "--clamp-uv"));
                 } else if ("--scale".equals(arg)) {
                     scale = Float.parseFloat(requireValue(args, ++i, "--scale"));
+                } else if ("--threads".equals(arg)) {
+                    threads = Integer.parseInt(requireValue(args, ++i, "--threads"));
+                } else if ("--jar-cache".equals(arg)) {
+                    jarCache = parseBoolean(requireValue(args, ++i, "--jar-cache"));
+                } else if ("--incremental".equals(arg)) {
+                    incremental = parseBoolean(requireValue(args, ++i, "--incremental"));
+                } else if ("--deterministic".equals(arg)) {
+                    deterministic = parseBoolean(requireValue(args, ++i, "--deterministic"));
+                } else if ("--float-format".equals(arg)) {
+                    floatFormat = parseFloatFormat(requireValue(args, ++i, "--float-format"));
+                } else if ("--dedupe".equals(arg)) {
+                    dedupe = parseBoolean(requireValue(args, ++i, "--dedupe"));
+                } else if ("--format".equals(arg)) {
+                    outputFormat = parseOutputFormat(requireValue(args, ++i, "--format"));
+                } else if ("--embed-textures".equals(arg)) {
+                    embedTextures = parseBoolean(requireValue(args, ++i, "--embed-textures"));
+                } else if ("--vertex-kernel".equals(arg)) {
+                    vertexKernel = parseVertexKernel(requireValue(args, ++i, "--vertex-kernel"));
+                } else if ("--dedupe-layers".equals(arg)) {
+                    layerDedupe = parseLayerDedupe(requireValue(args, ++i, "--dedupe-layers"));
+                } else if ("--textures".equals(arg)) {
+                    textureMode = parseTextureMode(requireValue(args, ++i, "--textures"));
+                } else if ("--include".equals(arg)) {
+                    includes.add(requireValue(args, ++i, "--include"));
+                } else if ("--exclude".equals(arg)) {
+                    excludes.add(requireValue(args, ++i, "--exclude"));
+                } else if ("--shard".equals(arg)) {
+                    shard = ShardSpec.parse(requireValue(args, ++i, "--shard"));
+                } else if ("--merge-shards".equals(arg)) {
+                    mergeShards = Integer.parseInt(requireValue(args, ++i, "--merge-shards"));
+                    if (mergeShards < 1) {
+                        throw new IllegalArgumentException("--merge-shards must be at least 1: " + mergeShards);
+                    }
+                } else if ("--resume".equals(arg)) {
+                    resume = parseBoolean(requireValue(args, ++i, "--resume"));
                 } else {
                     throw new IllegalArgumentException("Unknown argument: " + arg);
                 }
@@ -505,11 +1205,32 @@ public final class EntityLayerObjExporter {
                 throw new IllegalArgumentException("Missing required --out argument.");
             }
 
+            if (threads < 1) {
+                throw new IllegalArgumentException("--threads must be at least 1: " + threads);
+            }
+
+            if (shard.isSharded() && layerDedupe != LayerDedupe.OFF) {
+                throw new IllegalArgumentException("--dedupe-layers cannot be combined with --shard: duplicate meshes may live in different shards.");
+            }
+
+            if (resume && layerDedupe != LayerDedupe.OFF) {
+                throw new IllegalArgumentException("--dedupe-layers cannot be combined with --resume: skipped layers would be missing from shared-geometry.tsv.");
+            }
+
             if (clientJarPath != null && !Files.exists(clientJarPath)) {
                 throw new IllegalArgumentException("Client jar not found: " + clientJarPath.toAbsolutePath());
             }
 
-            return new Config(outputDir, clientJarPath, applyRuntimeOrientation, liftToGrid, flipV, flipZ, splitCubes, clampUv, scale);
+            LocationFilter locationFilter = LocationFilter.compile(includes, excludes);
+            if (!locationFilter.isEmpty() && layerDedupe != LayerDedupe.OFF) {
+                throw new IllegalArgumentException("--dedupe-layers cannot be combined with --include/--exclude: unselected layers would be missing from shared-geometry.tsv.");
+            }
+
+            if (textureMode == null) {
+                textureMode = locationFilter.isEmpty() ? TextureMode.ALL : TextureMode.REFERENCED;
+            }
+
+            return new Config(outputDir, clientJarPath, applyRuntimeOrientation, liftToGrid, flipV, flipZ, splitCubes, clampUv, scale, threads, jarCache, incremental, deterministic, floatFormat, dedupe, outputFormat, embedTextures, vertexKernel, layerDedupe, textureMode, locationFilter, shard, mergeShards, resume);
         }
 
         private static String requireValue(String[] args, int index, String flag) {
@@ -529,9 +1250,69 @@ public final class EntityLayerObjExporter {
             throw new IllegalArgumentException("Invalid boolean: " + value);
         }
 
+        private static FloatFormat parseFloatFormat(String value) {
+            if ("fixed".equalsIgnoreCase(value)) {
+                return FloatFormat.FIXED;
+            }
+            if ("compact".equalsIgnoreCase(value)) {
+                return FloatFormat.COMPACT;
+            }
+            throw new IllegalArgumentException("Invalid float format (expected fixed or compact): " + value);
+        }
+
+        private static OutputFormat parseOutputFormat(String value) {
+            if ("obj".equalsIgnoreCase(value)) {
+                return OutputFormat.OBJ;
+            }
+            if ("glb".equalsIgnoreCase(value)) {
+                return OutputFormat.GLB;
+            }
+            if ("both".equalsIgnoreCase(value)) {
+                return OutputFormat.BOTH;
+            }
+            throw new IllegalArgumentException("Invalid format (expected obj, glb or both): " + value);
+        }
+
+        private static VertexKernel parseVertexKernel(String value) {
+            if ("scalar".equalsIgnoreCase(value)) {
+                return VertexKernel.SCALAR;
+            }
+            if ("vector".equalsIgnoreCase(value)) {
+                return VertexKernel.VECTOR;
+            }
+            throw new IllegalArgumentException("Invalid vertex kernel (expected scalar or vector): " + value);
+        }
+
+        private static LayerDedupe parseLayerDedupe(String value) {
+            if ("off".equalsIgnoreCase(value)) {
+                return LayerDedupe.OFF;
+            }
+            if ("mtl".equalsIgnoreCase(value)) {
+                return LayerDedupe.MTL;
+            }
+            if ("hardlink".equalsIgnoreCase(value)) {
+                return LayerDedupe.HARDLINK;
+            }
+            throw new IllegalArgumentException("Invalid layer dedupe mode (expected off, mtl or hardlink): " + value);
+        }
+
+        private static TextureMode parseTextureMode(String value) {
+            if ("referenced".equalsIgnoreCase(value)) {
+                return TextureMode.REFERENCED;
+            }
+            if ("all".equalsIgnoreCase(value)) {
+                return TextureMode.ALL;
+            }
+            if ("none".equalsIgnoreCase(value)) {
+                return TextureMode.NONE;
+            }
+            throw new IllegalArgumentException("Invalid texture mode (expected referenced, all or none): " + value);
+        }
+
         private static void printUsageAndExit(int code) {
             System.out.println("Usage:");
-            System.out.println("  java EntityLayerObjExporter --out <outputDir> [--client-jar <clientJar>] [--runtime-orientation true|false] [--lift-to-grid true|false] [--flip-v true|false] [--flip-z true|false] [--split-cubes true|false] [--clamp-uv true|false] [--scale <float>]");
+            System.out.println("  java EntityLayerObjExporter --out <outputDir> [--client-jar <clientJar>] [--runtime-orientation true|false] [--lift-to-grid true|false] [--flip-v true|false] [--flip-z true|false] [--split-cubes true|false] [--clamp-uv true|false] [--scale <float>] [--threads <count>] [--jar-cache true|false] [--incremental true|false] [--deterministic true|false] [--float-format fixed|compact] [--dedupe true|false] [--format obj|glb|both] [--embed-textures true|false] [--vertex-kernel scalar|vector] [--dedupe-layers off|mtl|hardlink] [--textures referenced|all|none] [--include <glob|regex:pattern>]... [--exclude <glob|regex:pattern>]... [--shard <index>/<count>] [--resume true|false]");
+            System.out.println("  java EntityLayerObjExporter --out <outputDir> --merge-shards <count>");
             System.exit(code);
         }
     }
@@ -548,2752 +1329,5859 @@ public final class EntityLayerObjExporter {
         }
     }
 
-    private static final class ResolvedTexture {
-        final String sourceEntry;
-        final Path extractedPath;
-        final String mapKdPath;
-
-        ResolvedTexture(String sourceEntry, Path extractedPath, String mapKdPath) {
-            this.sourceEntry = sourceEntry;
-            this.extractedPath = extractedPath;
-            this.mapKdPath = mapKdPath;
+    private static final class BakedLayer {
+        final Object location;
+        final String stem;
+        final Path objPath;
+        final Path mtlPath;
+        final Path glbPath;
+        final ResolvedTexture texture;
+        final MeshBuffer mesh;
+        final Throwable failure;
+
+        BakedLayer(
+            Object location,
+            String stem,
+            Path objPath,
+            Path mtlPath,
+            Path glbPath,
+            ResolvedTexture texture,
+            MeshBuffer mesh,
+            Throwable failure
+        ) {
+            this.location = location;
+            this.stem = stem;
+            this.objPath = objPath;
+            this.mtlPath = mtlPath;
+            this.glbPath = glbPath;
+            this.texture = texture;
+            this.mesh = mesh;
+            this.failure = failure;
         }
     }
 
-    private static final class RuntimeTextureIndex {
-        private final Map<String, Map<String, Integer>> candidateScoresByLocationKey;
-
-        private RuntimeTextureIndex(Map<String, Map<String, Integer>> candidateScoresByLocationKey) {
-            this.candidateScoresByLocationKey = candidateScoresByLocationKey;
+    private static final class WriteStage implements Runnable {
+        private final BlockingQueue<Future<BakedLayer>> bakedLayers;
+        private final int total;
+        private final Config config;
+        private final ExportManifest previousManifest;
+        private final ExportManifest manifest;
+        private final SharedGeometryIndex sharedGeometry;
+        private final TextureResolver textureResolver;
+        private final ShardManifest shardManifest;
+        private final ExportJournal journal;
+
+        int exported;
+        int unchanged;
+        int failed;
+        Throwable error;
+
+        WriteStage(
+            BlockingQueue<Future<BakedLayer>> bakedLayers,
+            int total,
+            Config config,
+            ExportManifest previousManifest,
+            ExportManifest manifest,
+            SharedGeometryIndex sharedGeometry,
+            TextureResolver textureResolver,
+            ShardManifest shardManifest,
+            ExportJournal journal
+        ) {
+            this.bakedLayers = bakedLayers;
+            this.total = total;
+            this.config = config;
+            this.previousManifest = previousManifest;
+            this.manifest = manifest;
+            this.sharedGeometry = sharedGeometry;
+            this.textureResolver = textureResolver;
+            this.shardManifest = shardManifest;
+            this.journal = journal;
         }
 
-        static RuntimeTextureIndex create(ReflectionContext ctx, Path clientJarPath) throws Exception {
-            Map<String, Map<String, Integer>> candidateScoresByLocationKey = new HashMap<String, Map<String, Integer>>();
-            if (clientJarPath == null || !Files.exists(clientJarPath)) {
-                return new RuntimeTextureIndex(candidateScoresByLocationKey);
-            }
-
-            Map<String, String> fieldNameByLocationKey = RuntimeOrientationResolver.discoverStaticLocations(ctx);
-            Map<String, String> factoryNameByLocationKey = RuntimeOrientationResolver.discoverFactoryLocations(ctx);
-            Map<String, Set<String>> locationKeysByField = invertLocationMembers(fieldNameByLocationKey);
-            Map<String, Set<String>> locationKeysByFactory = invertLocationMembers(factoryNameByLocationKey);
-
-            try (ZipFile zipFile = new ZipFile(clientJarPath.toFile())) {
-                Enumeration<? extends ZipEntry> entries = zipFile.entries();
-                while (entries.hasMoreElements()) {
-                    ZipEntry entry = entries.nextElement();
-                    if (entry.isDirectory()) {
-                        continue;
+        @Override
+        public void run() {
+            try {
+                for (int index = 1; index <= this.total; index++) {
+                    BakedLayer layer = this.bakedLayers.take().get();
+                    Throwable failure = layer.failure;
+                    boolean written = false;
+                    if (failure == null) {
+                        try {
+                            if (this.textureResolver != null) {
+                                this.textureResolver.awaitExtraction(layer.texture);
+                            }
+                            written = writeLayer(layer, this.config, this.previousManifest, this.manifest, this.sharedGeometry);
+                            this.journal.record(String.valueOf(layer.location), layerOutputs(layer, this.config));
+                        } catch (Throwable t) {
+                            failure = t;
+                        }
                     }
 
-                    String entryName = entry.getName();
-                    if (!isRendererTextureCandidate(entryName)) {
-                        continue;
+                    if (this.shardManifest != null) {
+                        this.shardManifest.record(String.valueOf(layer.location), failure != null ? "failed" : written ? "exported" : "unchanged");
                     }
 
-                    try (InputStream in = zipFile.getInputStream(entry)) {
-                        ClassTextureUsage usage = scanClassTextureUsage(in, entryName);
-                        if (usage != null) {
-                            usage.recordCandidates(candidateScoresByLocationKey, locationKeysByField, locationKeysByFactory);
+                    if (failure == null) {
+                        this.exported++;
+                        if (!written) {
+                            this.unchanged++;
                         }
+                        System.out.printf(
+                            Locale.ROOT,
+                            "[%4d/%4d] %s %s%n",
+                            index,
+                            this.total,
+                            written ? "exported" : "unchanged",
+                            (this.config.outputFormat.writesObj() ? layer.objPath : layer.glbPath).getFileName()
+                        );
+                    } else {
+                        this.failed++;
+                        Throwable cause = rootCause(failure);
+                        System.err.printf(Locale.ROOT, "[%4d/%4d] failed %s (%s)%n", index, this.total, layer.location, cause.toString());
                     }
                 }
+            } catch (Throwable t) {
+                this.error = t;
+            }
+        }
+    }
+
+    private static final class SharedGeometryIndex {
+        static final String FILE_NAME = "shared-geometry.tsv";
+
+        private final Map<String, Canonical> canonicalByGeometry = new HashMap<String, Canonical>();
+        final Map<String, Reference> references = new TreeMap<String, Reference>();
+
+        Reference register(String stem, String geometryHash, String textureMapPath, boolean allowHardlink) {
+            Canonical canonical = this.canonicalByGeometry.get(geometryHash);
+            if (canonical == null) {
+                this.canonicalByGeometry.put(geometryHash, new Canonical(stem, textureMapPath));
+                return null;
             }
 
-            return new RuntimeTextureIndex(candidateScoresByLocationKey);
+            boolean hardlink = allowHardlink && Objects.equals(canonical.textureMapPath, textureMapPath);
+            Reference reference = new Reference(canonical.stem, geometryHash, hardlink);
+            this.references.put(stem, reference);
+            return reference;
         }
 
-        Map<String, Integer> findCandidates(LocationInfo info) {
-            Map<String, Integer> candidates = this.candidateScoresByLocationKey.get(locationKey(info));
-            return candidates != null ? candidates : new HashMap<String, Integer>();
+        int sharedMeshCount() {
+            Set<String> geometries = new HashSet<String>();
+            for (Reference reference : this.references.values()) {
+                geometries.add(reference.geometryHash);
+            }
+            return geometries.size();
         }
 
-        private static String locationKey(LocationInfo info) {
-            return info.namespace + ":" + info.modelPath + "#" + info.layer;
+        int hardlinkCount() {
+            int count = 0;
+            for (Reference reference : this.references.values()) {
+                if (reference.hardlink) {
+                    count++;
+                }
+            }
+            return count;
         }
 
-        private static Map<String, Set<String>> invertLocationMembers(Map<String, String> memberByLocationKey) {
-            Map<String, Set<String>> out = new HashMap<String, Set<String>>();
-            for (Map.Entry<String, String> entry : memberByLocationKey.entrySet()) {
-                String locationKey = entry.getKey();
-                String memberName = entry.getValue();
-                if (locationKey == null || memberName == null || memberName.isEmpty()) {
+        void write(Path path) throws IOException {
+            List<String> lines = new ArrayList<String>(this.references.size() + 1);
+            lines.add("# stem\tgeometry_obj\tmtl\tlink\tgeometry_sha256");
+            for (Map.Entry<String, Reference> entry : this.references.entrySet()) {
+                Reference reference = entry.getValue();
+                lines.add(entry.getKey()
+                    + "\t" + reference.geometryStem + ".obj"
+                    + "\t" + entry.getKey() + ".mtl"
+                    + "\t" + (reference.hardlink ? "hardlink" : "mtl")
+                    + "\t" + reference.geometryHash);
+            }
+
+            writeLinesAtomically(path, lines);
+        }
+
+        private static final class Canonical {
+            final String stem;
+            final String textureMapPath;
+
+            Canonical(String stem, String textureMapPath) {
+                this.stem = stem;
+                this.textureMapPath = textureMapPath;
+            }
+        }
+
+        static final class Reference {
+            final String geometryStem;
+            final String geometryHash;
+            final boolean hardlink;
+
+            Reference(String geometryStem, String geometryHash, boolean hardlink) {
+                this.geometryStem = geometryStem;
+                this.geometryHash = geometryHash;
+                this.hardlink = hardlink;
+            }
+        }
+    }
+
+    private static final class ExportManifest {
+        static final String FILE_NAME = "export-manifest.tsv";
+
+        private static final String NONE = "-";
+
+        final Map<String, LayerRecord> layers = new ConcurrentHashMap<String, LayerRecord>();
+        final Map<String, TextureRecord> textures = new ConcurrentHashMap<String, TextureRecord>();
+
+        static ExportManifest load(Path path) throws IOException {
+            ExportManifest manifest = new ExportManifest();
+            if (!Files.isRegularFile(path)) {
+                return manifest;
+            }
+
+            for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+                if (line.isEmpty() || line.startsWith("#")) {
                     continue;
                 }
 
-                Set<String> locations = out.get(memberName);
-                if (locations == null) {
-                    locations = new LinkedHashSet<String>();
-                    out.put(memberName, locations);
+                String[] fields = line.split("\t", -1);
+                try {
+                    if ("layer".equals(fields[0]) && fields.length == 6) {
+                        LayerRecord record = new LayerRecord(fields[1], fields[2], fields[3], fromField(fields[4]), fromField(fields[5]));
+                        manifest.layers.put(record.stem, record);
+                    } else if ("texture".equals(fields[0]) && fields.length == 4) {
+                        TextureRecord record = new TextureRecord(fields[1], Long.parseLong(fields[2], 16), Long.parseLong(fields[3]));
+                        manifest.textures.put(record.entry, record);
+                    }
+                } catch (NumberFormatException e) {
+                    System.err.println("Ignoring malformed manifest line in " + path + ": " + line);
                 }
-                locations.add(locationKey);
             }
-            return out;
+            return manifest;
         }
 
-        private static boolean isRendererTextureCandidate(String entryName) {
-            if (!entryName.endsWith(".class")) {
-                return false;
+        void retainLocations(ExportManifest previous, Set<String> locationKeys) {
+            for (LayerRecord record : previous.layers.values()) {
+                if (locationKeys.contains(record.location)) {
+                    this.layers.putIfAbsent(record.stem, record);
+                }
             }
-            if (!entryName.startsWith("net/minecraft/client/renderer/")) {
-                return false;
+        }
+
+        void retainUnselected(ExportManifest previous, Set<String> selectedKeys) {
+            for (LayerRecord record : previous.layers.values()) {
+                if (!selectedKeys.contains(record.location)) {
+                    this.layers.putIfAbsent(record.stem, record);
+                }
+            }
+            for (TextureRecord record : previous.textures.values()) {
+                this.textures.putIfAbsent(record.entry, record);
             }
-            return entryName.startsWith("net/minecraft/client/renderer/entity/")
-                || entryName.startsWith("net/minecraft/client/renderer/blockentity/")
-                || entryName.startsWith("net/minecraft/client/renderer/special/");
         }
 
-        private static ClassTextureUsage scanClassTextureUsage(InputStream input, String entryName) throws IOException {
-            DataInputStream in = new DataInputStream(input);
-            if (in.readInt() != 0xCAFEBABE) {
-                return null;
+        void write(Path path) throws IOException {
+            List<String> lines = new ArrayList<String>(this.layers.size() + this.textures.size() + 2);
+            lines.add("# layer\tstem\tlocation\tgeometry_sha256\ttexture_entry\ttexture_crc32");
+            lines.add("# texture\tentry\tcrc32\tsize");
+            for (LayerRecord record : new TreeMap<String, LayerRecord>(this.layers).values()) {
+                lines.add("layer\t" + record.stem
+                    + "\t" + record.location
+                    + "\t" + record.hash
+                    + "\t" + toField(record.textureEntry)
+                    + "\t" + toField(record.textureCrc));
+            }
+            for (TextureRecord record : new TreeMap<String, TextureRecord>(this.textures).values()) {
+                lines.add("texture\t" + record.entry + "\t" + Long.toHexString(record.crc) + "\t" + record.size);
             }
 
-            in.readUnsignedShort();
-            in.readUnsignedShort();
+            writeLinesAtomically(path, lines);
+        }
 
-            ConstantPoolData constantPool = ConstantPoolData.read(in);
+        private static String toField(String value) {
+            return value == null || value.isEmpty() ? NONE : value;
+        }
 
-            in.readUnsignedShort();
-            int thisClassIndex = in.readUnsignedShort();
-            in.readUnsignedShort();
-            String className = constantPool.resolveClassName(thisClassIndex);
-            if (className == null || className.isEmpty()) {
-                className = entryName.substring(0, entryName.length() - ".class".length());
+        private static String fromField(String value) {
+            return NONE.equals(value) ? null : value;
+        }
+
+        private static final class LayerRecord {
+            final String stem;
+            final String location;
+            final String hash;
+            final String textureEntry;
+            final String textureCrc;
+
+            LayerRecord(String stem, String location, String hash, String textureEntry, String textureCrc) {
+                this.stem = stem;
+                this.location = location;
+                this.hash = hash;
+                this.textureEntry = textureEntry;
+                this.textureCrc = textureCrc;
             }
 
-            int interfaceCount = in.readUnsignedShort();
-            skipFully(in, interfaceCount * 2);
+            boolean matches(LayerRecord other) {
+                return other != null
+                    && this.stem.equals(other.stem)
+                    && this.location.equals(other.location)
+                    && this.hash.equals(other.hash)
+                    && Objects.equals(this.textureEntry, other.textureEntry)
+                    && Objects.equals(this.textureCrc, other.textureCrc);
+            }
+        }
 
-            int fieldCount = in.readUnsignedShort();
-            for (int i = 0; i < fieldCount; i++) {
-                skipFieldInfo(in);
+        private static final class TextureRecord {
+            final String entry;
+            final long crc;
+            final long size;
+
+            TextureRecord(String entry, long crc, long size) {
+                this.entry = entry;
+                this.crc = crc;
+                this.size = size;
             }
 
-            ClassTextureUsage usage = new ClassTextureUsage(className);
-            int methodCount = in.readUnsignedShort();
-            for (int i = 0; i < methodCount; i++) {
-                scanMethod(in, constantPool, usage);
+            boolean matches(TextureRecord other) {
+                return other != null && this.entry.equals(other.entry) && this.crc == other.crc && this.size == other.size;
             }
+        }
+    }
 
-            skipAttributes(in);
-            return usage;
+    private static final class ExportThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger counter = new AtomicInteger();
+
+        ExportThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, this.prefix + "-" + this.counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
         }
+    }
 
-        private static void scanMethod(DataInputStream in, ConstantPoolData constantPool, ClassTextureUsage usage) throws IOException {
-            in.readUnsignedShort();
-            String methodName = constantPool.resolveUtf8(in.readUnsignedShort());
-            in.readUnsignedShort();
+    private static final class StoredEntryIndex {
+        private static final int LOCAL_HEADER_SIGNATURE = 0x04034B50;
+        private static final int CENTRAL_HEADER_SIGNATURE = 0x02014B50;
+        private static final int END_SIGNATURE = 0x06054B50;
+        private static final long UNSIGNED_INT_MAX = 0xFFFFFFFFL;
 
-            byte[] code = null;
-            int attributeCount = in.readUnsignedShort();
-            for (int i = 0; i < attributeCount; i++) {
-                String attributeName = constantPool.resolveUtf8(in.readUnsignedShort());
-                int attributeLength = in.readInt();
-                if ("Code".equals(attributeName)) {
-                    in.readUnsignedShort();
-                    in.readUnsignedShort();
-                    int codeLength = in.readInt();
-                    code = new byte[codeLength];
-                    in.readFully(code);
-
-                    int exceptionTableLength = in.readUnsignedShort();
-                    skipFully(in, exceptionTableLength * 8);
-
-                    int codeAttributeCount = in.readUnsignedShort();
-                    for (int j = 0; j < codeAttributeCount; j++) {
-                        in.readUnsignedShort();
-                        int nestedAttributeLength = in.readInt();
-                        skipFully(in, nestedAttributeLength);
+        private final Path jarPath;
+        private Map<String, Long> localHeaderOffsets;
+
+        StoredEntryIndex(Path jarPath) {
+            this.jarPath = jarPath;
+        }
+
+        boolean transfer(ZipEntry entry, Path target) throws IOException {
+            if (entry.getMethod() != ZipEntry.STORED || entry.getSize() < 0L) {
+                return false;
+            }
+            Long offset = localHeaderOffsets().get(entry.getName());
+            if (offset == null) {
+                return false;
+            }
+
+            try (FileChannel jar = FileChannel.open(this.jarPath, StandardOpenOption.READ)) {
+                ByteBuffer header = ByteBuffer.allocate(30).order(ByteOrder.LITTLE_ENDIAN);
+                readFully(jar, header, offset.longValue());
+                if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+                    return false;
+                }
+
+                long dataStart = offset.longValue() + 30L + (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+                long size = entry.getSize();
+                if (dataStart + size > jar.size()) {
+                    return false;
+                }
+
+                try (FileChannel out = FileChannel.open(
+                    target,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING
+                )) {
+                    long position = 0L;
+                    while (position < size) {
+                        long transferred = jar.transferTo(dataStart + position, size - position, out);
+                        if (transferred <= 0L) {
+                            throw new EOFException("Unexpected end of stored entry " + entry.getName());
+                        }
+                        position += transferred;
                     }
-                } else {
-                    skipFully(in, attributeLength);
                 }
             }
+            return true;
+        }
 
-            if (code != null) {
-                scanBytecode(code, methodName, constantPool, usage);
+        private synchronized Map<String, Long> localHeaderOffsets() {
+            if (this.localHeaderOffsets == null) {
+                Map<String, Long> offsets = new HashMap<String, Long>();
+                try {
+                    readStoredEntries(offsets);
+                } catch (IOException | RuntimeException e) {
+                    offsets.clear();
+                }
+                this.localHeaderOffsets = offsets;
             }
+            return this.localHeaderOffsets;
         }
 
-        private static void scanBytecode(byte[] code, String methodName, ConstantPoolData constantPool, ClassTextureUsage usage) throws IOException {
-            boolean constructor = "<init>".equals(methodName);
-            boolean clinit = "<clinit>".equals(methodName);
-            boolean textureMethod = isTextureMethod(methodName);
-            boolean renderMethod = isRenderMethod(methodName);
-            String pendingTexture = null;
+        private void readStoredEntries(Map<String, Long> out) throws IOException {
+            try (FileChannel channel = FileChannel.open(this.jarPath, StandardOpenOption.READ)) {
+                long size = channel.size();
+                int tailLength = (int) Math.min(size, 0xFFFF + 22);
+                ByteBuffer tail = ByteBuffer.allocate(tailLength).order(ByteOrder.LITTLE_ENDIAN);
+                readFully(channel, tail, size - tailLength);
 
-            for (int pc = 0; pc < code.length; ) {
-                int opcode = code[pc] & 0xFF;
-                switch (opcode) {
-                    case 18: {
-                        String textureEntry = normalizeTextureEntry(constantPool.resolveString(code[pc + 1] & 0xFF));
-                        if (textureEntry != null) {
-                            pendingTexture = textureEntry;
-                            usage.recordDirectTexture(textureEntry, textureMethod, renderMethod);
-                        }
-                        pc += 2;
-                        continue;
-                    }
-                    case 19:
-                    case 20: {
-                        String textureEntry = normalizeTextureEntry(constantPool.resolveString(readUnsignedShort(code, pc + 1)));
-                        if (textureEntry != null) {
-                            pendingTexture = textureEntry;
-                            usage.recordDirectTexture(textureEntry, textureMethod, renderMethod);
-                        }
-                        pc += 3;
-                        continue;
-                    }
-                    case 178:
-                    case 179:
-                    case 180:
-                    case 181: {
-                        int memberIndex = readUnsignedShort(code, pc + 1);
-                        String owner = constantPool.resolveMemberOwner(memberIndex);
-                        String memberName = constantPool.resolveMemberName(memberIndex);
-                        if ("net/minecraft/client/model/geom/ModelLayers".equals(owner)) {
-                            usage.recordLayerField(memberName, constructor);
-                        } else if (usage.className.equals(owner) && memberName != null) {
-                            if (opcode == 179 && clinit && pendingTexture != null) {
-                                usage.texturePathByField.put(memberName, pendingTexture);
-                                pendingTexture = null;
-                            } else if (opcode == 178) {
-                                usage.recordTextureFieldUse(memberName, textureMethod, renderMethod);
-                            }
-                        }
-                        pc += 3;
-                        continue;
+                int end = -1;
+                for (int i = tailLength - 22; i >= 0; i--) {
+                    if (tail.getInt(i) == END_SIGNATURE) {
+                        end = i;
+                        break;
                     }
-                    case 182:
-                    case 183:
-                    case 184: {
-                        int memberIndex = readUnsignedShort(code, pc + 1);
-                        String owner = constantPool.resolveMemberOwner(memberIndex);
-                        String memberName = constantPool.resolveMemberName(memberIndex);
-                        if ("net/minecraft/client/model/geom/ModelLayers".equals(owner)) {
-                            usage.recordLayerFactory(memberName, constructor);
-                        }
-                        pc += 3;
-                        continue;
+                }
+                if (end < 0) {
+                    return;
+                }
+
+                long directorySize = tail.getInt(end + 12) & UNSIGNED_INT_MAX;
+                long directoryOffset = tail.getInt(end + 16) & UNSIGNED_INT_MAX;
+                if (directoryOffset == UNSIGNED_INT_MAX || directorySize > Integer.MAX_VALUE || directoryOffset + directorySize > size) {
+                    return;
+                }
+
+                ByteBuffer directory = ByteBuffer.allocate((int) directorySize).order(ByteOrder.LITTLE_ENDIAN);
+                readFully(channel, directory, directoryOffset);
+                int position = 0;
+                while (position + 46 <= directorySize && directory.getInt(position) == CENTRAL_HEADER_SIGNATURE) {
+                    int method = directory.getShort(position + 10) & 0xFFFF;
+                    int nameLength = directory.getShort(position + 28) & 0xFFFF;
+                    int extraLength = directory.getShort(position + 30) & 0xFFFF;
+                    int commentLength = directory.getShort(position + 32) & 0xFFFF;
+                    long localOffset = directory.getInt(position + 42) & UNSIGNED_INT_MAX;
+                    if (method == ZipEntry.STORED && localOffset != UNSIGNED_INT_MAX) {
+                        String name = new String(directory.array(), position + 46, nameLength, StandardCharsets.UTF_8);
+                        out.put(name, Long.valueOf(localOffset));
                     }
-                    case 185:
-                    case 186:
-                        pc += 5;
-                        continue;
-                    default:
-                        pc += instructionLength(code, pc, opcode);
-                        continue;
+                    position += 46 + nameLength + extraLength + commentLength;
                 }
             }
         }
 
-        private static boolean isTextureMethod(String methodName) {
-            if (methodName == null) {
-                return false;
+        private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, position + buffer.position());
+                if (read < 0) {
+                    throw new EOFException("Unexpected end of jar file.");
+                }
             }
-            String lower = methodName.toLowerCase(Locale.ROOT);
-            return lower.contains("texture") || lower.contains("skin");
         }
+    }
 
-        private static boolean isRenderMethod(String methodName) {
-            if (methodName == null) {
-                return false;
-            }
-            String lower = methodName.toLowerCase(Locale.ROOT);
-            return lower.contains("render") || lower.contains("submit");
+    private static final class ResolvedTexture {
+        final String sourceEntry;
+        final Path extractedPath;
+        final String mapKdPath;
+
+        ResolvedTexture(String sourceEntry, Path extractedPath, String mapKdPath) {
+            this.sourceEntry = sourceEntry;
+            this.extractedPath = extractedPath;
+            this.mapKdPath = mapKdPath;
         }
+    }
 
-        private static String normalizeTextureEntry(String value) {
-            if (value == null) {
-                return null;
-            }
+    private interface JarEntryConsumer {
+        boolean accepts(String entryName);
 
-            String normalized = value.trim().replace('\\', '/');
-            if (!normalized.endsWith(".png")) {
-                return null;
+        boolean needsContent();
+
+        void accept(String entryName, byte[] content, int length) throws IOException;
+    }
+
+    private interface ParallelJarEntryConsumer extends JarEntryConsumer {
+        ParallelJarEntryConsumer fork();
+
+        void merge(ParallelJarEntryConsumer partial);
+    }
+
+    private static final class JarIndex implements AutoCloseable {
+        private final ZipFile zipFile;
+        private final List<JarEntryConsumer> consumers;
+        private final EntryBuffer buffer = new EntryBuffer();
+
+        JarIndex(Path jarPath) throws IOException {
+            this.zipFile = new ZipFile(jarPath.toFile());
+            this.consumers = new ArrayList<JarEntryConsumer>();
+        }
+
+        void register(JarEntryConsumer consumer) {
+            this.consumers.add(consumer);
+        }
+
+        ZipFile zipFile() {
+            return this.zipFile;
+        }
+
+        void scan(int parallelism) throws IOException {
+            List<JarEntryConsumer> sequential = new ArrayList<JarEntryConsumer>(this.consumers.size());
+            List<ParallelJarEntryConsumer> forkable = new ArrayList<ParallelJarEntryConsumer>(this.consumers.size());
+            for (JarEntryConsumer consumer : this.consumers) {
+                if (parallelism > 1 && consumer instanceof ParallelJarEntryConsumer) {
+                    forkable.add((ParallelJarEntryConsumer) consumer);
+                } else {
+                    sequential.add(consumer);
+                }
             }
-            if (normalized.startsWith("/")) {
-                normalized = normalized.substring(1);
+
+            List<ZipEntry> parallelEntries = new ArrayList<ZipEntry>();
+            List<JarEntryConsumer> interested = new ArrayList<JarEntryConsumer>(sequential.size());
+            Enumeration<? extends ZipEntry> entries = this.zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (entry.isDirectory()) {
+                    continue;
+                }
+
+                String entryName = entry.getName();
+                for (ParallelJarEntryConsumer consumer : forkable) {
+                    if (consumer.accepts(entryName)) {
+                        parallelEntries.add(entry);
+                        break;
+                    }
+                }
+                dispatch(entry, sequential, interested, this.buffer);
             }
-            if (normalized.startsWith("assets/")) {
-                return normalized;
+
+            if (!parallelEntries.isEmpty()) {
+                scanParallel(parallelEntries, forkable, parallelism);
             }
+        }
 
-            int colon = normalized.indexOf(':');
-            if (colon > 0) {
-                String namespace = normalized.substring(0, colon);
-                String path = normalized.substring(colon + 1);
-                if (path.startsWith("/")) {
-                    path = path.substring(1);
+        private void scanParallel(List<ZipEntry> entries, List<ParallelJarEntryConsumer> consumers, int parallelism) throws IOException {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                List<ParallelJarEntryConsumer> partials = pool.invoke(new ScanTask(this, entries, consumers, 0, entries.size()));
+                for (int i = 0; i < consumers.size(); i++) {
+                    consumers.get(i).merge(partials.get(i));
                 }
-                return "assets/" + namespace + "/" + path;
+            } catch (UncheckedIOException e) {
+                Throwable cause = e;
+                while (cause != null && !(cause instanceof IOException)) {
+                    cause = cause.getCause();
+                }
+                if (cause != null) {
+                    throw (IOException) cause;
+                }
+                throw e;
+            } finally {
+                pool.shutdown();
             }
+        }
 
-            if (normalized.startsWith("textures/")) {
-                return "assets/minecraft/" + normalized;
+        private void dispatch(ZipEntry entry, List<? extends JarEntryConsumer> consumers, List<JarEntryConsumer> interested, EntryBuffer buffer)
+                throws IOException {
+            String entryName = entry.getName();
+            boolean needsContent = false;
+            interested.clear();
+            for (JarEntryConsumer consumer : consumers) {
+                if (consumer.accepts(entryName)) {
+                    interested.add(consumer);
+                    needsContent |= consumer.needsContent();
+                }
+            }
+            if (interested.isEmpty()) {
+                return;
             }
 
-            return null;
+            int length = 0;
+            if (needsContent) {
+                length = buffer.read(this.zipFile, entry);
+            }
+            for (JarEntryConsumer consumer : interested) {
+                consumer.accept(entryName, needsContent ? buffer.data : null, length);
+            }
         }
 
-        private static int instructionLength(byte[] code, int pc, int opcode) throws IOException {
-            switch (opcode) {
-                case 16:
-                case 18:
-                case 21:
-                case 22:
-                case 23:
-                case 24:
-                case 25:
-                case 54:
-                case 55:
-                case 56:
-                case 57:
-                case 58:
-                case 169:
-                case 188:
-                    return 2;
-                case 17:
-                case 19:
-                case 20:
-                case 132:
-                case 153:
-                case 154:
-                case 155:
-                case 156:
-                case 157:
-                case 158:
-                case 159:
-                case 160:
-                case 161:
-                case 162:
-                case 163:
-                case 164:
-                case 165:
-                case 166:
-                case 167:
-                case 168:
-                case 178:
-                case 179:
-                case 180:
-                case 181:
-                case 182:
-                case 183:
-                case 184:
-                case 187:
-                case 189:
-                case 192:
-                case 193:
-                case 198:
-                case 199:
-                    return 3;
-                case 185:
-                case 186:
-                case 197:
-                case 200:
-                case 201:
-                    return opcode == 197 ? 4 : 5;
-                case 170: {
-                    int aligned = (pc + 4) & ~3;
-                    int low = readInt(code, aligned + 4);
-                    int high = readInt(code, aligned + 8);
-                    return (aligned - pc) + 12 + ((high - low + 1) * 4);
+        private static final class ScanTask extends RecursiveTask<List<ParallelJarEntryConsumer>> {
+            private static final long serialVersionUID = 1L;
+            private static final int LEAF_SIZE = 64;
+
+            private final transient JarIndex index;
+            private final transient List<ZipEntry> entries;
+            private final transient List<ParallelJarEntryConsumer> consumers;
+            private final int start;
+            private final int end;
+
+            ScanTask(JarIndex index, List<ZipEntry> entries, List<ParallelJarEntryConsumer> consumers, int start, int end) {
+                this.index = index;
+                this.entries = entries;
+                this.consumers = consumers;
+                this.start = start;
+                this.end = end;
+            }
+
+            @Override
+            protected List<ParallelJarEntryConsumer> compute() {
+                if (this.end - this.start <= LEAF_SIZE) {
+                    return scanLeaf();
                 }
-                case 171: {
-                    int aligned = (pc + 4) & ~3;
-                    int pairs = readInt(code, aligned + 4);
-                    return (aligned - pc) + 8 + (pairs * 8);
+
+                int middle = (this.start + this.end) >>> 1;
+                ScanTask left = new ScanTask(this.index, this.entries, this.consumers, this.start, middle);
+                ScanTask right = new ScanTask(this.index, this.entries, this.consumers, middle, this.end);
+                right.fork();
+                List<ParallelJarEntryConsumer> leftPartials = left.compute();
+                List<ParallelJarEntryConsumer> rightPartials = right.join();
+                for (int i = 0; i < leftPartials.size(); i++) {
+                    leftPartials.get(i).merge(rightPartials.get(i));
                 }
-                case 196: {
-                    int widenedOpcode = code[pc + 1] & 0xFF;
-                    return widenedOpcode == 132 ? 6 : 4;
+                return leftPartials;
+            }
+
+            private List<ParallelJarEntryConsumer> scanLeaf() {
+                List<ParallelJarEntryConsumer> partials = new ArrayList<ParallelJarEntryConsumer>(this.consumers.size());
+                for (ParallelJarEntryConsumer consumer : this.consumers) {
+                    partials.add(consumer.fork());
                 }
-                default:
-                    return 1;
+
+                EntryBuffer buffer = new EntryBuffer();
+                List<JarEntryConsumer> interested = new ArrayList<JarEntryConsumer>(partials.size());
+                try {
+                    for (int i = this.start; i < this.end; i++) {
+                        this.index.dispatch(this.entries.get(i), partials, interested, buffer);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return partials;
+            }
+        }
+
+        private static final class EntryBuffer {
+            byte[] data = new byte[1 << 16];
+
+            int read(ZipFile zipFile, ZipEntry entry) throws IOException {
+                long size = entry.getSize();
+                if (size > this.data.length && size <= Integer.MAX_VALUE - 8) {
+                    this.data = new byte[(int) size];
+                }
+
+                int length = 0;
+                try (InputStream in = zipFile.getInputStream(entry)) {
+                    int read;
+                    while ((read = in.read(this.data, length, this.data.length - length)) >= 0) {
+                        length += read;
+                        if (length == this.data.length) {
+                            int next = in.read();
+                            if (next < 0) {
+                                break;
+                            }
+                            this.data = Arrays.copyOf(this.data, this.data.length * 2);
+                            this.data[length++] = (byte) next;
+                        }
+                    }
+                }
+                return length;
             }
         }
 
-        private static int readUnsignedShort(byte[] code, int offset) {
-            return ((code[offset] & 0xFF) << 8) | (code[offset + 1] & 0xFF);
+        @Override
+        public void close() throws IOException {
+            this.zipFile.close();
         }
+    }
+
+    private static final class ClassFileReader {
+        static final byte[] MODEL_LAYERS_CLASS = "net/minecraft/client/model/geom/ModelLayers".getBytes(StandardCharsets.UTF_8);
+
+        private static final byte[] CODE_ATTRIBUTE = "Code".getBytes(StandardCharsets.UTF_8);
+
+        private byte[] data;
+        private int length;
+        private int constantCount;
+        private int afterConstantPool;
+        private int[] tags = new int[1024];
+        private int[] offsets = new int[1024];
+        private String[] utf8 = new String[1024];
+
+        boolean reset(byte[] data, int length) throws IOException {
+            Arrays.fill(this.utf8, 0, this.constantCount, null);
+            this.data = data;
+            this.length = length;
+            this.constantCount = 0;
+            if (length < 10 || readInt(0) != 0xCAFEBABE) {
+                return false;
+            }
+
+            int count = readUnsignedShort(8);
+            if (count > this.tags.length) {
+                int capacity = Math.max(count, this.tags.length * 2);
+                this.tags = new int[capacity];
+                this.offsets = new int[capacity];
+                this.utf8 = new String[capacity];
+            }
+            this.constantCount = count;
 
-        private static int readInt(byte[] code, int offset) {
-            return ((code[offset] & 0xFF) << 24)
-                | ((code[offset + 1] & 0xFF) << 16)
-                | ((code[offset + 2] & 0xFF) << 8)
-                | (code[offset + 3] & 0xFF);
+            int position = 10;
+            for (int i = 1; i < count; i++) {
+                int tag = data[position] & 0xFF;
+                this.tags[i] = tag;
+                this.offsets[i] = position + 1;
+                switch (tag) {
+                    case 1:
+                        position += 3 + readUnsignedShort(position + 1);
+                        break;
+                    case 3:
+                    case 4:
+                        position += 5;
+                        break;
+                    case 5:
+                    case 6:
+                        position += 9;
+                        this.tags[++i] = 0;
+                        break;
+                    case 7:
+                    case 8:
+                    case 16:
+                    case 19:
+                    case 20:
+                        position += 3;
+                        break;
+                    case 9:
+                    case 10:
+                    case 11:
+                    case 12:
+                    case 17:
+                    case 18:
+                        position += 5;
+                        break;
+                    case 15:
+                        position += 4;
+                        break;
+                    default:
+                        throw new IOException("Unsupported class file constant tag: " + tag);
+                }
+                if (position > length) {
+                    throw new EOFException("Truncated class file constant pool.");
+                }
+            }
+            this.afterConstantPool = position;
+            return true;
         }
 
-        private static void skipFieldInfo(DataInputStream in) throws IOException {
-            in.readUnsignedShort();
-            in.readUnsignedShort();
-            in.readUnsignedShort();
-            skipAttributes(in);
+        int constantCount() {
+            return this.constantCount;
         }
 
-        private static void skipAttributes(DataInputStream in) throws IOException {
-            int attributeCount = in.readUnsignedShort();
-            for (int i = 0; i < attributeCount; i++) {
-                in.readUnsignedShort();
-                int attributeLength = in.readInt();
-                skipFully(in, attributeLength);
+        int afterConstantPool() {
+            return this.afterConstantPool;
+        }
+
+        int tag(int index) {
+            return index > 0 && index < this.constantCount ? this.tags[index] : 0;
+        }
+
+        int readUnsignedShort(int offset) throws IOException {
+            if (offset + 2 > this.length) {
+                throw new EOFException("Truncated class file.");
             }
+            return ((this.data[offset] & 0xFF) << 8) | (this.data[offset + 1] & 0xFF);
         }
 
-        private static void skipFully(DataInputStream in, int length) throws IOException {
-            int remaining = length;
-            while (remaining > 0) {
-                int skipped = in.skipBytes(remaining);
-                if (skipped <= 0) {
-                    in.readByte();
-                    skipped = 1;
-                }
-                remaining -= skipped;
+        int readInt(int offset) throws IOException {
+            if (offset + 4 > this.length) {
+                throw new EOFException("Truncated class file.");
             }
+            return ((this.data[offset] & 0xFF) << 24)
+                | ((this.data[offset + 1] & 0xFF) << 16)
+                | ((this.data[offset + 2] & 0xFF) << 8)
+                | (this.data[offset + 3] & 0xFF);
         }
 
-        private static final class ConstantPoolData {
-            final int[] tags;
-            final String[] utf8;
-            final int[] classNameIndex;
-            final int[] stringIndex;
-            final int[] memberClassIndex;
-            final int[] memberNameAndTypeIndex;
-            final int[] nameAndTypeNameIndex;
+        int readUnsignedByte(int offset) throws IOException {
+            if (offset >= this.length) {
+                throw new EOFException("Truncated class file.");
+            }
+            return this.data[offset] & 0xFF;
+        }
 
-            ConstantPoolData(
-                int[] tags,
-                String[] utf8,
-                int[] classNameIndex,
-                int[] stringIndex,
-                int[] memberClassIndex,
-                int[] memberNameAndTypeIndex,
-                int[] nameAndTypeNameIndex
-            ) {
-                this.tags = tags;
-                this.utf8 = utf8;
-                this.classNameIndex = classNameIndex;
-                this.stringIndex = stringIndex;
-                this.memberClassIndex = memberClassIndex;
-                this.memberNameAndTypeIndex = memberNameAndTypeIndex;
-                this.nameAndTypeNameIndex = nameAndTypeNameIndex;
-            }
-
-            static ConstantPoolData read(DataInputStream in) throws IOException {
-                int cpCount = in.readUnsignedShort();
-                int[] tags = new int[cpCount];
-                String[] utf8 = new String[cpCount];
-                int[] classNameIndex = new int[cpCount];
-                int[] stringIndex = new int[cpCount];
-                int[] memberClassIndex = new int[cpCount];
-                int[] memberNameAndTypeIndex = new int[cpCount];
-                int[] nameAndTypeNameIndex = new int[cpCount];
-
-                for (int i = 1; i < cpCount; i++) {
-                    int tag = in.readUnsignedByte();
-                    tags[i] = tag;
-                    switch (tag) {
-                        case 1:
-                            utf8[i] = in.readUTF();
-                            break;
-                        case 3:
-                        case 4:
-                            in.readInt();
-                            break;
-                        case 5:
-                        case 6:
-                            in.readLong();
-                            i++;
-                            break;
-                        case 7:
-                            classNameIndex[i] = in.readUnsignedShort();
-                            break;
-                        case 8:
-                            stringIndex[i] = in.readUnsignedShort();
-                            break;
-                        case 9:
-                        case 10:
-                        case 11:
-                            memberClassIndex[i] = in.readUnsignedShort();
-                            memberNameAndTypeIndex[i] = in.readUnsignedShort();
-                            break;
-                        case 12:
-                            nameAndTypeNameIndex[i] = in.readUnsignedShort();
-                            in.readUnsignedShort();
-                            break;
-                        case 15:
-                            in.readUnsignedByte();
-                            in.readUnsignedShort();
-                            break;
-                        case 16:
-                        case 19:
-                        case 20:
-                            in.readUnsignedShort();
-                            break;
-                        case 17:
-                        case 18:
-                            in.readUnsignedShort();
-                            in.readUnsignedShort();
-                            break;
-                        default:
-                            throw new IOException("Unsupported class file constant tag: " + tag);
-                    }
-                }
-
-                return new ConstantPoolData(tags, utf8, classNameIndex, stringIndex, memberClassIndex, memberNameAndTypeIndex, nameAndTypeNameIndex);
-            }
-
-            String resolveUtf8(int index) {
-                if (index <= 0 || index >= this.utf8.length) {
-                    return null;
-                }
-                return this.utf8[index];
+        int skipAttributes(int position) throws IOException {
+            int attributeCount = readUnsignedShort(position);
+            position += 2;
+            for (int i = 0; i < attributeCount; i++) {
+                position += 6 + readInt(position + 2);
             }
+            return position;
+        }
 
-            String resolveClassName(int index) {
-                if (index <= 0 || index >= this.classNameIndex.length) {
-                    return null;
+        boolean isCodeAttribute(int nameIndex) {
+            return utf8Equals(nameIndex, CODE_ATTRIBUTE);
+        }
+
+        boolean utf8Equals(int index, byte[] expected) {
+            if (tag(index) != 1) {
+                return false;
+            }
+            int offset = this.offsets[index];
+            int size = ((this.data[offset] & 0xFF) << 8) | (this.data[offset + 1] & 0xFF);
+            if (size != expected.length) {
+                return false;
+            }
+            for (int i = 0; i < size; i++) {
+                if (this.data[offset + 2 + i] != expected[i]) {
+                    return false;
                 }
-                return resolveUtf8(this.classNameIndex[index]);
             }
+            return true;
+        }
 
-            String resolveMemberOwner(int index) {
-                if (index <= 0 || index >= this.memberClassIndex.length) {
-                    return null;
+        boolean hasClassReference(byte[] internalName) throws IOException {
+            for (int i = 1; i < this.constantCount; i++) {
+                if (this.tags[i] == 7 && utf8Equals(readUnsignedShort(this.offsets[i]), internalName)) {
+                    return true;
                 }
-                return resolveClassName(this.memberClassIndex[index]);
             }
+            return false;
+        }
 
-            String resolveMemberName(int index) {
-                if (index <= 0 || index >= this.memberNameAndTypeIndex.length) {
-                    return null;
-                }
-                int nameAndTypeIndex = this.memberNameAndTypeIndex[index];
-                if (nameAndTypeIndex <= 0 || nameAndTypeIndex >= this.nameAndTypeNameIndex.length) {
-                    return null;
+        boolean hasMemberReference(byte[] ownerName, Set<String> memberNames) throws IOException {
+            for (int i = 1; i < this.constantCount; i++) {
+                int tag = this.tags[i];
+                if ((tag == 9 || tag == 10) && isMemberOwner(i, ownerName) && memberNames.contains(memberName(i))) {
+                    return true;
                 }
-                return resolveUtf8(this.nameAndTypeNameIndex[nameAndTypeIndex]);
             }
+            return false;
+        }
 
-            String resolveString(int index) {
-                if (index <= 0 || index >= this.tags.length) {
-                    return null;
-                }
-                if (this.tags[index] == 8) {
-                    return resolveUtf8(this.stringIndex[index]);
+        boolean hasUtf8Containing(byte[] needle) {
+            for (int i = 1; i < this.constantCount; i++) {
+                if (this.tags[i] != 1) {
+                    continue;
                 }
-                if (this.tags[index] == 1) {
-                    return this.utf8[index];
+                int offset = this.offsets[i];
+                int size = ((this.data[offset] & 0xFF) << 8) | (this.data[offset + 1] & 0xFF);
+                int start = offset + 2;
+                int last = start + size - needle.length;
+                for (int p = start; p <= last; p++) {
+                    int j = 0;
+                    while (j < needle.length && this.data[p + j] == needle[j]) {
+                        j++;
+                    }
+                    if (j == needle.length) {
+                        return true;
+                    }
                 }
+            }
+            return false;
+        }
+
+        String utf8(int index) throws IOException {
+            if (tag(index) != 1) {
                 return null;
             }
+            String value = this.utf8[index];
+            if (value == null) {
+                value = decodeUtf8(this.offsets[index]);
+                this.utf8[index] = value;
+            }
+            return value;
         }
 
-        private static final class ClassTextureUsage {
-            final String className;
-            final Set<String> constructorLayerFields;
-            final Set<String> constructorLayerFactories;
-            final Set<String> methodLayerFields;
-            final Set<String> methodLayerFactories;
-            final Map<String, String> texturePathByField;
-            final Set<String> textureFieldsInTextureMethods;
-            final Set<String> textureFieldsInRenderMethods;
-            final Set<String> directTexturesInTextureMethods;
-            final Set<String> directTexturesInRenderMethods;
+        String className(int index) throws IOException {
+            if (tag(index) != 7) {
+                return null;
+            }
+            return utf8(readUnsignedShort(this.offsets[index]));
+        }
 
-            ClassTextureUsage(String className) {
-                this.className = className;
-                this.constructorLayerFields = new LinkedHashSet<String>();
-                this.constructorLayerFactories = new LinkedHashSet<String>();
-                this.methodLayerFields = new LinkedHashSet<String>();
-                this.methodLayerFactories = new LinkedHashSet<String>();
-                this.texturePathByField = new HashMap<String, String>();
-                this.textureFieldsInTextureMethods = new LinkedHashSet<String>();
-                this.textureFieldsInRenderMethods = new LinkedHashSet<String>();
-                this.directTexturesInTextureMethods = new LinkedHashSet<String>();
-                this.directTexturesInRenderMethods = new LinkedHashSet<String>();
+        boolean isMemberOwner(int memberIndex, byte[] internalName) throws IOException {
+            int tag = tag(memberIndex);
+            if (tag != 9 && tag != 10 && tag != 11) {
+                return false;
             }
+            int classIndex = readUnsignedShort(this.offsets[memberIndex]);
+            return tag(classIndex) == 7 && utf8Equals(readUnsignedShort(this.offsets[classIndex]), internalName);
+        }
 
-            void recordLayerField(String memberName, boolean constructor) {
-                if (memberName == null || memberName.isEmpty()) {
-                    return;
-                }
-                if (constructor) {
-                    this.constructorLayerFields.add(memberName);
-                } else {
-                    this.methodLayerFields.add(memberName);
-                }
+        String memberOwner(int memberIndex) throws IOException {
+            int tag = tag(memberIndex);
+            if (tag != 9 && tag != 10 && tag != 11) {
+                return null;
             }
+            return className(readUnsignedShort(this.offsets[memberIndex]));
+        }
 
-            void recordLayerFactory(String memberName, boolean constructor) {
-                if (memberName == null || memberName.isEmpty()) {
-                    return;
-                }
-                if (constructor) {
-                    this.constructorLayerFactories.add(memberName);
+        String memberName(int memberIndex) throws IOException {
+            int tag = tag(memberIndex);
+            if (tag != 9 && tag != 10 && tag != 11) {
+                return null;
+            }
+            int nameAndTypeIndex = readUnsignedShort(this.offsets[memberIndex] + 2);
+            if (tag(nameAndTypeIndex) != 12) {
+                return null;
+            }
+            return utf8(readUnsignedShort(this.offsets[nameAndTypeIndex]));
+        }
+
+        String string(int index) throws IOException {
+            int tag = tag(index);
+            if (tag == 8) {
+                return utf8(readUnsignedShort(this.offsets[index]));
+            }
+            if (tag == 1) {
+                return utf8(index);
+            }
+            return null;
+        }
+
+        private String decodeUtf8(int offset) throws IOException {
+            int size = readUnsignedShort(offset);
+            int position = offset + 2;
+            int end = position + size;
+            if (end > this.length) {
+                throw new EOFException("Truncated class file constant.");
+            }
+
+            char[] chars = new char[size];
+            int count = 0;
+            while (position < end) {
+                int c = this.data[position] & 0xFF;
+                if (c < 0x80) {
+                    chars[count++] = (char) c;
+                    position++;
+                } else if ((c >> 5) == 0x6) {
+                    if (position + 2 > end) {
+                        throw new UTFDataFormatException("Malformed input: partial character at end.");
+                    }
+                    int c2 = this.data[position + 1];
+                    if ((c2 & 0xC0) != 0x80) {
+                        throw new UTFDataFormatException("Malformed input around byte " + (position - offset - 2));
+                    }
+                    chars[count++] = (char) (((c & 0x1F) << 6) | (c2 & 0x3F));
+                    position += 2;
+                } else if ((c >> 4) == 0xE) {
+                    if (position + 3 > end) {
+                        throw new UTFDataFormatException("Malformed input: partial character at end.");
+                    }
+                    int c2 = this.data[position + 1];
+                    int c3 = this.data[position + 2];
+                    if ((c2 & 0xC0) != 0x80 || (c3 & 0xC0) != 0x80) {
+                        throw new UTFDataFormatException("Malformed input around byte " + (position - offset - 2));
+                    }
+                    chars[count++] = (char) (((c & 0x0F) << 12) | ((c2 & 0x3F) << 6) | (c3 & 0x3F));
+                    position += 3;
                 } else {
-                    this.methodLayerFactories.add(memberName);
+                    throw new UTFDataFormatException("Malformed input around byte " + (position - offset - 2));
                 }
             }
+            return new String(chars, 0, count);
+        }
+    }
 
-            void recordTextureFieldUse(String fieldName, boolean textureMethod, boolean renderMethod) {
-                if (fieldName == null || fieldName.isEmpty()) {
-                    return;
+    private static final class JarScanResult {
+        final List<RuntimeTextureIndex.ClassTextureUsage> textureUsages;
+        final RuntimeOrientationResolver.UsageIndex orientationUsage;
+        final List<String> textureEntries;
+
+        JarScanResult(
+            List<RuntimeTextureIndex.ClassTextureUsage> textureUsages,
+            RuntimeOrientationResolver.UsageIndex orientationUsage,
+            List<String> textureEntries
+        ) {
+            this.textureUsages = textureUsages;
+            this.orientationUsage = orientationUsage;
+            this.textureEntries = textureEntries;
+        }
+    }
+
+    private static final class JarIndexCache {
+        static final String FILE_NAME = ".jar-index-cache.bin";
+
+        private static final int MAGIC = 0x4A494458;
+        private static final int FORMAT_VERSION = 1;
+
+        private JarIndexCache() {
+        }
+
+        static JarScanResult load(Path cachePath, Path jarPath) {
+            if (!Files.isRegularFile(cachePath)) {
+                return null;
+            }
+
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cachePath)))) {
+                if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                    return null;
                 }
-                if (textureMethod) {
-                    this.textureFieldsInTextureMethods.add(fieldName);
+                if (in.readLong() != Files.size(jarPath) || in.readLong() != Files.getLastModifiedTime(jarPath).toMillis()) {
+                    return null;
                 }
-                if (renderMethod) {
-                    this.textureFieldsInRenderMethods.add(fieldName);
+                byte[] digest = new byte[in.readUnsignedShort()];
+                in.readFully(digest);
+                if (!Arrays.equals(digest, sha256(jarPath))) {
+                    return null;
                 }
-            }
 
-            void recordDirectTexture(String textureEntry, boolean textureMethod, boolean renderMethod) {
-                if (textureEntry == null || textureEntry.isEmpty()) {
-                    return;
-                }
-                if (textureMethod) {
-                    this.directTexturesInTextureMethods.add(textureEntry);
-                }
-                if (renderMethod) {
-                    this.directTexturesInRenderMethods.add(textureEntry);
-                }
-            }
-
-            void recordCandidates(
-                Map<String, Map<String, Integer>> candidateScoresByLocationKey,
-                Map<String, Set<String>> locationKeysByField,
-                Map<String, Set<String>> locationKeysByFactory
-            ) {
-                Map<String, Integer> locationScores = collectLocationScores(locationKeysByField, locationKeysByFactory);
-                if (locationScores.isEmpty()) {
-                    return;
-                }
-
-                Map<String, Integer> textureScores = collectTextureScores();
-                if (textureScores.isEmpty()) {
-                    return;
-                }
-
-                for (Map.Entry<String, Integer> locationEntry : locationScores.entrySet()) {
-                    String locationKey = locationEntry.getKey();
-                    int locationScore = locationEntry.getValue().intValue();
-
-                    Map<String, Integer> textureScoresForLocation = candidateScoresByLocationKey.get(locationKey);
-                    if (textureScoresForLocation == null) {
-                        textureScoresForLocation = new HashMap<String, Integer>();
-                        candidateScoresByLocationKey.put(locationKey, textureScoresForLocation);
-                    }
-
-                    for (Map.Entry<String, Integer> textureEntry : textureScores.entrySet()) {
-                        int combinedScore = locationScore + textureEntry.getValue().intValue();
-                        Integer previous = textureScoresForLocation.get(textureEntry.getKey());
-                        if (previous == null || combinedScore > previous.intValue()) {
-                            textureScoresForLocation.put(textureEntry.getKey(), Integer.valueOf(combinedScore));
-                        }
-                    }
+                int usageCount = in.readInt();
+                List<RuntimeTextureIndex.ClassTextureUsage> textureUsages = new ArrayList<RuntimeTextureIndex.ClassTextureUsage>(usageCount);
+                for (int i = 0; i < usageCount; i++) {
+                    textureUsages.add(RuntimeTextureIndex.ClassTextureUsage.read(in));
                 }
+                RuntimeOrientationResolver.UsageIndex orientationUsage = RuntimeOrientationResolver.UsageIndex.read(in);
+                List<String> textureEntries = readStrings(in, new ArrayList<String>());
+                return new JarScanResult(textureUsages, orientationUsage, textureEntries);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Ignoring unreadable jar index cache " + cachePath + " (" + e + ")");
+                return null;
             }
+        }
 
-            private Map<String, Integer> collectLocationScores(
-                Map<String, Set<String>> locationKeysByField,
-                Map<String, Set<String>> locationKeysByFactory
-            ) {
-                Map<String, Integer> out = new HashMap<String, Integer>();
-                addLocationScores(out, this.constructorLayerFields, locationKeysByField, 240, false);
-                addLocationScores(out, this.constructorLayerFactories, locationKeysByFactory, 200, true);
-                addLocationScores(out, this.methodLayerFields, locationKeysByField, 90, false);
-                addLocationScores(out, this.methodLayerFactories, locationKeysByFactory, 60, true);
-                return out;
-            }
-
-            private Map<String, Integer> collectTextureScores() {
-                Map<String, Integer> out = new HashMap<String, Integer>();
-                addResolvedTextureScores(out, this.textureFieldsInTextureMethods, 420);
-                addDirectTextureScores(out, this.directTexturesInTextureMethods, 400);
-                addResolvedTextureScores(out, this.textureFieldsInRenderMethods, 320);
-                addDirectTextureScores(out, this.directTexturesInRenderMethods, 300);
-
-                if (out.isEmpty() && this.texturePathByField.size() == 1) {
-                    for (String texture : this.texturePathByField.values()) {
-                        out.put(texture, Integer.valueOf(220));
+        static void store(Path cachePath, Path jarPath, JarScanResult scan) {
+            Path tempPath = null;
+            try {
+                tempPath = tempSibling(cachePath);
+                byte[] digest = sha256(jarPath);
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPath)))) {
+                    out.writeInt(MAGIC);
+                    out.writeInt(FORMAT_VERSION);
+                    out.writeLong(Files.size(jarPath));
+                    out.writeLong(Files.getLastModifiedTime(jarPath).toMillis());
+                    out.writeShort(digest.length);
+                    out.write(digest);
+
+                    out.writeInt(scan.textureUsages.size());
+                    for (RuntimeTextureIndex.ClassTextureUsage usage : scan.textureUsages) {
+                        usage.write(out);
                     }
+                    scan.orientationUsage.write(out);
+                    writeStrings(out, scan.textureEntries);
                 }
-
-                return out;
-            }
-
-            private void addResolvedTextureScores(Map<String, Integer> out, Set<String> fieldNames, int score) {
-                for (String fieldName : fieldNames) {
-                    String textureEntry = this.texturePathByField.get(fieldName);
-                    if (textureEntry != null) {
-                        mergeScore(out, textureEntry, score);
+                moveIntoPlace(tempPath, cachePath);
+            } catch (IOException e) {
+                System.err.println("Failed to write jar index cache " + cachePath + " (" + e + ")");
+                try {
+                    if (tempPath != null) {
+                        Files.deleteIfExists(tempPath);
                     }
+                } catch (IOException ignored) {
                 }
             }
+        }
 
-            private void addDirectTextureScores(Map<String, Integer> out, Set<String> textureEntries, int score) {
-                for (String textureEntry : textureEntries) {
-                    mergeScore(out, textureEntry, score);
-                }
-            }
-
-            private static void addLocationScores(
-                Map<String, Integer> out,
-                Set<String> memberNames,
-                Map<String, Set<String>> locationKeysByMember,
-                int score,
-                boolean requireUniqueLocation
-            ) {
-                for (String memberName : memberNames) {
-                    Set<String> locationKeys = locationKeysByMember.get(memberName);
-                    if (locationKeys == null || locationKeys.isEmpty()) {
-                        continue;
-                    }
-                    if (requireUniqueLocation && locationKeys.size() != 1) {
-                        continue;
-                    }
-                    for (String locationKey : locationKeys) {
-                        mergeScore(out, locationKey, score);
-                    }
-                }
+        static void writeStrings(DataOutputStream out, Collection<String> values) throws IOException {
+            out.writeInt(values.size());
+            for (String value : values) {
+                out.writeUTF(value);
             }
+        }
 
-            private static void mergeScore(Map<String, Integer> out, String key, int score) {
-                Integer previous = out.get(key);
-                if (previous == null || score > previous.intValue()) {
-                    out.put(key, Integer.valueOf(score));
-                }
+        static <C extends Collection<String>> C readStrings(DataInputStream in, C out) throws IOException {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                out.add(in.readUTF());
             }
+            return out;
         }
     }
 
-    private static final class TextureResolver implements AutoCloseable {
-        private static final String[] STRIP_SUFFIXES = new String[] {
-            "_baby",
-            "_no_hat",
-            "_slim",
-            "_small",
-            "_outer",
-            "_inner",
-            "_boots",
-            "_chestplate",
-            "_helmet",
-            "_leggings",
-            "_armor",
-            "_water_patch",
-            "_flag",
-            "_main",
-            "_left",
-            "_right",
-            "_decor",
-            "_pattern",
-            "_head",
-            "_saddle"
-        };
+    private static final class LocationCatalog {
+        private static final long MAX_FACTORY_COMBINATIONS = 4096L;
+        private static final long SLOW_FACTORY_MILLIS = 250L;
 
-        private static final String[] MAIN_LAYER_PENALTY_HINTS = new String[] {
-            "eyes",
-            "armor",
-            "saddle",
-            "pattern",
-            "overlay",
-            "glow",
-            "emissive",
-            "wind",
-            "heart",
-            "tendrils",
-            "collar",
-            "harness",
-            "ropes",
-            "spots",
-            "undercoat",
-            "outer",
-            "inner"
-        };
+        private final ReflectionContext ctx;
+        private final List<String> skippedFactories = new ArrayList<String>();
+        private final List<String> slowFactories = new ArrayList<String>();
+        private Map<String, String> fieldNameByLocationKey;
+        private Map<String, String> factoryNameByLocationKey;
+        private long factoryInvocations;
 
-        private final ZipFile zipFile;
-        private final Path outputDir;
-        private final List<String> textureEntries;
-        private final Map<String, ResolvedTexture> cache;
-        private final Set<String> extracted;
-        private final RuntimeTextureIndex runtimeTextureIndex;
+        LocationCatalog(ReflectionContext ctx) {
+            this.ctx = ctx;
+        }
 
-        TextureResolver(ReflectionContext ctx, Path clientJar, Path outputDir) throws Exception {
-            this.zipFile = new ZipFile(clientJar.toFile());
-            this.outputDir = outputDir;
-            this.textureEntries = new ArrayList<String>();
-            this.cache = new HashMap<String, ResolvedTexture>();
-            this.extracted = new HashSet<String>();
-            this.runtimeTextureIndex = RuntimeTextureIndex.create(ctx, clientJar);
+        synchronized Map<String, String> fieldNameByLocationKey() throws Exception {
+            discover();
+            return this.fieldNameByLocationKey;
+        }
 
-            Enumeration<? extends ZipEntry> enumeration = this.zipFile.entries();
-            while (enumeration.hasMoreElements()) {
-                ZipEntry entry = enumeration.nextElement();
-                if (entry.isDirectory()) {
-                    continue;
-                }
+        synchronized Map<String, String> factoryNameByLocationKey() throws Exception {
+            discover();
+            return this.factoryNameByLocationKey;
+        }
 
-                String name = entry.getName();
-                String lower = name.toLowerCase(Locale.ROOT);
-                if (!lower.endsWith(".png")) {
-                    continue;
-                }
-                if (!lower.contains("/textures/")) {
-                    continue;
+        synchronized Set<String> memberNames(Set<String> locationKeys) throws Exception {
+            discover();
+            Set<String> out = new HashSet<String>();
+            for (String locationKey : locationKeys) {
+                String fieldName = this.fieldNameByLocationKey.get(locationKey);
+                if (fieldName != null) {
+                    out.add(fieldName);
                 }
-                if (!lower.contains("/textures/entity/")
-                        && !lower.contains("/textures/models/armor/")
-                        && !lower.endsWith("/textures/block/water_still.png")) {
-                    continue;
+                String factoryName = this.factoryNameByLocationKey.get(locationKey);
+                if (factoryName != null) {
+                    out.add(factoryName);
                 }
-
-                this.textureEntries.add(name);
             }
+            return out;
         }
 
-        ResolvedTexture resolveAndExtract(LocationInfo info) throws IOException {
-            String cacheKey = info.namespace + ":" + info.modelPath + "#" + info.layer;
-            ResolvedTexture cached = this.cache.get(cacheKey);
-            if (cached != null || this.cache.containsKey(cacheKey)) {
-                return cached;
+        private void discover() throws Exception {
+            if (this.fieldNameByLocationKey != null) {
+                return;
             }
 
-            ResolvedTexture resolved = resolve(info);
-            this.cache.put(cacheKey, resolved);
+            long start = System.nanoTime();
+            Map<String, String> fields = discoverStaticLocations(this.ctx);
+            Map<String, String> factories = discoverFactoryLocations(this.ctx);
+            this.fieldNameByLocationKey = Collections.unmodifiableMap(fields);
+            this.factoryNameByLocationKey = Collections.unmodifiableMap(factories);
 
-            if (resolved != null) {
-                extractIfNeeded(resolved);
+            System.out.printf(
+                Locale.ROOT,
+                "Discovered %d static and %d factory model layer locations (%d factory calls) in %d ms%n",
+                fields.size(),
+                factories.size(),
+                this.factoryInvocations,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+            );
+            for (String factory : this.skippedFactories) {
+                System.err.println("Skipped ModelLayers." + factory + ": more than " + MAX_FACTORY_COMBINATIONS + " argument combinations");
+            }
+            for (String factory : this.slowFactories) {
+                System.err.println("Slow ModelLayers factory " + factory);
             }
-
-            return resolved;
         }
 
-        int extractAllTrackedTextures() throws IOException {
-            int extractedCount = 0;
-            for (String entry : this.textureEntries) {
-                ResolvedTexture resolved = resolvedFromEntry(entry);
-                if (resolved == null || this.extracted.contains(resolved.sourceEntry)) {
+        private static Map<String, String> discoverStaticLocations(ReflectionContext ctx) throws Exception {
+            Map<String, String> out = new HashMap<String, String>();
+            for (Field field : ctx.modelLayersClass.getDeclaredFields()) {
+                if (!Modifier.isStatic(field.getModifiers())) {
+                    continue;
+                }
+                if (!ctx.modelLayerLocationClass.equals(field.getType())) {
                     continue;
                 }
-                extractIfNeeded(resolved);
-                if (this.extracted.contains(resolved.sourceEntry)) {
-                    extractedCount++;
+
+                ReflectionContext.makeAccessible(field);
+                Object value = field.get(null);
+                if (value != null) {
+                    out.put(String.valueOf(value), field.getName());
                 }
             }
-            return extractedCount;
+            return out;
         }
 
-        private ResolvedTexture resolve(LocationInfo info) {
-            TextureSearchContext search = TextureSearchContext.create(this, info);
-
-            String runtimeEntry = findRuntimeTextureEntry(info, search);
-            if (runtimeEntry != null) {
-                return resolvedFromEntry(runtimeEntry);
-            }
-
-            String knownEntry = findKnownTextureEntry(search.namespaceLower, search.modelPathLower, search.layerLower);
-            if (knownEntry != null) {
-                return resolvedFromEntry(knownEntry);
-            }
+        private Map<String, String> discoverFactoryLocations(ReflectionContext ctx) throws Exception {
+            Map<String, String> out = new HashMap<String, String>();
+            for (Method method : ctx.modelLayersClass.getDeclaredMethods()) {
+                if (!Modifier.isStatic(method.getModifiers())) {
+                    continue;
+                }
+                if (!ctx.modelLayerLocationClass.equals(method.getReturnType())) {
+                    continue;
+                }
 
-            int bestScore = Integer.MIN_VALUE;
-            String bestEntry = null;
+                Object[][] parameterValues = enumerateParameterValues(method.getParameterTypes());
+                if (parameterValues == null) {
+                    continue;
+                }
 
-            for (String entry : this.textureEntries) {
-                String lower = entry.toLowerCase(Locale.ROOT);
-                if (!lower.startsWith("assets/" + search.namespaceLower + "/")) {
+                long combinations = countCombinations(parameterValues);
+                if (combinations > MAX_FACTORY_COMBINATIONS) {
+                    this.skippedFactories.add(method.getName() + " (" + (combinations == Long.MAX_VALUE ? "overflow" : String.valueOf(combinations)) + ")");
                     continue;
                 }
 
-                int score = search.score(lower);
+                ReflectionContext.makeAccessible(method);
+                long methodStart = System.nanoTime();
+                for (Object[] arguments : enumerateArguments(parameterValues)) {
+                    Object value;
+                    try {
+                        value = method.invoke(null, arguments);
+                    } catch (Throwable ignored) {
+                        continue;
+                    }
+                    if (value != null) {
+                        out.put(String.valueOf(value), method.getName());
+                    }
+                }
+                this.factoryInvocations += combinations;
 
-                if (score > bestScore) {
-                    bestScore = score;
-                    bestEntry = entry;
+                long methodMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - methodStart);
+                if (methodMillis >= SLOW_FACTORY_MILLIS) {
+                    this.slowFactories.add(method.getName() + " (" + combinations + " calls, " + methodMillis + " ms)");
                 }
             }
+            return out;
+        }
 
-            if (bestEntry == null || bestScore < 90) {
-                return null;
+        private static Object[][] enumerateParameterValues(Class<?>[] parameterTypes) {
+            Object[][] out = new Object[parameterTypes.length][];
+            for (int i = 0; i < parameterTypes.length; i++) {
+                out[i] = enumerateParameterValues(parameterTypes[i]);
+                if (out[i] == null) {
+                    return null;
+                }
             }
-
-            return resolvedFromEntry(bestEntry);
+            return out;
         }
 
-        private String findRuntimeTextureEntry(LocationInfo info, TextureSearchContext search) {
-            Map<String, Integer> candidates = this.runtimeTextureIndex.findCandidates(info);
-            if (candidates.isEmpty()) {
-                return null;
+        private static long countCombinations(Object[][] parameterValues) {
+            long combinations = 1L;
+            for (Object[] values : parameterValues) {
+                if (combinations > Long.MAX_VALUE / values.length) {
+                    return Long.MAX_VALUE;
+                }
+                combinations *= values.length;
             }
+            return combinations;
+        }
 
-            int bestScore = Integer.MIN_VALUE;
-            String bestEntry = null;
-
-            for (Map.Entry<String, Integer> candidate : candidates.entrySet()) {
-                String entry = candidate.getKey();
-                if (!hasTextureEntry(entry)) {
-                    continue;
-                }
+        private static List<Object[]> enumerateArguments(Object[][] parameterValues) {
+            List<Object[]> out = new ArrayList<Object[]>();
+            out.add(new Object[parameterValues.length]);
 
-                int score = candidate.getValue().intValue() + search.score(entry.toLowerCase(Locale.ROOT));
-                if (score > bestScore) {
-                    bestScore = score;
-                    bestEntry = entry;
+            for (int i = 0; i < parameterValues.length; i++) {
+                Object[] values = parameterValues[i];
+                List<Object[]> next = new ArrayList<Object[]>(out.size() * values.length);
+                for (Object[] existing : out) {
+                    for (Object value : values) {
+                        Object[] copy = new Object[parameterValues.length];
+                        System.arraycopy(existing, 0, copy, 0, existing.length);
+                        copy[i] = value;
+                        next.add(copy);
+                    }
                 }
+                out = next;
             }
 
-            return bestEntry;
+            return out;
         }
 
-        private ResolvedTexture resolvedFromEntry(String entry) {
-            String lower = entry.toLowerCase(Locale.ROOT);
-            int texturesIndex = lower.indexOf("/textures/");
-            if (texturesIndex < 0) {
-                return null;
+        private static Object[] enumerateParameterValues(Class<?> type) {
+            if (type.isEnum()) {
+                Object[] constants = type.getEnumConstants();
+                return constants != null && constants.length > 0 ? constants : null;
+            }
+            if (type == Boolean.TYPE || type == Boolean.class) {
+                return new Object[] { Boolean.FALSE, Boolean.TRUE };
             }
+            try {
+                Method valuesMethod = type.getMethod("values");
+                if (Modifier.isStatic(valuesMethod.getModifiers()) && valuesMethod.getParameterCount() == 0) {
+                    Object values = valuesMethod.invoke(null);
+                    if (values instanceof Object[] && ((Object[]) values).length > 0) {
+                        return (Object[]) values;
+                    }
+                    if (values instanceof Stream) {
+                        try (Stream<?> stream = (Stream<?>) values) {
+                            List<?> collected = stream.collect(Collectors.toList());
+                            if (!collected.isEmpty()) {
+                                return collected.toArray();
+                            }
+                        }
+                    }
+                }
+            } catch (Throwable ignored) {
+            }
+            return null;
+        }
+    }
 
-            String subPath = entry.substring(texturesIndex + "/textures/".length());
-            Path extractedPath = this.outputDir.resolve("textures").resolve(subPath.replace('/', java.io.File.separatorChar));
-            String mapKd = toForwardSlashes(this.outputDir.relativize(extractedPath).toString());
-            return new ResolvedTexture(entry, extractedPath, mapKd);
+    private static final class RuntimeTextureIndex {
+        private static final byte[] PNG_SUFFIX = ".png".getBytes(StandardCharsets.UTF_8);
+
+        private final Map<String, Map<String, Integer>> candidateScoresByLocationKey;
+
+        private RuntimeTextureIndex(Map<String, Map<String, Integer>> candidateScoresByLocationKey) {
+            this.candidateScoresByLocationKey = candidateScoresByLocationKey;
         }
 
-        private String findKnownTextureEntry(String namespaceLower, String modelPathLower, String layerLower) {
-            if (!"minecraft".equals(namespaceLower)) {
-                return null;
+        static RuntimeTextureIndex create(LocationCatalog catalog, List<ClassTextureUsage> usages, Set<String> selectedKeys) throws Exception {
+            Map<String, Map<String, Integer>> candidateScoresByLocationKey = new HashMap<String, Map<String, Integer>>();
+            if (usages.isEmpty() || (selectedKeys != null && selectedKeys.isEmpty())) {
+                return new RuntimeTextureIndex(candidateScoresByLocationKey);
             }
-            String modelKey = modelPathLower.replace('/', '_');
 
-            if (modelKey.endsWith("_minecart")) {
-                String candidate = "assets/minecraft/textures/entity/minecart/minecart.png";
-                if (hasTextureEntry(candidate)) {
-                    return candidate;
-                }
+            Map<String, Set<String>> locationKeysByField = invertLocationMembers(catalog.fieldNameByLocationKey());
+            Map<String, Set<String>> locationKeysByFactory = invertLocationMembers(catalog.factoryNameByLocationKey());
+            if (selectedKeys != null) {
+                locationKeysByField.values().removeIf(keys -> Collections.disjoint(keys, selectedKeys));
+                locationKeysByFactory.values().removeIf(keys -> Collections.disjoint(keys, selectedKeys));
             }
 
-            if ("boat".equals(modelKey) && "water_patch".equals(layerLower)) {
-                String candidate = "assets/minecraft/textures/block/water_still.png";
-                if (hasTextureEntry(candidate)) {
-                    return candidate;
-                }
+            for (ClassTextureUsage usage : usages) {
+                usage.recordCandidates(candidateScoresByLocationKey, locationKeysByField, locationKeysByFactory);
             }
 
-            if ("sniffer_baby".equals(modelKey)) {
-                String candidate = "assets/minecraft/textures/entity/sniffer/snifflet.png";
-                if (hasTextureEntry(candidate)) {
-                    return candidate;
-                }
+            if (selectedKeys != null) {
+                candidateScoresByLocationKey.keySet().retainAll(selectedKeys);
             }
+            return new RuntimeTextureIndex(candidateScoresByLocationKey);
+        }
 
-            if ("armor_stand".equals(modelKey) || "armor_stand_small".equals(modelKey)) {
-                String candidate = "assets/minecraft/textures/entity/armorstand/armorstand.png";
-                if (hasTextureEntry(candidate)) {
-                    return candidate;
-                }
-            }
+        Map<String, Integer> findCandidates(LocationInfo info) {
+            Map<String, Integer> candidates = this.candidateScoresByLocationKey.get(locationKey(info));
+            return candidates != null ? candidates : new HashMap<String, Integer>();
+        }
 
-            if ("giant".equals(modelKey)) {
-                String candidate = "assets/minecraft/textures/entity/zombie/zombie.png";
-                if (hasTextureEntry(candidate)) {
-                    return candidate;
-                }
-            }
+        private static String locationKey(LocationInfo info) {
+            return info.namespace + ":" + info.modelPath + "#" + info.layer;
+        }
 
-            if ("player".equals(modelKey)) {
-                String candidate = "assets/minecraft/textures/entity/player/wide/steve.png";
-                if (hasTextureEntry(candidate)) {
-                    return candidate;
-                }
-            }
-            if ("player_slim".equals(modelKey)) {
-                String candidate = "assets/minecraft/textures/entity/player/slim/steve.png";
-                if (hasTextureEntry(candidate)) {
-                    return candidate;
+        private static Map<String, Set<String>> invertLocationMembers(Map<String, String> memberByLocationKey) {
+            Map<String, Set<String>> out = new HashMap<String, Set<String>>();
+            for (Map.Entry<String, String> entry : memberByLocationKey.entrySet()) {
+                String locationKey = entry.getKey();
+                String memberName = entry.getValue();
+                if (locationKey == null || memberName == null || memberName.isEmpty()) {
+                    continue;
                 }
-            }
 
-            if ("leash_knot".equals(modelKey)) {
-                String candidate = "assets/minecraft/textures/entity/lead_knot/lead_knot.png";
-                if (hasTextureEntry(candidate)) {
-                    return candidate;
+                Set<String> locations = out.get(memberName);
+                if (locations == null) {
+                    locations = new LinkedHashSet<String>();
+                    out.put(memberName, locations);
                 }
+                locations.add(locationKey);
             }
+            return out;
+        }
 
-            if ("dragon_skull".equals(modelKey)) {
-                String candidate = "assets/minecraft/textures/entity/enderdragon/dragon.png";
-                if (hasTextureEntry(candidate)) {
-                    return candidate;
-                }
-            }
+        private static final class UsageCollector implements ParallelJarEntryConsumer {
+            final List<ClassTextureUsage> usages = new ArrayList<ClassTextureUsage>();
+            private final ClassFileReader reader = new ClassFileReader();
+            private final Set<String> memberFilter;
 
-            if ("double_chest_left".equals(modelKey)) {
-                String candidate = "assets/minecraft/textures/entity/chest/normal_left.png";
-                if (hasTextureEntry(candidate)) {
-                    return candidate;
-                }
-            }
-            if ("double_chest_right".equals(modelKey)) {
-                String candidate = "assets/minecraft/textures/entity/chest/normal_right.png";
-                if (hasTextureEntry(candidate)) {
-                    return candidate;
-                }
+            UsageCollector(Set<String> memberFilter) {
+                this.memberFilter = memberFilter;
             }
-            if ("chest".equals(modelKey)) {
-                String candidate = "assets/minecraft/textures/entity/chest/normal.png";
-                if (hasTextureEntry(candidate)) {
-                    return candidate;
-                }
+
+            @Override
+            public boolean accepts(String entryName) {
+                return isRendererTextureCandidate(entryName);
             }
 
-            if ("bed_foot".equals(modelKey) || "bed_head".equals(modelKey)) {
-                String candidate = "assets/minecraft/textures/entity/bed/red.png";
-                if (hasTextureEntry(candidate)) {
-                    return candidate;
-                }
+            @Override
+            public boolean needsContent() {
+                return true;
             }
 
-            if ("decorated_pot_sides".equals(modelKey)) {
-                String candidate = "assets/minecraft/textures/entity/decorated_pot/decorated_pot_side.png";
-                if (hasTextureEntry(candidate)) {
-                    return candidate;
+            @Override
+            public void accept(String entryName, byte[] content, int length) throws IOException {
+                ClassTextureUsage usage = scanClassTextureUsage(this.reader, content, length, entryName, this.memberFilter);
+                if (usage != null) {
+                    this.usages.add(usage);
                 }
             }
 
-            if ("conduit".equals(modelKey) && "shell".equals(layerLower)) {
-                String candidate = "assets/minecraft/textures/entity/conduit/base.png";
-                if (hasTextureEntry(candidate)) {
-                    return candidate;
-                }
+            @Override
+            public ParallelJarEntryConsumer fork() {
+                return new UsageCollector(this.memberFilter);
             }
 
-            if (modelKey.startsWith("hanging_sign_")) {
-                String wood = detectWoodType(modelKey);
-                if (wood != null) {
-                    String candidate = "assets/minecraft/textures/entity/signs/hanging/" + wood + ".png";
-                    if (hasTextureEntry(candidate)) {
-                        return candidate;
-                    }
-                }
+            @Override
+            public void merge(ParallelJarEntryConsumer partial) {
+                this.usages.addAll(((UsageCollector) partial).usages);
             }
+        }
 
-            if ("standing_banner".equals(modelKey) || "wall_banner".equals(modelKey)) {
-                String candidate = "assets/minecraft/textures/entity/banner/base.png";
-                if (hasTextureEntry(candidate)) {
-                    return candidate;
-                }
+        private static boolean isRendererTextureCandidate(String entryName) {
+            if (!entryName.endsWith(".class")) {
+                return false;
+            }
+            if (!entryName.startsWith("net/minecraft/client/renderer/")) {
+                return false;
             }
+            return entryName.startsWith("net/minecraft/client/renderer/entity/")
+                || entryName.startsWith("net/minecraft/client/renderer/blockentity/")
+                || entryName.startsWith("net/minecraft/client/renderer/special/");
+        }
 
-            if ("pufferfish_big".equals(modelKey) || "pufferfish_medium".equals(modelKey)) {
-                String candidate = "assets/minecraft/textures/entity/fish/pufferfish.png";
-                if (hasTextureEntry(candidate)) {
-                    return candidate;
-                }
+        private static ClassTextureUsage scanClassTextureUsage(ClassFileReader reader, byte[] content, int length, String entryName, Set<String> memberFilter)
+                throws IOException {
+            if (!reader.reset(content, length)) {
+                return null;
             }
-            if ("salmon_large".equals(modelKey)) {
-                String candidate = "assets/minecraft/textures/entity/fish/salmon.png";
-                if (hasTextureEntry(candidate)) {
-                    return candidate;
-                }
+            if (!reader.hasClassReference(ClassFileReader.MODEL_LAYERS_CLASS) || !reader.hasUtf8Containing(PNG_SUFFIX)) {
+                return null;
             }
-            if ("tropical_fish_small".equals(modelKey)) {
-                String candidate = "main".equals(layerLower)
-                    ? "assets/minecraft/textures/entity/fish/tropical_a.png"
-                    : "assets/minecraft/textures/entity/fish/tropical_a_pattern_1.png";
-                if (hasTextureEntry(candidate)) {
-                    return candidate;
-                }
+            if (memberFilter != null && !reader.hasMemberReference(ClassFileReader.MODEL_LAYERS_CLASS, memberFilter)) {
+                return null;
             }
-            if ("tropical_fish_large".equals(modelKey)) {
-                String candidate = "main".equals(layerLower)
-                    ? "assets/minecraft/textures/entity/fish/tropical_b.png"
-                    : "assets/minecraft/textures/entity/fish/tropical_b_pattern_1.png";
-                if (hasTextureEntry(candidate)) {
-                    return candidate;
-                }
+
+            int position = reader.afterConstantPool();
+            int thisClassIndex = reader.readUnsignedShort(position + 2);
+            String className = reader.className(thisClassIndex);
+            if (className == null || className.isEmpty()) {
+                className = entryName.substring(0, entryName.length() - ".class".length());
             }
+            position += 6;
 
-            if ("shulker_box".equals(modelKey)) {
-                String candidate = "assets/minecraft/textures/entity/shulker/shulker.png";
-                if (hasTextureEntry(candidate)) {
-                    return candidate;
-                }
+            int interfaceCount = reader.readUnsignedShort(position);
+            position += 2 + interfaceCount * 2;
+
+            int fieldCount = reader.readUnsignedShort(position);
+            position += 2;
+            for (int i = 0; i < fieldCount; i++) {
+                position = reader.skipAttributes(position + 6);
             }
-            if ("shulker_bullet".equals(modelKey)) {
-                String candidate = "assets/minecraft/textures/entity/shulker/spark.png";
-                if (hasTextureEntry(candidate)) {
-                    return candidate;
-                }
+
+            ClassTextureUsage usage = new ClassTextureUsage(className);
+            int methodCount = reader.readUnsignedShort(position);
+            position += 2;
+            for (int i = 0; i < methodCount; i++) {
+                position = scanMethod(reader, position, usage);
             }
 
-            if ("skeleton_skull".equals(modelKey)) {
-                String candidate = "assets/minecraft/textures/entity/skeleton/skeleton.png";
-                if (hasTextureEntry(candidate)) {
-                    return candidate;
-                }
-            }
-            if ("wither_skeleton_skull".equals(modelKey)) {
-                String candidate = "assets/minecraft/textures/entity/skeleton/wither_skeleton.png";
-                if (hasTextureEntry(candidate)) {
-                    return candidate;
-                }
-            }
-            if ("wither_skull".equals(modelKey)) {
-                String candidate = "assets/minecraft/textures/entity/wither/wither.png";
-                if (hasTextureEntry(candidate)) {
-                    return candidate;
+            reader.skipAttributes(position);
+            return usage;
+        }
+
+        private static int scanMethod(ClassFileReader reader, int position, ClassTextureUsage usage) throws IOException {
+            String methodName = reader.utf8(reader.readUnsignedShort(position + 2));
+
+            int codeStart = -1;
+            int codeLength = 0;
+            int attributeCount = reader.readUnsignedShort(position + 6);
+            position += 8;
+            for (int i = 0; i < attributeCount; i++) {
+                int attributeNameIndex = reader.readUnsignedShort(position);
+                int attributeLength = reader.readInt(position + 2);
+                if (reader.isCodeAttribute(attributeNameIndex)) {
+                    codeLength = reader.readInt(position + 10);
+                    codeStart = position + 14;
                 }
+                position += 6 + attributeLength;
             }
 
-            if ("undead_horse_armor".equals(modelKey)) {
-                String candidate = "assets/minecraft/textures/entity/horse/horse_zombie.png";
-                if (hasTextureEntry(candidate)) {
-                    return candidate;
-                }
+            if (codeStart >= 0) {
+                scanBytecode(reader, codeStart, codeLength, methodName, usage);
             }
+            return position;
+        }
 
-            if ("spin_attack".equals(modelKey)) {
-                String candidate = "assets/minecraft/textures/entity/trident/trident_riptide.png";
-                if (hasTextureEntry(candidate)) {
-                    return candidate;
-                }
-            }
+        private static void scanBytecode(ClassFileReader reader, int codeStart, int codeLength, String methodName, ClassTextureUsage usage)
+                throws IOException {
+            boolean constructor = "<init>".equals(methodName);
+            boolean clinit = "<clinit>".equals(methodName);
+            boolean textureMethod = isTextureMethod(methodName);
+            boolean renderMethod = isRenderMethod(methodName);
+            String pendingTexture = null;
 
-            if ("llama".equals(modelKey) && "decor".equals(layerLower)) {
-                String candidate = "assets/minecraft/textures/entity/llama/llama_white.png";
-                if (hasTextureEntry(candidate)) {
-                    return candidate;
-                }
-            }
-            if ("llama_baby".equals(modelKey) && "decor".equals(layerLower)) {
-                String candidate = "assets/minecraft/textures/entity/llama/llama_white_baby.png";
-                if (hasTextureEntry(candidate)) {
-                    return candidate;
+            for (int pc = 0; pc < codeLength; ) {
+                int opcode = reader.readUnsignedByte(codeStart + pc);
+                switch (opcode) {
+                    case 18: {
+                        String textureEntry = normalizeTextureEntry(reader.string(reader.readUnsignedByte(codeStart + pc + 1)));
+                        if (textureEntry != null) {
+                            pendingTexture = textureEntry;
+                            usage.recordDirectTexture(textureEntry, textureMethod, renderMethod);
+                        }
+                        pc += 2;
+                        continue;
+                    }
+                    case 19:
+                    case 20: {
+                        String textureEntry = normalizeTextureEntry(reader.string(reader.readUnsignedShort(codeStart + pc + 1)));
+                        if (textureEntry != null) {
+                            pendingTexture = textureEntry;
+                            usage.recordDirectTexture(textureEntry, textureMethod, renderMethod);
+                        }
+                        pc += 3;
+                        continue;
+                    }
+                    case 178:
+                    case 179:
+                    case 180:
+                    case 181: {
+                        int memberIndex = reader.readUnsignedShort(codeStart + pc + 1);
+                        if (reader.isMemberOwner(memberIndex, ClassFileReader.MODEL_LAYERS_CLASS)) {
+                            usage.recordLayerField(reader.memberName(memberIndex), constructor);
+                        } else if (usage.className.equals(reader.memberOwner(memberIndex))) {
+                            String memberName = reader.memberName(memberIndex);
+                            if (memberName != null) {
+                                if (opcode == 179 && clinit && pendingTexture != null) {
+                                    usage.texturePathByField.put(memberName, pendingTexture);
+                                    pendingTexture = null;
+                                } else if (opcode == 178) {
+                                    usage.recordTextureFieldUse(memberName, textureMethod, renderMethod);
+                                }
+                            }
+                        }
+                        pc += 3;
+                        continue;
+                    }
+                    case 182:
+                    case 183:
+                    case 184: {
+                        int memberIndex = reader.readUnsignedShort(codeStart + pc + 1);
+                        if (reader.isMemberOwner(memberIndex, ClassFileReader.MODEL_LAYERS_CLASS)) {
+                            usage.recordLayerFactory(reader.memberName(memberIndex), constructor);
+                        }
+                        pc += 3;
+                        continue;
+                    }
+                    case 185:
+                    case 186:
+                        pc += 5;
+                        continue;
+                    default:
+                        pc += instructionLength(reader, codeStart, pc, opcode);
+                        continue;
                 }
             }
+        }
 
-            if (modelKey.startsWith("copper_golem_") && "main".equals(layerLower)) {
-                String candidate = "assets/minecraft/textures/entity/copper_golem/copper_golem.png";
-                if (hasTextureEntry(candidate)) {
-                    return candidate;
-                }
+        private static boolean isTextureMethod(String methodName) {
+            if (methodName == null) {
+                return false;
             }
+            String lower = methodName.toLowerCase(Locale.ROOT);
+            return lower.contains("texture") || lower.contains("skin");
+        }
 
-            if ("drowned".equals(modelKey) || "drowned_baby".equals(modelKey)) {
-                boolean baby = modelKey.contains("baby");
-                if (layerLower.contains("outer")) {
-                    String candidate = baby
-                        ? "assets/minecraft/textures/entity/zombie/drowned_outer_layer_baby.png"
-                        : "assets/minecraft/textures/entity/zombie/drowned_outer_layer.png";
-                    if (hasTextureEntry(candidate)) {
-                        return candidate;
-                    }
-                }
-
-                String candidate = baby
-                    ? "assets/minecraft/textures/entity/zombie/drowned_baby.png"
-                    : "assets/minecraft/textures/entity/zombie/drowned.png";
-                if (hasTextureEntry(candidate)) {
-                    return candidate;
-                }
+        private static boolean isRenderMethod(String methodName) {
+            if (methodName == null) {
+                return false;
             }
+            String lower = methodName.toLowerCase(Locale.ROOT);
+            return lower.contains("render") || lower.contains("submit");
+        }
 
-            if (modelKey.startsWith("villager")) {
-                boolean baby = modelKey.contains("_baby");
-                String candidate = baby
-                    ? "assets/minecraft/textures/entity/villager/villager_baby.png"
-                    : "assets/minecraft/textures/entity/villager/villager.png";
-                if (hasTextureEntry(candidate)) {
-                    return candidate;
-                }
+        private static String normalizeTextureEntry(String value) {
+            if (value == null) {
+                return null;
             }
 
-            if (modelKey.startsWith("zombie_villager")) {
-                boolean baby = modelKey.contains("_baby");
-                String candidate = baby
-                    ? "assets/minecraft/textures/entity/zombie_villager/zombie_villager_baby.png"
-                    : "assets/minecraft/textures/entity/zombie_villager/zombie_villager.png";
-                if (hasTextureEntry(candidate)) {
-                    return candidate;
-                }
+            String normalized = value.trim().replace('\\', '/');
+            if (!normalized.endsWith(".png")) {
+                return null;
+            }
+            if (normalized.startsWith("/")) {
+                normalized = normalized.substring(1);
+            }
+            if (normalized.startsWith("assets/")) {
+                return normalized;
             }
 
-            if (modelPathLower.contains("happy_ghast") && modelPathLower.contains("harness")) {
-                String candidate = "assets/minecraft/textures/entity/equipment/happy_ghast_body/white_harness.png";
-                if (hasTextureEntry(candidate)) {
-                    return candidate;
+            int colon = normalized.indexOf(':');
+            if (colon > 0) {
+                String namespace = normalized.substring(0, colon);
+                String path = normalized.substring(colon + 1);
+                if (path.startsWith("/")) {
+                    path = path.substring(1);
                 }
+                return "assets/" + namespace + "/" + path;
             }
-            if (modelPathLower.contains("happy_ghast") && modelPathLower.contains("ropes")) {
-                String candidate = "assets/minecraft/textures/entity/ghast/happy_ghast_ropes.png";
-                if (hasTextureEntry(candidate)) {
-                    return candidate;
-                }
+
+            if (normalized.startsWith("textures/")) {
+                return "assets/minecraft/" + normalized;
             }
 
             return null;
         }
 
-        private static String detectWoodType(String modelPathLower) {
-            String[] woods = new String[] {
-                "acacia",
-                "bamboo",
-                "birch",
-                "cherry",
-                "crimson",
-                "dark_oak",
-                "jungle",
-                "mangrove",
-                "oak",
-                "pale_oak",
-                "spruce",
-                "warped"
-            };
-            for (String wood : woods) {
-                if (modelPathLower.contains("_" + wood + "_")) {
-                    return wood;
+        private static int instructionLength(ClassFileReader reader, int codeStart, int pc, int opcode) throws IOException {
+            switch (opcode) {
+                case 16:
+                case 18:
+                case 21:
+                case 22:
+                case 23:
+                case 24:
+                case 25:
+                case 54:
+                case 55:
+                case 56:
+                case 57:
+                case 58:
+                case 169:
+                case 188:
+                    return 2;
+                case 17:
+                case 19:
+                case 20:
+                case 132:
+                case 153:
+                case 154:
+                case 155:
+                case 156:
+                case 157:
+                case 158:
+                case 159:
+                case 160:
+                case 161:
+                case 162:
+                case 163:
+                case 164:
+                case 165:
+                case 166:
+                case 167:
+                case 168:
+                case 178:
+                case 179:
+                case 180:
+                case 181:
+                case 182:
+                case 183:
+                case 184:
+                case 187:
+                case 189:
+                case 192:
+                case 193:
+                case 198:
+                case 199:
+                    return 3;
+                case 185:
+                case 186:
+                case 197:
+                case 200:
+                case 201:
+                    return opcode == 197 ? 4 : 5;
+                case 170: {
+                    int aligned = (pc + 4) & ~3;
+                    int low = reader.readInt(codeStart + aligned + 4);
+                    int high = reader.readInt(codeStart + aligned + 8);
+                    return (aligned - pc) + 12 + ((high - low + 1) * 4);
                 }
-            }
-            return null;
-        }
-
-        private boolean hasTextureEntry(String entryName) {
-            for (String entry : this.textureEntries) {
-                if (entryName.equalsIgnoreCase(entry)) {
-                    return true;
+                case 171: {
+                    int aligned = (pc + 4) & ~3;
+                    int pairs = reader.readInt(codeStart + aligned + 4);
+                    return (aligned - pc) + 8 + (pairs * 8);
                 }
+                case 196: {
+                    int widenedOpcode = reader.readUnsignedByte(codeStart + pc + 1);
+                    return widenedOpcode == 132 ? 6 : 4;
+                }
+                default:
+                    return 1;
             }
-            return false;
         }
 
-        private static final class TextureSearchContext {
-            final String namespaceLower;
-            final String modelPathLower;
-            final String layerLower;
-            final String flatModel;
-            final String canonicalFlat;
-            final String lastSegment;
-            final String canonicalLast;
-            final boolean hasCanonicalFileNameCandidates;
-            final Set<String> names;
-            final Set<String> modelTokens;
-            final Set<String> layerTokens;
+        private static final class ClassTextureUsage {
+            final String className;
+            final Set<String> constructorLayerFields;
+            final Set<String> constructorLayerFactories;
+            final Set<String> methodLayerFields;
+            final Set<String> methodLayerFactories;
+            final Map<String, String> texturePathByField;
+            final Set<String> textureFieldsInTextureMethods;
+            final Set<String> textureFieldsInRenderMethods;
+            final Set<String> directTexturesInTextureMethods;
+            final Set<String> directTexturesInRenderMethods;
 
-            private TextureSearchContext(
-                String namespaceLower,
-                String modelPathLower,
-                String layerLower,
-                String flatModel,
-                String canonicalFlat,
-                String lastSegment,
-                String canonicalLast,
-                boolean hasCanonicalFileNameCandidates,
-                Set<String> names,
-                Set<String> modelTokens,
-                Set<String> layerTokens
+            ClassTextureUsage(String className) {
+                this.className = className;
+                this.constructorLayerFields = new LinkedHashSet<String>();
+                this.constructorLayerFactories = new LinkedHashSet<String>();
+                this.methodLayerFields = new LinkedHashSet<String>();
+                this.methodLayerFactories = new LinkedHashSet<String>();
+                this.texturePathByField = new HashMap<String, String>();
+                this.textureFieldsInTextureMethods = new LinkedHashSet<String>();
+                this.textureFieldsInRenderMethods = new LinkedHashSet<String>();
+                this.directTexturesInTextureMethods = new LinkedHashSet<String>();
+                this.directTexturesInRenderMethods = new LinkedHashSet<String>();
+            }
+
+            void write(DataOutputStream out) throws IOException {
+                out.writeUTF(this.className);
+                JarIndexCache.writeStrings(out, this.constructorLayerFields);
+                JarIndexCache.writeStrings(out, this.constructorLayerFactories);
+                JarIndexCache.writeStrings(out, this.methodLayerFields);
+                JarIndexCache.writeStrings(out, this.methodLayerFactories);
+                out.writeInt(this.texturePathByField.size());
+                for (Map.Entry<String, String> entry : this.texturePathByField.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeUTF(entry.getValue());
+                }
+                JarIndexCache.writeStrings(out, this.textureFieldsInTextureMethods);
+                JarIndexCache.writeStrings(out, this.textureFieldsInRenderMethods);
+                JarIndexCache.writeStrings(out, this.directTexturesInTextureMethods);
+                JarIndexCache.writeStrings(out, this.directTexturesInRenderMethods);
+            }
+
+            static ClassTextureUsage read(DataInputStream in) throws IOException {
+                ClassTextureUsage usage = new ClassTextureUsage(in.readUTF());
+                JarIndexCache.readStrings(in, usage.constructorLayerFields);
+                JarIndexCache.readStrings(in, usage.constructorLayerFactories);
+                JarIndexCache.readStrings(in, usage.methodLayerFields);
+                JarIndexCache.readStrings(in, usage.methodLayerFactories);
+                int textureFieldCount = in.readInt();
+                for (int i = 0; i < textureFieldCount; i++) {
+                    usage.texturePathByField.put(in.readUTF(), in.readUTF());
+                }
+                JarIndexCache.readStrings(in, usage.textureFieldsInTextureMethods);
+                JarIndexCache.readStrings(in, usage.textureFieldsInRenderMethods);
+                JarIndexCache.readStrings(in, usage.directTexturesInTextureMethods);
+                JarIndexCache.readStrings(in, usage.directTexturesInRenderMethods);
+                return usage;
+            }
+
+            void recordLayerField(String memberName, boolean constructor) {
+                if (memberName == null || memberName.isEmpty()) {
+                    return;
+                }
+                if (constructor) {
+                    this.constructorLayerFields.add(memberName);
+                } else {
+                    this.methodLayerFields.add(memberName);
+                }
+            }
+
+            void recordLayerFactory(String memberName, boolean constructor) {
+                if (memberName == null || memberName.isEmpty()) {
+                    return;
+                }
+                if (constructor) {
+                    this.constructorLayerFactories.add(memberName);
+                } else {
+                    this.methodLayerFactories.add(memberName);
+                }
+            }
+
+            void recordTextureFieldUse(String fieldName, boolean textureMethod, boolean renderMethod) {
+                if (fieldName == null || fieldName.isEmpty()) {
+                    return;
+                }
+                if (textureMethod) {
+                    this.textureFieldsInTextureMethods.add(fieldName);
+                }
+                if (renderMethod) {
+                    this.textureFieldsInRenderMethods.add(fieldName);
+                }
+            }
+
+            void recordDirectTexture(String textureEntry, boolean textureMethod, boolean renderMethod) {
+                if (textureEntry == null || textureEntry.isEmpty()) {
+                    return;
+                }
+                if (textureMethod) {
+                    this.directTexturesInTextureMethods.add(textureEntry);
+                }
+                if (renderMethod) {
+                    this.directTexturesInRenderMethods.add(textureEntry);
+                }
+            }
+
+            void recordCandidates(
+                Map<String, Map<String, Integer>> candidateScoresByLocationKey,
+                Map<String, Set<String>> locationKeysByField,
+                Map<String, Set<String>> locationKeysByFactory
             ) {
-                this.namespaceLower = namespaceLower;
-                this.modelPathLower = modelPathLower;
-                this.layerLower = layerLower;
-                this.flatModel = flatModel;
-                this.canonicalFlat = canonicalFlat;
-                this.lastSegment = lastSegment;
-                this.canonicalLast = canonicalLast;
-                this.hasCanonicalFileNameCandidates = hasCanonicalFileNameCandidates;
-                this.names = names;
-                this.modelTokens = modelTokens;
-                this.layerTokens = layerTokens;
+                Map<String, Integer> locationScores = collectLocationScores(locationKeysByField, locationKeysByFactory);
+                if (locationScores.isEmpty()) {
+                    return;
+                }
+
+                Map<String, Integer> textureScores = collectTextureScores();
+                if (textureScores.isEmpty()) {
+                    return;
+                }
+
+                for (Map.Entry<String, Integer> locationEntry : locationScores.entrySet()) {
+                    String locationKey = locationEntry.getKey();
+                    int locationScore = locationEntry.getValue().intValue();
+
+                    Map<String, Integer> textureScoresForLocation = candidateScoresByLocationKey.get(locationKey);
+                    if (textureScoresForLocation == null) {
+                        textureScoresForLocation = new HashMap<String, Integer>();
+                        candidateScoresByLocationKey.put(locationKey, textureScoresForLocation);
+                    }
+
+                    for (Map.Entry<String, Integer> textureEntry : textureScores.entrySet()) {
+                        int combinedScore = locationScore + textureEntry.getValue().intValue();
+                        Integer previous = textureScoresForLocation.get(textureEntry.getKey());
+                        if (previous == null || combinedScore > previous.intValue()) {
+                            textureScoresForLocation.put(textureEntry.getKey(), Integer.valueOf(combinedScore));
+                        }
+                    }
+                }
             }
 
-            static TextureSearchContext create(TextureResolver resolver, LocationInfo info) {
-                String namespaceLower = info.namespace.toLowerCase(Locale.ROOT);
-                String modelPathLower = info.modelPath.toLowerCase(Locale.ROOT);
-                String layerLower = info.layer.toLowerCase(Locale.ROOT);
+            private Map<String, Integer> collectLocationScores(
+                Map<String, Set<String>> locationKeysByField,
+                Map<String, Set<String>> locationKeysByFactory
+            ) {
+                Map<String, Integer> out = new HashMap<String, Integer>();
+                addLocationScores(out, this.constructorLayerFields, locationKeysByField, 240, false);
+                addLocationScores(out, this.constructorLayerFactories, locationKeysByFactory, 200, true);
+                addLocationScores(out, this.methodLayerFields, locationKeysByField, 90, false);
+                addLocationScores(out, this.methodLayerFactories, locationKeysByFactory, 60, true);
+                return out;
+            }
 
-                String flatModel = modelPathLower.replace('/', '_');
-                String lastSegment = modelPathLower;
-                int slash = lastSegment.lastIndexOf('/');
-                if (slash >= 0) {
-                    lastSegment = lastSegment.substring(slash + 1);
+            private Map<String, Integer> collectTextureScores() {
+                Map<String, Integer> out = new HashMap<String, Integer>();
+                addResolvedTextureScores(out, this.textureFieldsInTextureMethods, 420);
+                addDirectTextureScores(out, this.directTexturesInTextureMethods, 400);
+                addResolvedTextureScores(out, this.textureFieldsInRenderMethods, 320);
+                addDirectTextureScores(out, this.directTexturesInRenderMethods, 300);
+
+                if (out.isEmpty() && this.texturePathByField.size() == 1) {
+                    for (String texture : this.texturePathByField.values()) {
+                        out.put(texture, Integer.valueOf(220));
+                    }
                 }
 
-                String canonicalFlat = stripSuffixes(flatModel);
-                String canonicalLast = stripSuffixes(lastSegment);
-                String compactFlat = flatModel.replace("_", "");
-                String compactLast = lastSegment.replace("_", "");
-                String compactCanonicalFlat = canonicalFlat.replace("_", "");
-                String compactCanonicalLast = canonicalLast.replace("_", "");
-                boolean hasCanonicalFileNameCandidates = resolver.hasNamespaceEntryWithFileNameToken(namespaceLower, canonicalLast);
+                return out;
+            }
 
-                LinkedHashSet<String> names = new LinkedHashSet<String>();
-                addName(names, flatModel);
-                addName(names, lastSegment);
-                addName(names, canonicalFlat);
-                addName(names, canonicalLast);
-                addName(names, compactFlat);
-                addName(names, compactLast);
-                addName(names, compactCanonicalFlat);
-                addName(names, compactCanonicalLast);
+            private void addResolvedTextureScores(Map<String, Integer> out, Set<String> fieldNames, int score) {
+                for (String fieldName : fieldNames) {
+                    String textureEntry = this.texturePathByField.get(fieldName);
+                    if (textureEntry != null) {
+                        mergeScore(out, textureEntry, score);
+                    }
+                }
+            }
+
+            private void addDirectTextureScores(Map<String, Integer> out, Set<String> textureEntries, int score) {
+                for (String textureEntry : textureEntries) {
+                    mergeScore(out, textureEntry, score);
+                }
+            }
+
+            private static void addLocationScores(
+                Map<String, Integer> out,
+                Set<String> memberNames,
+                Map<String, Set<String>> locationKeysByMember,
+                int score,
+                boolean requireUniqueLocation
+            ) {
+                for (String memberName : memberNames) {
+                    Set<String> locationKeys = locationKeysByMember.get(memberName);
+                    if (locationKeys == null || locationKeys.isEmpty()) {
+                        continue;
+                    }
+                    if (requireUniqueLocation && locationKeys.size() != 1) {
+                        continue;
+                    }
+                    for (String locationKey : locationKeys) {
+                        mergeScore(out, locationKey, score);
+                    }
+                }
+            }
+
+            private static void mergeScore(Map<String, Integer> out, String key, int score) {
+                Integer previous = out.get(key);
+                if (previous == null || score > previous.intValue()) {
+                    out.put(key, Integer.valueOf(score));
+                }
+            }
+        }
+    }
+
+    private static final class TextureResolver {
+        private static final String[] STRIP_SUFFIXES = new String[] {
+            "_baby",
+            "_no_hat",
+            "_slim",
+            "_small",
+            "_outer",
+            "_inner",
+            "_boots",
+            "_chestplate",
+            "_helmet",
+            "_leggings",
+            "_armor",
+            "_water_patch",
+            "_flag",
+            "_main",
+            "_left",
+            "_right",
+            "_decor",
+            "_pattern",
+            "_head",
+            "_saddle"
+        };
+
+        private static final String[] MAIN_LAYER_PENALTY_HINTS = new String[] {
+            "eyes",
+            "armor",
+            "saddle",
+            "pattern",
+            "overlay",
+            "glow",
+            "emissive",
+            "wind",
+            "heart",
+            "tendrils",
+            "collar",
+            "harness",
+            "ropes",
+            "spots",
+            "undercoat",
+            "outer",
+            "inner"
+        };
+
+        private static final int MIN_FALLBACK_SCORE = 90;
+
+        private final ZipFile zipFile;
+        private final StoredEntryIndex storedEntries;
+        private final Path outputDir;
+        private final List<String> textureEntries;
+        private final TextureCatalog catalog;
+        private final Map<String, ResolvedTexture> cache;
+        private final Set<String> extracted;
+        private final Map<String, Object> extractionLocks;
+        private final RuntimeTextureIndex runtimeTextureIndex;
+        private final ExportManifest previousManifest;
+        private final ExportManifest manifest;
+        private final TextureMode mode;
+        private final ExecutorService extractionExecutor;
+        private final Map<String, Future<?>> pendingExtractions;
+        final AtomicInteger unchangedTextures = new AtomicInteger();
+
+        TextureResolver(
+            ZipFile zipFile,
+            List<String> textureEntries,
+            RuntimeTextureIndex runtimeTextureIndex,
+            Path outputDir,
+            ExportManifest previousManifest,
+            ExportManifest manifest,
+            TextureMode mode,
+            int threads
+        ) {
+            this.zipFile = zipFile;
+            this.storedEntries = new StoredEntryIndex(Paths.get(zipFile.getName()));
+            this.outputDir = outputDir;
+            this.textureEntries = textureEntries;
+            this.catalog = TextureCatalog.build(textureEntries);
+            this.cache = new HashMap<String, ResolvedTexture>();
+            this.extracted = ConcurrentHashMap.newKeySet();
+            this.extractionLocks = new ConcurrentHashMap<String, Object>();
+            this.runtimeTextureIndex = runtimeTextureIndex;
+            this.previousManifest = previousManifest;
+            this.manifest = manifest;
+            this.mode = mode;
+            this.extractionExecutor = mode == TextureMode.REFERENCED
+                ? Executors.newFixedThreadPool(Math.max(1, threads), new ExportThreadFactory("texture-extract"))
+                : null;
+            this.pendingExtractions = new ConcurrentHashMap<String, Future<?>>();
+        }
+
+        ResolvedTexture resolveAndExtract(LocationInfo info) throws IOException {
+            String cacheKey = info.namespace + ":" + info.modelPath + "#" + info.layer;
+            ResolvedTexture resolved;
+            boolean cached;
+            synchronized (this.cache) {
+                resolved = this.cache.get(cacheKey);
+                cached = resolved != null || this.cache.containsKey(cacheKey);
+            }
+
+            if (!cached) {
+                resolved = resolve(info);
+                synchronized (this.cache) {
+                    this.cache.put(cacheKey, resolved);
+                }
+            }
+
+            if (resolved != null) {
+                if (this.mode == TextureMode.REFERENCED) {
+                    scheduleExtraction(resolved);
+                } else if (this.mode == TextureMode.ALL) {
+                    extractIfNeeded(resolved);
+                }
+            }
+
+            return resolved;
+        }
+
+        private void scheduleExtraction(final ResolvedTexture texture) {
+            if (this.extracted.contains(texture.sourceEntry)) {
+                return;
+            }
+
+            this.pendingExtractions.computeIfAbsent(texture.sourceEntry, key -> this.extractionExecutor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    extractIfNeeded(texture);
+                    return null;
+                }
+            }));
+        }
+
+        void awaitExtraction(ResolvedTexture texture) throws IOException {
+            if (texture == null) {
+                return;
+            }
+
+            Future<?> pending = this.pendingExtractions.get(texture.sourceEntry);
+            if (pending != null) {
+                awaitTask(pending);
+            }
+        }
+
+        int extractedCount() {
+            return this.extracted.size();
+        }
+
+        void close() {
+            if (this.extractionExecutor != null) {
+                this.extractionExecutor.shutdownNow();
+            }
+        }
+
+        void extractAllTrackedTextures(int threads, ShardSpec shard) throws IOException {
+            Map<String, ResolvedTexture> pending = new LinkedHashMap<String, ResolvedTexture>();
+            for (String entry : this.textureEntries) {
+                ResolvedTexture resolved = resolvedFromEntry(entry);
+                if (resolved != null && !this.extracted.contains(resolved.sourceEntry) && shard.owns(resolved.sourceEntry)) {
+                    pending.put(resolved.sourceEntry, resolved);
+                }
+            }
+
+            ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads), new ExportThreadFactory("texture-extract"));
+            try {
+                List<Future<Void>> results = new ArrayList<Future<Void>>(pending.size());
+                for (final ResolvedTexture resolved : pending.values()) {
+                    results.add(executor.submit(new Callable<Void>() {
+                        @Override
+                        public Void call() throws IOException {
+                            extractIfNeeded(resolved);
+                            return null;
+                        }
+                    }));
+                }
+
+                for (Future<Void> result : results) {
+                    awaitTask(result);
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        private static void awaitTask(Future<?> task) throws IOException {
+            try {
+                task.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while extracting textures.", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                throw new IOException("Texture extraction failed.", cause);
+            }
+        }
+
+        private ResolvedTexture resolve(LocationInfo info) {
+            TextureSearchContext search = TextureSearchContext.create(this, info);
+
+            String runtimeEntry = findRuntimeTextureEntry(info, search);
+            if (runtimeEntry != null) {
+                return resolvedFromEntry(runtimeEntry);
+            }
+
+            String knownEntry = findKnownTextureEntry(search.namespaceLower, search.modelPathLower, search.layerLower);
+            if (knownEntry != null) {
+                return resolvedFromEntry(knownEntry);
+            }
+
+            String bestEntry = findBestScoredEntry(search);
+            if (bestEntry == null) {
+                return null;
+            }
+
+            return resolvedFromEntry(bestEntry);
+        }
+
+        private String findBestScoredEntry(TextureSearchContext search) {
+            if (search.namespaceLower.indexOf('/') >= 0) {
+                String prefix = "assets/" + search.namespaceLower + "/";
+                ScoredEntry best = new ScoredEntry();
+                for (int i = 0; i < this.catalog.entries.size(); i++) {
+                    String lower = this.catalog.lowerEntries.get(i);
+                    if (lower.startsWith(prefix)) {
+                        best.offer(this.catalog.entries.get(i), search.score(lower));
+                    }
+                }
+                return best.acceptedEntry();
+            }
+
+            TextureCatalog.NamespaceEntries namespace = this.catalog.namespaces.get(search.namespaceLower);
+            if (namespace == null) {
+                return null;
+            }
+
+            if (search.queryTokens != null) {
+                BitSet candidates = namespace.candidates(search.queryTokens);
+                ScoredEntry best = new ScoredEntry();
+                for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+                    best.offer(namespace.entries.get(i), search.score(namespace.lowerEntries.get(i)));
+                }
+
+                if (best.entry != null && best.score > search.nonCandidateScoreBound) {
+                    return best.acceptedEntry();
+                }
+                if (search.nonCandidateScoreBound < MIN_FALLBACK_SCORE) {
+                    return null;
+                }
+            }
+
+            ScoredEntry best = new ScoredEntry();
+            for (int i = 0; i < namespace.entries.size(); i++) {
+                best.offer(namespace.entries.get(i), search.score(namespace.lowerEntries.get(i)));
+            }
+            return best.acceptedEntry();
+        }
+
+        private String findRuntimeTextureEntry(LocationInfo info, TextureSearchContext search) {
+            Map<String, Integer> candidates = this.runtimeTextureIndex.findCandidates(info);
+            if (candidates.isEmpty()) {
+                return null;
+            }
+
+            int bestScore = Integer.MIN_VALUE;
+            String bestEntry = null;
+
+            for (Map.Entry<String, Integer> candidate : candidates.entrySet()) {
+                String entry = candidate.getKey();
+                if (!hasTextureEntry(entry)) {
+                    continue;
+                }
+
+                int score = candidate.getValue().intValue() + search.score(entry.toLowerCase(Locale.ROOT));
+                if (score > bestScore) {
+                    bestScore = score;
+                    bestEntry = entry;
+                }
+            }
+
+            return bestEntry;
+        }
+
+        private ResolvedTexture resolvedFromEntry(String entry) {
+            String lower = entry.toLowerCase(Locale.ROOT);
+            int texturesIndex = lower.indexOf("/textures/");
+            if (texturesIndex < 0) {
+                return null;
+            }
+
+            String subPath = entry.substring(texturesIndex + "/textures/".length());
+            Path extractedPath = this.outputDir.resolve("textures").resolve(subPath.replace('/', java.io.File.separatorChar));
+            String mapKd = toForwardSlashes(this.outputDir.relativize(extractedPath).toString());
+            return new ResolvedTexture(entry, extractedPath, mapKd);
+        }
+
+        private String findKnownTextureEntry(String namespaceLower, String modelPathLower, String layerLower) {
+            if (!"minecraft".equals(namespaceLower)) {
+                return null;
+            }
+            String modelKey = modelPathLower.replace('/', '_');
+
+            if (modelKey.endsWith("_minecart")) {
+                String candidate = "assets/minecraft/textures/entity/minecart/minecart.png";
+                if (hasTextureEntry(candidate)) {
+                    return candidate;
+                }
+            }
+
+            if ("boat".equals(modelKey) && "water_patch".equals(layerLower)) {
+                String candidate = "assets/minecraft/textures/block/water_still.png";
+                if (hasTextureEntry(candidate)) {
+                    return candidate;
+                }
+            }
+
+            if ("sniffer_baby".equals(modelKey)) {
+                String candidate = "assets/minecraft/textures/entity/sniffer/snifflet.png";
+                if (hasTextureEntry(candidate)) {
+                    return candidate;
+                }
+            }
+
+            if ("armor_stand".equals(modelKey) || "armor_stand_small".equals(modelKey)) {
+                String candidate = "assets/minecraft/textures/entity/armorstand/armorstand.png";
+                if (hasTextureEntry(candidate)) {
+                    return candidate;
+                }
+            }
+
+            if ("giant".equals(modelKey)) {
+                String candidate = "assets/minecraft/textures/entity/zombie/zombie.png";
+                if (hasTextureEntry(candidate)) {
+                    return candidate;
+                }
+            }
+
+            if ("player".equals(modelKey)) {
+                String candidate = "assets/minecraft/textures/entity/player/wide/steve.png";
+                if (hasTextureEntry(candidate)) {
+                    return candidate;
+                }
+            }
+            if ("player_slim".equals(modelKey)) {
+                String candidate = "assets/minecraft/textures/entity/player/slim/steve.png";
+                if (hasTextureEntry(candidate)) {
+                    return candidate;
+                }
+            }
+
+            if ("leash_knot".equals(modelKey)) {
+                String candidate = "assets/minecraft/textures/entity/lead_knot/lead_knot.png";
+                if (hasTextureEntry(candidate)) {
+                    return candidate;
+                }
+            }
+
+            if ("dragon_skull".equals(modelKey)) {
+                String candidate = "assets/minecraft/textures/entity/enderdragon/dragon.png";
+                if (hasTextureEntry(candidate)) {
+                    return candidate;
+                }
+            }
+
+            if ("double_chest_left".equals(modelKey)) {
+                String candidate = "assets/minecraft/textures/entity/chest/normal_left.png";
+                if (hasTextureEntry(candidate)) {
+                    return candidate;
+                }
+            }
+            if ("double_chest_right".equals(modelKey)) {
+                String candidate = "assets/minecraft/textures/entity/chest/normal_right.png";
+                if (hasTextureEntry(candidate)) {
+                    return candidate;
+                }
+            }
+            if ("chest".equals(modelKey)) {
+                String candidate = "assets/minecraft/textures/entity/chest/normal.png";
+                if (hasTextureEntry(candidate)) {
+                    return candidate;
+                }
+            }
+
+            if ("bed_foot".equals(modelKey) || "bed_head".equals(modelKey)) {
+                String candidate = "assets/minecraft/textures/entity/bed/red.png";
+                if (hasTextureEntry(candidate)) {
+                    return candidate;
+                }
+            }
+
+            if ("decorated_pot_sides".equals(modelKey)) {
+                String candidate = "assets/minecraft/textures/entity/decorated_pot/decorated_pot_side.png";
+                if (hasTextureEntry(candidate)) {
+                    return candidate;
+                }
+            }
+
+            if ("conduit".equals(modelKey) && "shell".equals(layerLower)) {
+                String candidate = "assets/minecraft/textures/entity/conduit/base.png";
+                if (hasTextureEntry(candidate)) {
+                    return candidate;
+                }
+            }
+
+            if (modelKey.startsWith("hanging_sign_")) {
+                String wood = detectWoodType(modelKey);
+                if (wood != null) {
+                    String candidate = "assets/minecraft/textures/entity/signs/hanging/" + wood + ".png";
+                    if (hasTextureEntry(candidate)) {
+                        return candidate;
+                    }
+                }
+            }
+
+            if ("standing_banner".equals(modelKey) || "wall_banner".equals(modelKey)) {
+                String candidate = "assets/minecraft/textures/entity/banner/base.png";
+                if (hasTextureEntry(candidate)) {
+                    return candidate;
+                }
+            }
+
+            if ("pufferfish_big".equals(modelKey) || "pufferfish_medium".equals(modelKey)) {
+                String candidate = "assets/minecraft/textures/entity/fish/pufferfish.png";
+                if (hasTextureEntry(candidate)) {
+                    return candidate;
+                }
+            }
+            if ("salmon_large".equals(modelKey)) {
+                String candidate = "assets/minecraft/textures/entity/fish/salmon.png";
+                if (hasTextureEntry(candidate)) {
+                    return candidate;
+                }
+            }
+            if ("tropical_fish_small".equals(modelKey)) {
+                String candidate = "main".equals(layerLower)
+                    ? "assets/minecraft/textures/entity/fish/tropical_a.png"
+                    : "assets/minecraft/textures/entity/fish/tropical_a_pattern_1.png";
+                if (hasTextureEntry(candidate)) {
+                    return candidate;
+                }
+            }
+            if ("tropical_fish_large".equals(modelKey)) {
+                String candidate = "main".equals(layerLower)
+                    ? "assets/minecraft/textures/entity/fish/tropical_b.png"
+                    : "assets/minecraft/textures/entity/fish/tropical_b_pattern_1.png";
+                if (hasTextureEntry(candidate)) {
+                    return candidate;
+                }
+            }
+
+            if ("shulker_box".equals(modelKey)) {
+                String candidate = "assets/minecraft/textures/entity/shulker/shulker.png";
+                if (hasTextureEntry(candidate)) {
+                    return candidate;
+                }
+            }
+            if ("shulker_bullet".equals(modelKey)) {
+                String candidate = "assets/minecraft/textures/entity/shulker/spark.png";
+                if (hasTextureEntry(candidate)) {
+                    return candidate;
+                }
+            }
+
+            if ("skeleton_skull".equals(modelKey)) {
+                String candidate = "assets/minecraft/textures/entity/skeleton/skeleton.png";
+                if (hasTextureEntry(candidate)) {
+                    return candidate;
+                }
+            }
+            if ("wither_skeleton_skull".equals(modelKey)) {
+                String candidate = "assets/minecraft/textures/entity/skeleton/wither_skeleton.png";
+                if (hasTextureEntry(candidate)) {
+                    return candidate;
+                }
+            }
+            if ("wither_skull".equals(modelKey)) {
+                String candidate = "assets/minecraft/textures/entity/wither/wither.png";
+                if (hasTextureEntry(candidate)) {
+                    return candidate;
+                }
+            }
+
+            if ("undead_horse_armor".equals(modelKey)) {
+                String candidate = "assets/minecraft/textures/entity/horse/horse_zombie.png";
+                if (hasTextureEntry(candidate)) {
+                    return candidate;
+                }
+            }
+
+            if ("spin_attack".equals(modelKey)) {
+                String candidate = "assets/minecraft/textures/entity/trident/trident_riptide.png";
+                if (hasTextureEntry(candidate)) {
+                    return candidate;
+                }
+            }
+
+            if ("llama".equals(modelKey) && "decor".equals(layerLower)) {
+                String candidate = "assets/minecraft/textures/entity/llama/llama_white.png";
+                if (hasTextureEntry(candidate)) {
+                    return candidate;
+                }
+            }
+            if ("llama_baby".equals(modelKey) && "decor".equals(layerLower)) {
+                String candidate = "assets/minecraft/textures/entity/llama/llama_white_baby.png";
+                if (hasTextureEntry(candidate)) {
+                    return candidate;
+                }
+            }
+
+            if (modelKey.startsWith("copper_golem_") && "main".equals(layerLower)) {
+                String candidate = "assets/minecraft/textures/entity/copper_golem/copper_golem.png";
+                if (hasTextureEntry(candidate)) {
+                    return candidate;
+                }
+            }
+
+            if ("drowned".equals(modelKey) || "drowned_baby".equals(modelKey)) {
+                boolean baby = modelKey.contains("baby");
+                if (layerLower.contains("outer")) {
+                    String candidate = baby
+                        ? "assets/minecraft/textures/entity/zombie/drowned_outer_layer_baby.png"
+                        : "assets/minecraft/textures/entity/zombie/drowned_outer_layer.png";
+                    if (hasTextureEntry(candidate)) {
+                        return candidate;
+                    }
+                }
+
+                String candidate = baby
+                    ? "assets/minecraft/textures/entity/zombie/drowned_baby.png"
+                    : "assets/minecraft/textures/entity/zombie/drowned.png";
+                if (hasTextureEntry(candidate)) {
+                    return candidate;
+                }
+            }
+
+            if (modelKey.startsWith("villager")) {
+                boolean baby = modelKey.contains("_baby");
+                String candidate = baby
+                    ? "assets/minecraft/textures/entity/villager/villager_baby.png"
+                    : "assets/minecraft/textures/entity/villager/villager.png";
+                if (hasTextureEntry(candidate)) {
+                    return candidate;
+                }
+            }
+
+            if (modelKey.startsWith("zombie_villager")) {
+                boolean baby = modelKey.contains("_baby");
+                String candidate = baby
+                    ? "assets/minecraft/textures/entity/zombie_villager/zombie_villager_baby.png"
+                    : "assets/minecraft/textures/entity/zombie_villager/zombie_villager.png";
+                if (hasTextureEntry(candidate)) {
+                    return candidate;
+                }
+            }
+
+            if (modelPathLower.contains("happy_ghast") && modelPathLower.contains("harness")) {
+                String candidate = "assets/minecraft/textures/entity/equipment/happy_ghast_body/white_harness.png";
+                if (hasTextureEntry(candidate)) {
+                    return candidate;
+                }
+            }
+            if (modelPathLower.contains("happy_ghast") && modelPathLower.contains("ropes")) {
+                String candidate = "assets/minecraft/textures/entity/ghast/happy_ghast_ropes.png";
+                if (hasTextureEntry(candidate)) {
+                    return candidate;
+                }
+            }
+
+            return null;
+        }
+
+        private static String detectWoodType(String modelPathLower) {
+            String[] woods = new String[] {
+                "acacia",
+                "bamboo",
+                "birch",
+                "cherry",
+                "crimson",
+                "dark_oak",
+                "jungle",
+                "mangrove",
+                "oak",
+                "pale_oak",
+                "spruce",
+                "warped"
+            };
+            for (String wood : woods) {
+                if (modelPathLower.contains("_" + wood + "_")) {
+                    return wood;
+                }
+            }
+            return null;
+        }
+
+        private boolean hasTextureEntry(String entryName) {
+            return this.catalog.foldedEntries.contains(TextureCatalog.foldCase(entryName));
+        }
+
+        private static final class ScoredEntry {
+            String entry = null;
+            int score = Integer.MIN_VALUE;
+
+            void offer(String candidate, int candidateScore) {
+                if (candidateScore > this.score) {
+                    this.score = candidateScore;
+                    this.entry = candidate;
+                }
+            }
+
+            String acceptedEntry() {
+                return this.entry != null && this.score >= MIN_FALLBACK_SCORE ? this.entry : null;
+            }
+        }
+
+        private static final class TextureCatalog {
+            final List<String> entries;
+            final List<String> lowerEntries;
+            final Set<String> foldedEntries;
+            final Map<String, NamespaceEntries> namespaces;
+
+            private TextureCatalog(
+                List<String> entries,
+                List<String> lowerEntries,
+                Set<String> foldedEntries,
+                Map<String, NamespaceEntries> namespaces
+            ) {
+                this.entries = entries;
+                this.lowerEntries = lowerEntries;
+                this.foldedEntries = foldedEntries;
+                this.namespaces = namespaces;
+            }
+
+            static String foldCase(String value) {
+                char[] chars = value.toCharArray();
+                for (int i = 0; i < chars.length; i++) {
+                    chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+                }
+                return new String(chars);
+            }
+
+            static TextureCatalog build(List<String> entries) {
+                List<String> lowerEntries = new ArrayList<String>(entries.size());
+                Set<String> foldedEntries = new HashSet<String>(entries.size() * 2);
+                Map<String, NamespaceEntries> namespaces = new HashMap<String, NamespaceEntries>();
+                for (String entry : entries) {
+                    String lower = entry.toLowerCase(Locale.ROOT);
+                    lowerEntries.add(lower);
+                    foldedEntries.add(foldCase(entry));
+                    if (!lower.startsWith("assets/")) {
+                        continue;
+                    }
+                    int slash = lower.indexOf('/', "assets/".length());
+                    if (slash < 0) {
+                        continue;
+                    }
+
+                    String namespace = lower.substring("assets/".length(), slash);
+                    NamespaceEntries namespaceEntries = namespaces.get(namespace);
+                    if (namespaceEntries == null) {
+                        namespaceEntries = new NamespaceEntries();
+                        namespaces.put(namespace, namespaceEntries);
+                    }
+                    namespaceEntries.add(entry, lower);
+                }
+                for (NamespaceEntries namespaceEntries : namespaces.values()) {
+                    namespaceEntries.seal();
+                }
+                return new TextureCatalog(entries, lowerEntries, foldedEntries, namespaces);
+            }
+
+            private static final class NamespaceEntries {
+                final List<String> entries = new ArrayList<String>();
+                final List<String> lowerEntries = new ArrayList<String>();
+                final List<String> fileNames = new ArrayList<String>();
+                final Set<String> fileNameTokens = new HashSet<String>();
+                private final Map<String, Boolean> fileNameTokenMatches = new ConcurrentHashMap<String, Boolean>();
+                private Map<String, List<Integer>> pendingPostings = new HashMap<String, List<Integer>>();
+                private Map<String, int[]> entriesByToken;
+
+                void add(String entry, String lower) {
+                    Integer index = Integer.valueOf(this.entries.size());
+                    this.entries.add(entry);
+                    this.lowerEntries.add(lower);
+                    String fileName = extractFileNameWithoutExtension(lower);
+                    this.fileNames.add(fileName);
+                    this.fileNameTokens.addAll(tokenize(fileName));
+                    for (String token : tokenize(lower)) {
+                        this.pendingPostings.computeIfAbsent(token, key -> new ArrayList<Integer>()).add(index);
+                    }
+                }
+
+                void seal() {
+                    this.entriesByToken = new HashMap<String, int[]>(this.pendingPostings.size() * 2);
+                    for (Map.Entry<String, List<Integer>> posting : this.pendingPostings.entrySet()) {
+                        List<Integer> indices = posting.getValue();
+                        int[] values = new int[indices.size()];
+                        for (int i = 0; i < values.length; i++) {
+                            values[i] = indices.get(i).intValue();
+                        }
+                        this.entriesByToken.put(posting.getKey(), values);
+                    }
+                    this.pendingPostings = null;
+                }
+
+                boolean hasFileNameToken(String token) {
+                    if (isAlphanumeric(token)) {
+                        return this.fileNameTokens.contains(token);
+                    }
+
+                    Boolean cached = this.fileNameTokenMatches.get(token);
+                    if (cached == null) {
+                        boolean found = false;
+                        for (String fileName : this.fileNames) {
+                            if (hasTokenInFileName(fileName, tokenize(fileName), token)) {
+                                found = true;
+                                break;
+                            }
+                        }
+                        cached = Boolean.valueOf(found);
+                        this.fileNameTokenMatches.put(token, cached);
+                    }
+                    return cached.booleanValue();
+                }
+
+                private static boolean isAlphanumeric(String value) {
+                    for (int i = 0; i < value.length(); i++) {
+                        char c = value.charAt(i);
+                        if ((c < 'a' || c > 'z') && (c < '0' || c > '9')) {
+                            return false;
+                        }
+                    }
+                    return !value.isEmpty();
+                }
+
+                BitSet candidates(Set<String> tokens) {
+                    BitSet out = new BitSet(this.entries.size());
+                    for (String token : tokens) {
+                        int[] indices = this.entriesByToken.get(token);
+                        if (indices == null) {
+                            continue;
+                        }
+                        for (int index : indices) {
+                            out.set(index);
+                        }
+                    }
+                    return out;
+                }
+            }
+        }
+
+        private static final class TextureSearchContext {
+            final String namespaceLower;
+            final String modelPathLower;
+            final String layerLower;
+            final String flatModel;
+            final String canonicalFlat;
+            final String lastSegment;
+            final String canonicalLast;
+            final boolean hasCanonicalFileNameCandidates;
+            final Set<String> names;
+            final Set<String> modelTokens;
+            final Set<String> layerTokens;
+            final Set<String> queryTokens;
+            final int nonCandidateScoreBound;
+
+            private TextureSearchContext(
+                String namespaceLower,
+                String modelPathLower,
+                String layerLower,
+                String flatModel,
+                String canonicalFlat,
+                String lastSegment,
+                String canonicalLast,
+                boolean hasCanonicalFileNameCandidates,
+                Set<String> names,
+                Set<String> modelTokens,
+                Set<String> layerTokens,
+                Set<String> queryTokens,
+                int nonCandidateScoreBound
+            ) {
+                this.namespaceLower = namespaceLower;
+                this.modelPathLower = modelPathLower;
+                this.layerLower = layerLower;
+                this.flatModel = flatModel;
+                this.canonicalFlat = canonicalFlat;
+                this.lastSegment = lastSegment;
+                this.canonicalLast = canonicalLast;
+                this.hasCanonicalFileNameCandidates = hasCanonicalFileNameCandidates;
+                this.names = names;
+                this.modelTokens = modelTokens;
+                this.layerTokens = layerTokens;
+                this.queryTokens = queryTokens;
+                this.nonCandidateScoreBound = nonCandidateScoreBound;
+            }
+
+            static TextureSearchContext create(TextureResolver resolver, LocationInfo info) {
+                String namespaceLower = info.namespace.toLowerCase(Locale.ROOT);
+                String modelPathLower = info.modelPath.toLowerCase(Locale.ROOT);
+                String layerLower = info.layer.toLowerCase(Locale.ROOT);
+
+                String flatModel = modelPathLower.replace('/', '_');
+                String lastSegment = modelPathLower;
+                int slash = lastSegment.lastIndexOf('/');
+                if (slash >= 0) {
+                    lastSegment = lastSegment.substring(slash + 1);
+                }
+
+                String canonicalFlat = stripSuffixes(flatModel);
+                String canonicalLast = stripSuffixes(lastSegment);
+                String compactFlat = flatModel.replace("_", "");
+                String compactLast = lastSegment.replace("_", "");
+                String compactCanonicalFlat = canonicalFlat.replace("_", "");
+                String compactCanonicalLast = canonicalLast.replace("_", "");
+                boolean hasCanonicalFileNameCandidates = resolver.hasNamespaceEntryWithFileNameToken(namespaceLower, canonicalLast);
+
+                LinkedHashSet<String> names = new LinkedHashSet<String>();
+                addName(names, flatModel);
+                addName(names, lastSegment);
+                addName(names, canonicalFlat);
+                addName(names, canonicalLast);
+                addName(names, compactFlat);
+                addName(names, compactLast);
+                addName(names, compactCanonicalFlat);
+                addName(names, compactCanonicalLast);
+
+                if (!"main".equals(layerLower)) {
+                    addName(names, flatModel + "_" + layerLower);
+                    addName(names, lastSegment + "_" + layerLower);
+                    addName(names, canonicalFlat + "_" + layerLower);
+                    addName(names, canonicalLast + "_" + layerLower);
+                    addName(names, compactFlat + "_" + layerLower);
+                    addName(names, compactLast + "_" + layerLower);
+                    addName(names, compactCanonicalFlat + "_" + layerLower);
+                    addName(names, compactCanonicalLast + "_" + layerLower);
+                }
+
+                Set<String> modelTokens = tokenize(flatModel);
+                modelTokens.addAll(tokenize(lastSegment));
+                if (!canonicalFlat.equals(flatModel)) {
+                    modelTokens.addAll(tokenize(canonicalFlat));
+                }
+
+                Set<String> layerTokens = tokenize(layerLower);
+
+                Set<String> queryTokens = new HashSet<String>(modelTokens);
+                queryTokens.addAll(layerTokens);
+                boolean indexable = !tokenize(modelPathLower).isEmpty();
+                for (String name : names) {
+                    Set<String> nameTokens = tokenize(name);
+                    indexable &= !nameTokens.isEmpty();
+                    queryTokens.addAll(nameTokens);
+                }
+                Set<String> canonicalTokens = tokenize(canonicalLast);
+                queryTokens.addAll(canonicalTokens);
+
+                boolean modelHasBaby = modelTokens.contains("baby") || modelPathLower.contains("_baby");
+                if (modelHasBaby) {
+                    queryTokens.add("baby");
+                }
+                if (layerLower.contains("outer")) {
+                    queryTokens.add("outer");
+                }
+                if (layerLower.contains("inner")) {
+                    queryTokens.add("inner");
+                }
+                if (modelTokens.contains("armor") && modelTokens.contains("stand")) {
+                    queryTokens.add("armorstand");
+                }
+                if (modelHasBaby && (modelTokens.contains("sniffer") || "sniffer_baby".equals(lastSegment))) {
+                    queryTokens.add("snifflet");
+                }
+
+                boolean mainLayer = "main".equals(layerLower);
+                int nonCandidateScoreBound = 50 + 30 + 20 * names.size();
+                if (!mainLayer && (layerLower.contains("armor") || layerLower.contains("boots") || layerLower.contains("leggings")
+                        || layerLower.contains("chestplate") || layerLower.contains("helmet"))) {
+                    nonCandidateScoreBound += 90;
+                }
+                if (layerLower.contains("outer")) {
+                    nonCandidateScoreBound += 110;
+                }
+                if (hasCanonicalFileNameCandidates && !canonicalTokens.isEmpty()) {
+                    nonCandidateScoreBound -= 110;
+                }
+                if (!mainLayer && !layerTokens.isEmpty()) {
+                    nonCandidateScoreBound -= 200;
+                }
+
+                return new TextureSearchContext(
+                    namespaceLower,
+                    modelPathLower,
+                    layerLower,
+                    flatModel,
+                    canonicalFlat,
+                    lastSegment,
+                    canonicalLast,
+                    hasCanonicalFileNameCandidates,
+                    names,
+                    modelTokens,
+                    layerTokens,
+                    indexable ? queryTokens : null,
+                    nonCandidateScoreBound
+                );
+            }
+
+            int score(String lowerEntry) {
+                return scoreEntry(
+                    lowerEntry,
+                    this.modelPathLower,
+                    this.layerLower,
+                    this.names,
+                    this.modelTokens,
+                    this.layerTokens,
+                    this.flatModel,
+                    this.canonicalFlat,
+                    this.lastSegment,
+                    this.canonicalLast,
+                    this.hasCanonicalFileNameCandidates
+                );
+            }
+        }
+
+        private static int scoreEntry(
+            String entry,
+            String modelPathLower,
+            String layerLower,
+            Set<String> names,
+            Set<String> modelTokens,
+            Set<String> layerTokens,
+            String flatModel,
+            String canonicalFlat,
+            String lastSegment,
+            String canonicalLast,
+            boolean hasCanonicalFileNameCandidates
+        ) {
+            int score = 0;
+            Set<String> entryTokens = tokenize(entry);
+            String fileName = extractFileNameWithoutExtension(entry);
+            Set<String> fileNameTokens = tokenize(fileName);
+            boolean modelHasBaby = modelTokens.contains("baby") || modelPathLower.contains("_baby");
+            boolean fileNameHasCanonicalToken = hasTokenInFileName(fileName, fileNameTokens, canonicalLast);
+
+            if (entry.contains("/textures/entity/")) {
+                score += 50;
+            }
+            if (entry.contains("/textures/models/armor/")) {
+                score += 30;
+            }
+
+            if (entry.endsWith("/" + modelPathLower + ".png")) {
+                score += 260;
+            }
+            if (entry.endsWith("/" + flatModel + ".png")) {
+                score += 220;
+            }
+            if (!canonicalFlat.equals(flatModel) && entry.endsWith("/" + canonicalFlat + ".png")) {
+                score += 200;
+            }
+
+            for (String name : names) {
+                if (fileName.equals(name)) {
+                    score += 180;
+                }
+                if (entry.endsWith("/" + name + ".png")) {
+                    score += 160;
+                }
+                if (entry.contains("/" + name + "/")) {
+                    score += 60;
+                }
+                if (entry.contains(name)) {
+                    score += 20;
+                }
+            }
+
+            int matchedModelTokens = 0;
+            for (String token : modelTokens) {
+                if (token.length() > 2 && (entryTokens.contains(token) || fileNameTokens.contains(token))) {
+                    score += 14;
+                    matchedModelTokens++;
+                }
+            }
+
+            if (!modelTokens.isEmpty() && matchedModelTokens == modelTokens.size()) {
+                score += 70;
+            }
+            if (hasCanonicalFileNameCandidates) {
+                if (fileNameHasCanonicalToken) {
+                    score += 110;
+                } else {
+                    score -= 110;
+                }
+            }
+
+            if (modelHasBaby) {
+                if (entryTokens.contains("baby") || fileNameTokens.contains("baby")) {
+                    score += 50;
+                }
+            } else if (entryTokens.contains("baby") || fileNameTokens.contains("baby")) {
+                score -= 30;
+            }
+
+            if ("main".equals(layerLower)) {
+                for (String hint : MAIN_LAYER_PENALTY_HINTS) {
+                    if ((entryTokens.contains(hint) || fileNameTokens.contains(hint)) && !modelTokens.contains(hint)) {
+                        score -= 55;
+                    }
+                }
+            } else {
+                int matchedLayerTokens = 0;
+                for (String token : layerTokens) {
+                    if (token.length() > 2 && (entryTokens.contains(token) || fileNameTokens.contains(token))) {
+                        score += 40;
+                        matchedLayerTokens++;
+                    }
+                }
+                if (!layerTokens.isEmpty() && matchedLayerTokens == 0) {
+                    score -= 200;
+                }
+
+                if (layerLower.contains("armor") || layerLower.contains("boots") || layerLower.contains("leggings")
+                        || layerLower.contains("chestplate") || layerLower.contains("helmet")) {
+                    if (entry.contains("/textures/models/armor/")) {
+                        score += 90;
+                    }
+                }
+            }
+
+            if (layerLower.contains("outer") && (entryTokens.contains("outer") || entry.contains("outer_layer"))) {
+                score += 110;
+            }
+            if (layerLower.contains("inner") && entryTokens.contains("inner")) {
+                score += 80;
+            }
+
+            if (modelTokens.contains("armor") && modelTokens.contains("stand") && "armorstand".equals(fileName)) {
+                score += 260;
+            }
+            if (modelHasBaby && (modelTokens.contains("sniffer") || "sniffer_baby".equals(lastSegment)) && "snifflet".equals(fileName)) {
+                score += 300;
+            }
+            if (modelTokens.contains("harness") && fileName.endsWith("_harness")) {
+                score += 170;
+                if (fileName.startsWith("white_")) {
+                    score += 120;
+                }
+            }
+
+            return score;
+        }
+
+        private boolean hasNamespaceEntryWithFileNameToken(String namespaceLower, String token) {
+            if (token == null || token.length() <= 2) {
+                return false;
+            }
+            if (namespaceLower.indexOf('/') < 0) {
+                TextureCatalog.NamespaceEntries namespace = this.catalog.namespaces.get(namespaceLower);
+                return namespace != null && namespace.hasFileNameToken(token);
+            }
+            for (String entry : this.textureEntries) {
+                String lower = entry.toLowerCase(Locale.ROOT);
+                if (!lower.startsWith("assets/" + namespaceLower + "/")) {
+                    continue;
+                }
+                String fileName = extractFileNameWithoutExtension(lower);
+                Set<String> fileNameTokens = tokenize(fileName);
+                if (hasTokenInFileName(fileName, fileNameTokens, token)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static boolean hasTokenInFileName(String fileName, Set<String> fileNameTokens, String token) {
+            if (token == null || token.length() <= 2) {
+                return false;
+            }
+            if (token.equals(fileName)) {
+                return true;
+            }
+            if (fileNameTokens.contains(token)) {
+                return true;
+            }
+            return fileName.startsWith(token + "_")
+                || fileName.endsWith("_" + token)
+                || fileName.contains("_" + token + "_");
+        }
+
+        private static String extractFileNameWithoutExtension(String entry) {
+            int slash = entry.lastIndexOf('/');
+            int dot = entry.lastIndexOf('.');
+            if (dot <= slash) {
+                return entry.substring(slash + 1);
+            }
+            return entry.substring(slash + 1, dot);
+        }
+
+        private static void addName(Set<String> names, String name) {
+            if (name != null && !name.isEmpty()) {
+                names.add(name);
+            }
+        }
+
+        private static Set<String> tokenize(String value) {
+            Set<String> out = new HashSet<String>();
+            if (value == null || value.isEmpty()) {
+                return out;
+            }
+
+            String[] split = value.split("[^a-z0-9]+");
+            for (String token : split) {
+                if (!token.isEmpty()) {
+                    out.add(token);
+                }
+            }
+            return out;
+        }
+
+        private static String stripSuffixes(String value) {
+            String current = value;
+            boolean changed;
+            do {
+                changed = false;
+                for (String suffix : STRIP_SUFFIXES) {
+                    if (current.endsWith(suffix) && current.length() > suffix.length() + 2) {
+                        current = current.substring(0, current.length() - suffix.length());
+                        changed = true;
+                        break;
+                    }
+                }
+            } while (changed);
+
+            return current;
+        }
+
+        private static String toForwardSlashes(String path) {
+            return path.replace('\\', '/');
+        }
+
+        private void extractIfNeeded(ResolvedTexture texture) throws IOException {
+            if (this.extracted.contains(texture.sourceEntry)) {
+                return;
+            }
+
+            Object lock = this.extractionLocks.computeIfAbsent(texture.sourceEntry, key -> new Object());
+            synchronized (lock) {
+                if (!this.extracted.contains(texture.sourceEntry)) {
+                    extractEntry(texture);
+                }
+            }
+        }
+
+        private void extractEntry(ResolvedTexture texture) throws IOException {
+            ZipEntry entry = this.zipFile.getEntry(texture.sourceEntry);
+            if (entry == null) {
+                return;
+            }
+
+            if (this.manifest != null) {
+                ExportManifest.TextureRecord record = new ExportManifest.TextureRecord(texture.sourceEntry, entry.getCrc(), entry.getSize());
+                this.manifest.textures.put(record.entry, record);
+                if (record.matches(this.previousManifest.textures.get(record.entry))
+                    && Files.isRegularFile(texture.extractedPath)
+                    && Files.size(texture.extractedPath) == record.size) {
+                    this.unchangedTextures.incrementAndGet();
+                    this.extracted.add(texture.sourceEntry);
+                    return;
+                }
+            }
+
+            if (matchesEntry(texture.extractedPath, entry)) {
+                this.unchangedTextures.incrementAndGet();
+                this.extracted.add(texture.sourceEntry);
+                return;
+            }
+
+            Path parent = texture.extractedPath.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+
+            Path tempPath = tempSibling(texture.extractedPath);
+            try {
+                if (!this.storedEntries.transfer(entry, tempPath)) {
+                    try (InputStream in = this.zipFile.getInputStream(entry)) {
+                        Files.copy(in, tempPath, StandardCopyOption.REPLACE_EXISTING);
+                    }
+                }
+                moveIntoPlace(tempPath, texture.extractedPath);
+            } finally {
+                Files.deleteIfExists(tempPath);
+            }
+
+            this.extracted.add(texture.sourceEntry);
+        }
+
+        private static boolean matchesEntry(Path path, ZipEntry entry) throws IOException {
+            if (entry.getSize() < 0L || entry.getCrc() < 0L || !Files.isRegularFile(path) || Files.size(path) != entry.getSize()) {
+                return false;
+            }
+
+            CRC32 crc = new CRC32();
+            crc.update(Files.readAllBytes(path));
+            return crc.getValue() == entry.getCrc();
+        }
+
+        private static final class EntryCollector implements JarEntryConsumer {
+            final List<String> entries = new ArrayList<String>();
+
+            @Override
+            public boolean accepts(String entryName) {
+                String lower = entryName.toLowerCase(Locale.ROOT);
+                if (!lower.endsWith(".png")) {
+                    return false;
+                }
+                if (!lower.contains("/textures/")) {
+                    return false;
+                }
+                return lower.contains("/textures/entity/")
+                    || lower.contains("/textures/models/armor/")
+                    || lower.endsWith("/textures/block/water_still.png");
+            }
+
+            @Override
+            public boolean needsContent() {
+                return false;
+            }
+
+            @Override
+            public void accept(String entryName, byte[] content, int length) {
+                this.entries.add(entryName);
+            }
+        }
+    }
+
+    private static final class RuntimeOrientationResolver {
+        private final Map<String, Boolean> applyByLocationKey;
+
+        private RuntimeOrientationResolver(Map<String, Boolean> applyByLocationKey) {
+            this.applyByLocationKey = applyByLocationKey;
+        }
+
+        static RuntimeOrientationResolver create(LocationCatalog catalog, UsageIndex usageIndex, Set<String> selectedKeys) throws Exception {
+            Map<String, Boolean> applyByLocationKey = new HashMap<String, Boolean>();
+            if (usageIndex == null) {
+                return new RuntimeOrientationResolver(applyByLocationKey);
+            }
+
+            Map<String, String> fieldNameByLocationKey = catalog.fieldNameByLocationKey();
+            Map<String, String> factoryNameByLocationKey = catalog.factoryNameByLocationKey();
+
+            Set<String> keys = new LinkedHashSet<String>();
+            keys.addAll(fieldNameByLocationKey.keySet());
+            keys.addAll(factoryNameByLocationKey.keySet());
+            if (selectedKeys != null) {
+                keys.retainAll(selectedKeys);
+            }
+
+            for (String locationKey : keys) {
+                Usage usage = null;
+
+                String fieldName = fieldNameByLocationKey.get(locationKey);
+                if (fieldName != null) {
+                    usage = usageIndex.fieldUsage.get(fieldName);
+                }
+
+                if (usage == null) {
+                    String factoryName = factoryNameByLocationKey.get(locationKey);
+                    if (factoryName != null) {
+                        usage = usageIndex.factoryUsage.get(factoryName);
+                    }
+                }
+
+                if (usage != null) {
+                    applyByLocationKey.put(locationKey, Boolean.valueOf(usage.shouldApply()));
+                }
+            }
+
+            return new RuntimeOrientationResolver(applyByLocationKey);
+        }
+
+        boolean shouldApply(Object location) {
+            Boolean value = this.applyByLocationKey.get(String.valueOf(location));
+            return value == null ? true : value.booleanValue();
+        }
+
+        private static final class UsageCollector implements ParallelJarEntryConsumer {
+            final UsageIndex index = new UsageIndex();
+            private final ClassFileReader reader = new ClassFileReader();
+            private final Set<String> memberFilter;
+
+            UsageCollector(Set<String> memberFilter) {
+                this.memberFilter = memberFilter;
+            }
+
+            @Override
+            public boolean accepts(String entryName) {
+                return entryName.endsWith(".class") && RendererCategory.forClassEntry(entryName) != RendererCategory.IGNORE;
+            }
+
+            @Override
+            public boolean needsContent() {
+                return true;
+            }
+
+            @Override
+            public void accept(String entryName, byte[] content, int length) throws IOException {
+                scanClassReferences(this.reader, content, length, RendererCategory.forClassEntry(entryName), this.memberFilter, this.index);
+            }
+
+            @Override
+            public ParallelJarEntryConsumer fork() {
+                return new UsageCollector(this.memberFilter);
+            }
+
+            @Override
+            public void merge(ParallelJarEntryConsumer partial) {
+                this.index.merge(((UsageCollector) partial).index);
+            }
+        }
+
+        private static void scanClassReferences(ClassFileReader reader, byte[] content, int length, RendererCategory category, Set<String> memberFilter, UsageIndex index)
+                throws IOException {
+            if (!reader.reset(content, length) || !reader.hasClassReference(ClassFileReader.MODEL_LAYERS_CLASS)) {
+                return;
+            }
+            if (memberFilter != null && !reader.hasMemberReference(ClassFileReader.MODEL_LAYERS_CLASS, memberFilter)) {
+                return;
+            }
+
+            for (int i = 1; i < reader.constantCount(); i++) {
+                int tag = reader.tag(i);
+                if (tag != 9 && tag != 10) {
+                    continue;
+                }
+                if (!reader.isMemberOwner(i, ClassFileReader.MODEL_LAYERS_CLASS)) {
+                    continue;
+                }
+
+                String memberName = reader.memberName(i);
+                if (memberName == null) {
+                    continue;
+                }
+                if (tag == 9) {
+                    index.recordField(memberName, category);
+                } else {
+                    index.recordFactory(memberName, category);
+                }
+            }
+        }
+
+        private static final class UsageIndex {
+            final Map<String, Usage> fieldUsage = new HashMap<String, Usage>();
+            final Map<String, Usage> factoryUsage = new HashMap<String, Usage>();
+
+            void recordField(String name, RendererCategory category) {
+                record(this.fieldUsage, name, category);
+            }
+
+            void write(DataOutputStream out) throws IOException {
+                writeUsages(out, this.fieldUsage);
+                writeUsages(out, this.factoryUsage);
+            }
+
+            static UsageIndex read(DataInputStream in) throws IOException {
+                UsageIndex index = new UsageIndex();
+                readUsages(in, index.fieldUsage);
+                readUsages(in, index.factoryUsage);
+                return index;
+            }
+
+            private static void writeUsages(DataOutputStream out, Map<String, Usage> usages) throws IOException {
+                out.writeInt(usages.size());
+                for (Map.Entry<String, Usage> entry : usages.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeBoolean(entry.getValue().entity);
+                    out.writeBoolean(entry.getValue().nonEntity);
+                }
+            }
+
+            private static void readUsages(DataInputStream in, Map<String, Usage> usages) throws IOException {
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    String name = in.readUTF();
+                    Usage usage = new Usage();
+                    usage.entity = in.readBoolean();
+                    usage.nonEntity = in.readBoolean();
+                    usages.put(name, usage);
+                }
+            }
+
+            void recordFactory(String name, RendererCategory category) {
+                record(this.factoryUsage, name, category);
+            }
+
+            void merge(UsageIndex partial) {
+                merge(this.fieldUsage, partial.fieldUsage);
+                merge(this.factoryUsage, partial.factoryUsage);
+            }
+
+            private static void merge(Map<String, Usage> map, Map<String, Usage> partial) {
+                for (Map.Entry<String, Usage> entry : partial.entrySet()) {
+                    Usage usage = map.get(entry.getKey());
+                    if (usage == null) {
+                        usage = new Usage();
+                        map.put(entry.getKey(), usage);
+                    }
+                    usage.entity |= entry.getValue().entity;
+                    usage.nonEntity |= entry.getValue().nonEntity;
+                }
+            }
+
+            private static void record(Map<String, Usage> map, String name, RendererCategory category) {
+                Usage usage = map.get(name);
+                if (usage == null) {
+                    usage = new Usage();
+                    map.put(name, usage);
+                }
+                usage.record(category);
+            }
+        }
+
+        private static final class Usage {
+            boolean entity;
+            boolean nonEntity;
+
+            void record(RendererCategory category) {
+                if (category == RendererCategory.ENTITY) {
+                    this.entity = true;
+                } else if (category == RendererCategory.NON_ENTITY) {
+                    this.nonEntity = true;
+                }
+            }
+
+            boolean shouldApply() {
+                return this.entity || !this.nonEntity;
+            }
+        }
+
+        private static enum RendererCategory {
+            ENTITY,
+            NON_ENTITY,
+            IGNORE;
+
+            static RendererCategory forClassEntry(String entryName) {
+                if (!entryName.startsWith("net/minecraft/client/renderer/")) {
+                    return IGNORE;
+                }
+                if (entryName.startsWith("net/minecraft/client/renderer/entity/")) {
+                    return ENTITY;
+                }
+                if (entryName.startsWith("net/minecraft/client/renderer/blockentity/")
+                        || entryName.startsWith("net/minecraft/client/renderer/special/")) {
+                    return NON_ENTITY;
+                }
+                return IGNORE;
+            }
+        }
+    }
+
+    private static final class ReflectionContext {
+        final Class<?> modelLayerLocationClass;
+        final Class<?> modelLayersClass;
+        final Class<?> poseClass;
+        final Class<?> cubeClass;
+        final Class<?> modelPartVisitorClass;
+
+        final Constructor<?> poseStackCtor;
+        final Constructor<?> vector3fCtor;
+        final Constructor<?> entityModelSetMapCtor;
+
+        final Method entityModelSetVanillaMethod;
+        final Method entityModelSetBakeLayerMethod;
+        final Method layerDefinitionsCreateRootsMethod;
+        final Method sharedConstantsTryDetectVersionMethod;
+        final Method bootstrapMethod;
+
+        final Method modelPartVisitMethod;
+        final Method visitorMethod;
+        final int visitorPoseIndex;
+        final int visitorPathIndex;
+        final int visitorCubeIndexIndex;
+        final int visitorCubeIndex;
+        final MethodHandle visitorFactory;
+        final Method posePoseMethod;
+        final Method poseNormalMethod;
+        final Field poseTrustedNormalsField;
+        final Method poseTransformNormalMethod;
+        final Method matrixTransformPositionMethod;
+
+        final Method polygonVerticesMethod;
+        final Field polygonVerticesField;
+        final Method polygonNormalMethod;
+        final Field polygonNormalField;
+
+        final Method vertexWorldXMethod;
+        final Field vertexWorldXField;
+        final Method vertexWorldYMethod;
+        final Field vertexWorldYField;
+        final Method vertexWorldZMethod;
+        final Field vertexWorldZField;
+        final Method vertexUMethod;
+        final Field vertexUField;
+        final Method vertexVMethod;
+        final Field vertexVField;
+
+        final Method vector3fXMethod;
+        final Field vector3fXField;
+        final Method vector3fYMethod;
+        final Field vector3fYField;
+        final Method vector3fZMethod;
+        final Field vector3fZField;
+
+        final Method modelLayerLocationModelMethod;
+        final Field modelLayerLocationModelField;
+        final Method modelLayerLocationLayerMethod;
+        final Field modelLayerLocationLayerField;
+
+        final Method cubePolygonsMethod;
+        final Field cubePolygonsField;
+
+        final ToFloatFunction<Object> vertexWorldXGetter;
+        final ToFloatFunction<Object> vertexWorldYGetter;
+        final ToFloatFunction<Object> vertexWorldZGetter;
+        final ToFloatFunction<Object> vertexUGetter;
+        final ToFloatFunction<Object> vertexVGetter;
+
+        final ToFloatFunction<Object> vector3fXGetter;
+        final ToFloatFunction<Object> vector3fYGetter;
+        final ToFloatFunction<Object> vector3fZGetter;
+
+        final Function<Object, Object> cubePolygonsGetter;
+        final Function<Object, Object> polygonVerticesGetter;
+        final Function<Object, Object> polygonNormalGetter;
+
+        final MethodHandle vector3fFactory;
+        final MethodHandle poseTransformNormalHandle;
+        final MethodHandle matrixTransformPositionHandle;
+        final MethodHandle posePoseHandle;
+        final MethodHandle poseNormalHandle;
+        final MethodHandle poseTrustedNormalsHandle;
+        final MethodHandle positionMatrixGetHandle;
+        final MethodHandle normalMatrixGetHandle;
+
+        ReflectionContext() throws Exception {
+            Class<?> modelLayerLocationClass = Class.forName("net.minecraft.client.model.geom.ModelLayerLocation");
+            Class<?> modelLayersClass = Class.forName("net.minecraft.client.model.geom.ModelLayers");
+            Class<?> entityModelSetClass = Class.forName("net.minecraft.client.model.geom.EntityModelSet");
+            Class<?> layerDefinitionsClass = Class.forName("net.minecraft.client.model.geom.LayerDefinitions");
+            Class<?> sharedConstantsClass = Class.forName("net.minecraft.SharedConstants");
+            Class<?> bootstrapClass = Class.forName("net.minecraft.server.Bootstrap");
+            Class<?> modelPartClass = Class.forName("net.minecraft.client.model.geom.ModelPart");
+            Class<?> poseStackClass = Class.forName("com.mojang.blaze3d.vertex.PoseStack");
+            Class<?> poseClass = Class.forName("com.mojang.blaze3d.vertex.PoseStack$Pose");
+            Class<?> vector3fcClass = Class.forName("org.joml.Vector3fc");
+            Class<?> vector3fClass = Class.forName("org.joml.Vector3f");
+            Class<?> matrix4fClass = Class.forName("org.joml.Matrix4f");
+            Class<?> cubeClass = Class.forName("net.minecraft.client.model.geom.ModelPart$Cube");
+            Class<?> polygonClass = Class.forName("net.minecraft.client.model.geom.ModelPart$Polygon");
+            Class<?> vertexClass = Class.forName("net.minecraft.client.model.geom.ModelPart$Vertex");
+
+            this.modelLayerLocationClass = modelLayerLocationClass;
+            this.modelLayersClass = modelLayersClass;
+            this.poseClass = poseClass;
+            this.cubeClass = cubeClass;
+            this.modelPartVisitorClass = Class.forName("net.minecraft.client.model.geom.ModelPart$Visitor");
 
-                if (!"main".equals(layerLower)) {
-                    addName(names, flatModel + "_" + layerLower);
-                    addName(names, lastSegment + "_" + layerLower);
-                    addName(names, canonicalFlat + "_" + layerLower);
-                    addName(names, canonicalLast + "_" + layerLower);
-                    addName(names, compactFlat + "_" + layerLower);
-                    addName(names, compactLast + "_" + layerLower);
-                    addName(names, compactCanonicalFlat + "_" + layerLower);
-                    addName(names, compactCanonicalLast + "_" + layerLower);
-                }
+            this.poseStackCtor = requireNoArgConstructor(poseStackClass);
+            this.vector3fCtor = requireNoArgConstructor(vector3fClass);
+            this.entityModelSetMapCtor = findSingleArgConstructor(entityModelSetClass, Map.class);
 
-                Set<String> modelTokens = tokenize(flatModel);
-                modelTokens.addAll(tokenize(lastSegment));
-                if (!canonicalFlat.equals(flatModel)) {
-                    modelTokens.addAll(tokenize(canonicalFlat));
-                }
+            Method vanilla = findNoArgMethod(entityModelSetClass, true, "vanilla", "createVanilla");
+            if (vanilla == null) {
+                vanilla = findStaticFactoryMethod(entityModelSetClass);
+            }
+            this.entityModelSetVanillaMethod = vanilla;
 
-                Set<String> layerTokens = tokenize(layerLower);
-                return new TextureSearchContext(
-                    namespaceLower,
-                    modelPathLower,
-                    layerLower,
-                    flatModel,
-                    canonicalFlat,
-                    lastSegment,
-                    canonicalLast,
-                    hasCanonicalFileNameCandidates,
-                    names,
-                    modelTokens,
-                    layerTokens
-                );
+            this.entityModelSetBakeLayerMethod = requireMethodWithSingleParam(
+                entityModelSetClass,
+                false,
+                modelLayerLocationClass,
+                modelPartClass,
+                "bakeLayer"
+            );
+
+            Method createRoots = findMapFactoryMethod(
+                layerDefinitionsClass,
+                true,
+                "createRoots",
+                "roots",
+                "buildRoots",
+                "create"
+            );
+            if (createRoots == null) {
+                throw new NoSuchMethodException("LayerDefinitions#createRoots compatible method was not found.");
             }
+            this.layerDefinitionsCreateRootsMethod = createRoots;
 
-            int score(String lowerEntry) {
-                return scoreEntry(
-                    lowerEntry,
-                    this.modelPathLower,
-                    this.layerLower,
-                    this.names,
-                    this.modelTokens,
-                    this.layerTokens,
-                    this.flatModel,
-                    this.canonicalFlat,
-                    this.lastSegment,
-                    this.canonicalLast,
-                    this.hasCanonicalFileNameCandidates
-                );
+            this.sharedConstantsTryDetectVersionMethod = findNoArgMethod(sharedConstantsClass, true, "tryDetectVersion", "detectVersion");
+            Method bootstrap = findNoArgMethod(bootstrapClass, true, "bootStrap", "bootstrap");
+            if (bootstrap == null) {
+                bootstrap = findMethodWithArity(bootstrapClass, true, 1, "bootStrap", "bootstrap");
             }
-        }
+            this.bootstrapMethod = bootstrap;
 
-        private static int scoreEntry(
-            String entry,
-            String modelPathLower,
-            String layerLower,
-            Set<String> names,
-            Set<String> modelTokens,
-            Set<String> layerTokens,
-            String flatModel,
-            String canonicalFlat,
-            String lastSegment,
-            String canonicalLast,
-            boolean hasCanonicalFileNameCandidates
-        ) {
-            int score = 0;
-            Set<String> entryTokens = tokenize(entry);
-            String fileName = extractFileNameWithoutExtension(entry);
-            Set<String> fileNameTokens = tokenize(fileName);
-            boolean modelHasBaby = modelTokens.contains("baby") || modelPathLower.contains("_baby");
-            boolean fileNameHasCanonicalToken = hasTokenInFileName(fileName, fileNameTokens, canonicalLast);
+            Method visit = findExactMethod(modelPartClass, "visit", poseStackClass, this.modelPartVisitorClass);
+            if (visit == null) {
+                visit = findMethodWithArity(modelPartClass, false, 2, "visit");
+            }
+            if (visit == null) {
+                throw new NoSuchMethodException("ModelPart#visit compatible method was not found.");
+            }
+            this.modelPartVisitMethod = visit;
 
-            if (entry.contains("/textures/entity/")) {
-                score += 50;
+            Method visitorMethod = findAbstractMethod(this.modelPartVisitorClass);
+            if (visitorMethod == null) {
+                throw new NoSuchMethodException("ModelPart$Visitor abstract method was not found.");
             }
-            if (entry.contains("/textures/models/armor/")) {
-                score += 30;
+            Class<?>[] visitorParameters = visitorMethod.getParameterTypes();
+            this.visitorMethod = visitorMethod;
+            this.visitorPoseIndex = findParameter(visitorParameters, poseClass);
+            this.visitorPathIndex = findParameter(visitorParameters, String.class);
+            this.visitorCubeIndexIndex = findIntegralParameter(visitorParameters);
+            this.visitorCubeIndex = findParameter(visitorParameters, cubeClass);
+            if (this.visitorPoseIndex < 0 || this.visitorCubeIndex < 0) {
+                throw new NoSuchMethodException("ModelPart$Visitor method does not accept a pose and a cube: " + visitorMethod);
             }
 
-            if (entry.endsWith("/" + modelPathLower + ".png")) {
-                score += 260;
+            this.posePoseMethod = requireNoArgMethod(poseClass, false, "pose", "positionMatrix");
+            this.poseNormalMethod = findNoArgMethod(poseClass, false, "normal", "normalMatrix");
+            this.poseTrustedNormalsField = findField(poseClass, "trustedNormals");
+
+            Method transformNormal = findExactMethod(poseClass, "transformNormal", vector3fcClass, vector3fClass);
+            if (transformNormal == null) {
+                transformNormal = findExactMethod(poseClass, "transformNormal", vector3fcClass);
             }
-            if (entry.endsWith("/" + flatModel + ".png")) {
-                score += 220;
+            if (transformNormal == null) {
+                transformNormal = findMethodWithArity(poseClass, false, 2, "transformNormal");
             }
-            if (!canonicalFlat.equals(flatModel) && entry.endsWith("/" + canonicalFlat + ".png")) {
-                score += 200;
+            if (transformNormal == null) {
+                transformNormal = findMethodWithArity(poseClass, false, 1, "transformNormal");
             }
+            this.poseTransformNormalMethod = transformNormal;
 
-            for (String name : names) {
-                if (fileName.equals(name)) {
-                    score += 180;
-                }
-                if (entry.endsWith("/" + name + ".png")) {
-                    score += 160;
-                }
-                if (entry.contains("/" + name + "/")) {
-                    score += 60;
-                }
-                if (entry.contains(name)) {
-                    score += 20;
-                }
+            Method transformPosition = findExactMethod(
+                matrix4fClass,
+                "transformPosition",
+                Float.TYPE,
+                Float.TYPE,
+                Float.TYPE,
+                vector3fClass
+            );
+            if (transformPosition == null) {
+                transformPosition = findExactMethod(
+                    matrix4fClass,
+                    "transformPosition",
+                    Float.TYPE,
+                    Float.TYPE,
+                    Float.TYPE
+                );
             }
-
-            int matchedModelTokens = 0;
-            for (String token : modelTokens) {
-                if (token.length() > 2 && (entryTokens.contains(token) || fileNameTokens.contains(token))) {
-                    score += 14;
-                    matchedModelTokens++;
-                }
+            if (transformPosition == null) {
+                transformPosition = findMethodWithArity(matrix4fClass, false, 4, "transformPosition");
             }
-
-            if (!modelTokens.isEmpty() && matchedModelTokens == modelTokens.size()) {
-                score += 70;
+            if (transformPosition == null) {
+                transformPosition = findMethodWithArity(matrix4fClass, false, 3, "transformPosition");
             }
-            if (hasCanonicalFileNameCandidates) {
-                if (fileNameHasCanonicalToken) {
-                    score += 110;
-                } else {
-                    score -= 110;
-                }
+            if (transformPosition == null) {
+                throw new NoSuchMethodException("Matrix4f#transformPosition compatible method was not found.");
             }
+            this.matrixTransformPositionMethod = transformPosition;
 
-            if (modelHasBaby) {
-                if (entryTokens.contains("baby") || fileNameTokens.contains("baby")) {
-                    score += 50;
-                }
-            } else if (entryTokens.contains("baby") || fileNameTokens.contains("baby")) {
-                score -= 30;
-            }
+            this.polygonVerticesMethod = findNoArgMethod(polygonClass, false, "vertices", "getVertices");
+            this.polygonVerticesField = findField(polygonClass, "vertices", "vertexes");
 
-            if ("main".equals(layerLower)) {
-                for (String hint : MAIN_LAYER_PENALTY_HINTS) {
-                    if ((entryTokens.contains(hint) || fileNameTokens.contains(hint)) && !modelTokens.contains(hint)) {
-                        score -= 55;
-                    }
-                }
-            } else {
-                int matchedLayerTokens = 0;
-                for (String token : layerTokens) {
-                    if (token.length() > 2 && (entryTokens.contains(token) || fileNameTokens.contains(token))) {
-                        score += 40;
-                        matchedLayerTokens++;
-                    }
-                }
-                if (!layerTokens.isEmpty() && matchedLayerTokens == 0) {
-                    score -= 200;
-                }
+            this.polygonNormalMethod = findNoArgMethod(polygonClass, false, "normal", "getNormal");
+            this.polygonNormalField = findField(polygonClass, "normal");
 
-                if (layerLower.contains("armor") || layerLower.contains("boots") || layerLower.contains("leggings")
-                        || layerLower.contains("chestplate") || layerLower.contains("helmet")) {
-                    if (entry.contains("/textures/models/armor/")) {
-                        score += 90;
-                    }
-                }
-            }
+            this.vertexWorldXMethod = findFloatGetter(vertexClass, "worldX", "x", "getX");
+            this.vertexWorldXField = findFloatField(vertexClass, "worldX", "x");
+            this.vertexWorldYMethod = findFloatGetter(vertexClass, "worldY", "y", "getY");
+            this.vertexWorldYField = findFloatField(vertexClass, "worldY", "y");
+            this.vertexWorldZMethod = findFloatGetter(vertexClass, "worldZ", "z", "getZ");
+            this.vertexWorldZField = findFloatField(vertexClass, "worldZ", "z");
+            this.vertexUMethod = findFloatGetter(vertexClass, "u", "getU");
+            this.vertexUField = findFloatField(vertexClass, "u");
+            this.vertexVMethod = findFloatGetter(vertexClass, "v", "getV");
+            this.vertexVField = findFloatField(vertexClass, "v");
 
-            if (layerLower.contains("outer") && (entryTokens.contains("outer") || entry.contains("outer_layer"))) {
-                score += 110;
-            }
-            if (layerLower.contains("inner") && entryTokens.contains("inner")) {
-                score += 80;
-            }
+            this.vector3fXMethod = findFloatGetter(vector3fClass, "x", "getX");
+            this.vector3fXField = findFloatField(vector3fClass, "x");
+            this.vector3fYMethod = findFloatGetter(vector3fClass, "y", "getY");
+            this.vector3fYField = findFloatField(vector3fClass, "y");
+            this.vector3fZMethod = findFloatGetter(vector3fClass, "z", "getZ");
+            this.vector3fZField = findFloatField(vector3fClass, "z");
 
-            if (modelTokens.contains("armor") && modelTokens.contains("stand") && "armorstand".equals(fileName)) {
-                score += 260;
+            this.modelLayerLocationModelMethod = findNoArgMethod(modelLayerLocationClass, false, "model", "id", "getModel");
+            this.modelLayerLocationModelField = findField(modelLayerLocationClass, "model", "id");
+            this.modelLayerLocationLayerMethod = findNoArgMethod(modelLayerLocationClass, false, "layer", "getLayer");
+            this.modelLayerLocationLayerField = findField(modelLayerLocationClass, "layer");
+
+            this.cubePolygonsMethod = findNoArgMethod(cubeClass, false, "polygons", "getPolygons");
+            this.cubePolygonsField = findField(cubeClass, "polygons");
+
+            if (this.entityModelSetVanillaMethod == null && this.entityModelSetMapCtor == null) {
+                throw new NoSuchMethodException("No compatible EntityModelSet initializer found.");
             }
-            if (modelHasBaby && (modelTokens.contains("sniffer") || "sniffer_baby".equals(lastSegment)) && "snifflet".equals(fileName)) {
-                score += 300;
+            if (this.polygonVerticesMethod == null && this.polygonVerticesField == null) {
+                throw new NoSuchMethodException("ModelPart$Polygon vertices accessor was not found.");
             }
-            if (modelTokens.contains("harness") && fileName.endsWith("_harness")) {
-                score += 170;
-                if (fileName.startsWith("white_")) {
-                    score += 120;
-                }
+            if (this.polygonNormalMethod == null && this.polygonNormalField == null) {
+                throw new NoSuchMethodException("ModelPart$Polygon normal accessor was not found.");
             }
-
-            return score;
-        }
-
-        private boolean hasNamespaceEntryWithFileNameToken(String namespaceLower, String token) {
-            if (token == null || token.length() <= 2) {
-                return false;
+            if (this.cubePolygonsMethod == null && this.cubePolygonsField == null) {
+                throw new NoSuchMethodException("ModelPart$Cube polygons accessor was not found.");
             }
-            for (String entry : this.textureEntries) {
-                String lower = entry.toLowerCase(Locale.ROOT);
-                if (!lower.startsWith("assets/" + namespaceLower + "/")) {
-                    continue;
-                }
-                String fileName = extractFileNameWithoutExtension(lower);
-                Set<String> fileNameTokens = tokenize(fileName);
-                if (hasTokenInFileName(fileName, fileNameTokens, token)) {
-                    return true;
+
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            this.vertexWorldXGetter = compileFloatGetter(lookup, this.vertexWorldXMethod, this.vertexWorldXField, "vertex worldX", "worldX", "x", "getX");
+            this.vertexWorldYGetter = compileFloatGetter(lookup, this.vertexWorldYMethod, this.vertexWorldYField, "vertex worldY", "worldY", "y", "getY");
+            this.vertexWorldZGetter = compileFloatGetter(lookup, this.vertexWorldZMethod, this.vertexWorldZField, "vertex worldZ", "worldZ", "z", "getZ");
+            this.vertexUGetter = compileFloatGetter(lookup, this.vertexUMethod, this.vertexUField, "vertex U", "u", "getU");
+            this.vertexVGetter = compileFloatGetter(lookup, this.vertexVMethod, this.vertexVField, "vertex V", "v", "getV");
+
+            this.vector3fXGetter = compileFloatGetter(lookup, this.vector3fXMethod, this.vector3fXField, "vector X", "x", "getX");
+            this.vector3fYGetter = compileFloatGetter(lookup, this.vector3fYMethod, this.vector3fYField, "vector Y", "y", "getY");
+            this.vector3fZGetter = compileFloatGetter(lookup, this.vector3fZMethod, this.vector3fZField, "vector Z", "z", "getZ");
+
+            this.cubePolygonsGetter = compileObjectGetter(lookup, this.cubePolygonsMethod, this.cubePolygonsField);
+            this.polygonVerticesGetter = compileObjectGetter(lookup, this.polygonVerticesMethod, this.polygonVerticesField);
+            this.polygonNormalGetter = compileObjectGetter(lookup, this.polygonNormalMethod, this.polygonNormalField);
+
+            this.vector3fFactory = adaptHandle(lookup, this.vector3fCtor, MethodType.methodType(Object.class));
+            this.poseTransformNormalHandle = adaptTransformNormal(lookup, this.poseTransformNormalMethod);
+            this.matrixTransformPositionHandle = adaptTransformPosition(lookup, this.matrixTransformPositionMethod);
+            this.visitorFactory = compileVisitorFactory(lookup, this.modelPartVisitorClass, visitorMethod, poseClass, cubeClass);
+
+            MethodHandle posePoseHandle = null;
+            MethodHandle poseNormalHandle = null;
+            MethodHandle poseTrustedNormalsHandle = null;
+            MethodHandle positionMatrixGetHandle = null;
+            MethodHandle normalMatrixGetHandle = null;
+            if (this.poseNormalMethod != null && this.poseTrustedNormalsField != null && this.poseTrustedNormalsField.getType() == Boolean.TYPE) {
+                try {
+                    Method positionGet = findExactMethod(this.posePoseMethod.getReturnType(), "get", float[].class);
+                    Method normalGet = findExactMethod(this.poseNormalMethod.getReturnType(), "get", float[].class);
+                    if (positionGet != null && normalGet != null) {
+                        MethodType getType = MethodType.methodType(Object.class, Object.class, float[].class);
+                        posePoseHandle = lookup.unreflect(this.posePoseMethod).asType(MethodType.methodType(Object.class, Object.class));
+                        poseNormalHandle = lookup.unreflect(this.poseNormalMethod).asType(MethodType.methodType(Object.class, Object.class));
+                        poseTrustedNormalsHandle = lookup.unreflectGetter(this.poseTrustedNormalsField)
+                            .asType(MethodType.methodType(Boolean.TYPE, Object.class));
+                        positionMatrixGetHandle = lookup.unreflect(positionGet).asType(getType);
+                        normalMatrixGetHandle = lookup.unreflect(normalGet).asType(getType);
+                    }
+                } catch (Throwable ignored) {
+                    posePoseHandle = null;
                 }
             }
-            return false;
+            this.posePoseHandle = posePoseHandle;
+            this.poseNormalHandle = poseNormalHandle;
+            this.poseTrustedNormalsHandle = poseTrustedNormalsHandle;
+            this.positionMatrixGetHandle = positionMatrixGetHandle;
+            this.normalMatrixGetHandle = normalMatrixGetHandle;
         }
 
-        private static boolean hasTokenInFileName(String fileName, Set<String> fileNameTokens, String token) {
-            if (token == null || token.length() <= 2) {
+        boolean readPoseTransform(Object pose, PoseTransform out) throws Exception {
+            if (this.posePoseHandle == null) {
                 return false;
             }
-            if (token.equals(fileName)) {
-                return true;
-            }
-            if (fileNameTokens.contains(token)) {
+            try {
+                Object position = (Object) this.posePoseHandle.invokeExact(pose);
+                Object normal = (Object) this.poseNormalHandle.invokeExact(pose);
+                Object ignored = (Object) this.positionMatrixGetHandle.invokeExact(position, out.position);
+                ignored = (Object) this.normalMatrixGetHandle.invokeExact(normal, out.normal);
+                out.normalizeNormals = !(boolean) this.poseTrustedNormalsHandle.invokeExact(pose);
                 return true;
+            } catch (Throwable t) {
+                throw asException(t);
             }
-            return fileName.startsWith(token + "_")
-                || fileName.endsWith("_" + token)
-                || fileName.contains("_" + token + "_");
         }
 
-        private static String extractFileNameWithoutExtension(String entry) {
-            int slash = entry.lastIndexOf('/');
-            int dot = entry.lastIndexOf('.');
-            if (dot <= slash) {
-                return entry.substring(slash + 1);
-            }
-            return entry.substring(slash + 1, dot);
+        Object newVisitor(final CubeVisitSink sink) throws Exception {
+            if (this.visitorFactory != null) {
+                try {
+                    return (Object) this.visitorFactory.invokeExact(sink);
+                } catch (Throwable t) {
+                    throw asException(t);
+                }
+            }
+
+            final Method visitorMethod = this.visitorMethod;
+            final int poseIndex = this.visitorPoseIndex;
+            final int pathIndex = this.visitorPathIndex;
+            final int cubeIndexIndex = this.visitorCubeIndexIndex;
+            final int cubeIndex = this.visitorCubeIndex;
+            InvocationHandler handler = new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] arguments) throws Throwable {
+                    if (visitorMethod.equals(method)) {
+                        Object index = cubeIndexIndex >= 0 ? arguments[cubeIndexIndex] : null;
+                        sink.visit(
+                            arguments[poseIndex],
+                            pathIndex >= 0 ? (String) arguments[pathIndex] : null,
+                            isIntegralNumber(index) ? ((Number) index).intValue() : -1,
+                            arguments[cubeIndex]
+                        );
+                    }
+                    return defaultReturnValue(method.getReturnType());
+                }
+            };
+
+            return Proxy.newProxyInstance(
+                this.modelPartVisitorClass.getClassLoader(),
+                new Class<?>[] { this.modelPartVisitorClass },
+                handler
+            );
         }
 
-        private static void addName(Set<String> names, String name) {
-            if (name != null && !name.isEmpty()) {
-                names.add(name);
+        private static Method findAbstractMethod(Class<?> type) {
+            for (Method method : type.getMethods()) {
+                if (Modifier.isAbstract(method.getModifiers())) {
+                    return method;
+                }
             }
+            return null;
         }
 
-        private static Set<String> tokenize(String value) {
-            Set<String> out = new HashSet<String>();
-            if (value == null || value.isEmpty()) {
-                return out;
+        private static int findParameter(Class<?>[] parameterTypes, Class<?> type) {
+            for (int i = 0; i < parameterTypes.length; i++) {
+                if (parameterTypes[i].isAssignableFrom(type)) {
+                    return i;
+                }
             }
+            return -1;
+        }
 
-            String[] split = value.split("[^a-z0-9]+");
-            for (String token : split) {
-                if (!token.isEmpty()) {
-                    out.add(token);
+        private static int findIntegralParameter(Class<?>[] parameterTypes) {
+            for (int i = 0; i < parameterTypes.length; i++) {
+                Class<?> type = parameterTypes[i];
+                if (type == Integer.TYPE || type == Short.TYPE || type == Byte.TYPE || type == Long.TYPE
+                        || type == Integer.class || type == Short.class || type == Byte.class || type == Long.class) {
+                    return i;
                 }
             }
-            return out;
+            return -1;
         }
 
-        private static String stripSuffixes(String value) {
-            String current = value;
-            boolean changed;
-            do {
-                changed = false;
-                for (String suffix : STRIP_SUFFIXES) {
-                    if (current.endsWith(suffix) && current.length() > suffix.length() + 2) {
-                        current = current.substring(0, current.length() - suffix.length());
-                        changed = true;
-                        break;
-                    }
-                }
-            } while (changed);
+        private static MethodHandle compileVisitorFactory(
+            MethodHandles.Lookup lookup,
+            Class<?> visitorClass,
+            Method visitorMethod,
+            Class<?> poseClass,
+            Class<?> cubeClass
+        ) {
+            Class<?>[] parameters = visitorMethod.getParameterTypes();
+            if (visitorMethod.getReturnType() != Void.TYPE
+                    || parameters.length != 4
+                    || !parameters[0].isAssignableFrom(poseClass)
+                    || parameters[1] != String.class
+                    || parameters[2] != Integer.TYPE
+                    || !parameters[3].isAssignableFrom(cubeClass)) {
+                return null;
+            }
 
-            return current;
+            try {
+                MethodHandle target = lookup.findVirtual(
+                    CubeVisitSink.class,
+                    "visit",
+                    MethodType.methodType(Void.TYPE, Object.class, String.class, Integer.TYPE, Object.class)
+                );
+                MethodType visitType = MethodType.methodType(Void.TYPE, parameters);
+                CallSite site = LambdaMetafactory.metafactory(
+                    lookup,
+                    visitorMethod.getName(),
+                    MethodType.methodType(visitorClass, CubeVisitSink.class),
+                    visitType,
+                    target,
+                    visitType
+                );
+                return site.getTarget().asType(MethodType.methodType(Object.class, CubeVisitSink.class));
+            } catch (Throwable ignored) {
+                return null;
+            }
         }
 
-        private static String toForwardSlashes(String path) {
-            return path.replace('\\', '/');
+        void initializeGameData() throws Exception {
+            invokeStaticOptional(this.sharedConstantsTryDetectVersionMethod);
+            invokeStaticOptional(this.bootstrapMethod);
         }
 
-        private void extractIfNeeded(ResolvedTexture texture) throws IOException {
-            if (this.extracted.contains(texture.sourceEntry)) {
-                return;
+        @SuppressWarnings("unchecked")
+        Map<Object, Object> createRoots() throws Exception {
+            Object value = invokeWithDefaults(this.layerDefinitionsCreateRootsMethod, null);
+            if (!(value instanceof Map)) {
+                throw new IllegalStateException("LayerDefinitions#createRoots returned non-map value: " + value);
             }
+            return (Map<Object, Object>) value;
+        }
 
-            ZipEntry entry = this.zipFile.getEntry(texture.sourceEntry);
-            if (entry == null) {
-                return;
+        Object createEntityModelSet(Map<Object, Object> roots) throws Exception {
+            if (this.entityModelSetVanillaMethod != null) {
+                try {
+                    Object value = invokeWithDefaults(this.entityModelSetVanillaMethod, null);
+                    if (value != null) {
+                        return value;
+                    }
+                } catch (InvocationTargetException ignored) {
+                    if (this.entityModelSetMapCtor == null) {
+                        throw ignored;
+                    }
+                }
             }
 
-            Path parent = texture.extractedPath.getParent();
-            if (parent != null) {
-                Files.createDirectories(parent);
+            if (this.entityModelSetMapCtor != null) {
+                return this.entityModelSetMapCtor.newInstance(roots);
             }
 
-            try (InputStream in = this.zipFile.getInputStream(entry);
-                 OutputStream out = Files.newOutputStream(texture.extractedPath)) {
-                byte[] buffer = new byte[8192];
-                int read;
-                while ((read = in.read(buffer)) >= 0) {
-                    out.write(buffer, 0, read);
-                }
-            }
+            throw new IllegalStateException("No EntityModelSet creation strategy is available.");
+        }
 
-            this.extracted.add(texture.sourceEntry);
+        Object bakeLayer(Object entityModelSet, Object location) throws Exception {
+            return this.entityModelSetBakeLayerMethod.invoke(entityModelSet, location);
         }
 
-        @Override
-        public void close() throws IOException {
-            this.zipFile.close();
+        Object[] getCubePolygons(Object cube) throws Exception {
+            return asObjectArray(this.cubePolygonsGetter.apply(cube), "cube polygons");
         }
-    }
 
-    private static final class RuntimeOrientationResolver {
-        private final Map<String, Boolean> applyByLocationKey;
+        Object[] getPolygonVertices(Object polygon) throws Exception {
+            return asObjectArray(this.polygonVerticesGetter.apply(polygon), "polygon vertices");
+        }
 
-        private RuntimeOrientationResolver(Map<String, Boolean> applyByLocationKey) {
-            this.applyByLocationKey = applyByLocationKey;
+        Object getPolygonNormal(Object polygon) throws Exception {
+            return this.polygonNormalGetter.apply(polygon);
         }
 
-        static RuntimeOrientationResolver create(ReflectionContext ctx, Path clientJarPath) throws Exception {
-            Map<String, Boolean> applyByLocationKey = new HashMap<String, Boolean>();
-            if (clientJarPath == null || !Files.exists(clientJarPath)) {
-                return new RuntimeOrientationResolver(applyByLocationKey);
+        Object transformNormal(Object pose, Object normal) throws Exception {
+            if (this.poseTransformNormalMethod == null) {
+                return normal;
             }
 
-            Map<String, String> fieldNameByLocationKey = discoverStaticLocations(ctx);
-            Map<String, String> factoryNameByLocationKey = discoverFactoryLocations(ctx);
-            UsageIndex usageIndex = scanJarUsage(clientJarPath);
-
-            Set<String> keys = new LinkedHashSet<String>();
-            keys.addAll(fieldNameByLocationKey.keySet());
-            keys.addAll(factoryNameByLocationKey.keySet());
+            int params = this.poseTransformNormalMethod.getParameterCount();
+            if (this.poseTransformNormalHandle != null) {
+                try {
+                    if (params == 2) {
+                        Object temp = (Object) this.vector3fFactory.invokeExact();
+                        Object out = (Object) this.poseTransformNormalHandle.invokeExact(pose, normal, temp);
+                        return out != null ? out : temp;
+                    }
+                    Object out = (Object) this.poseTransformNormalHandle.invokeExact(pose, normal);
+                    return out != null ? out : normal;
+                } catch (Throwable t) {
+                    throw asException(t);
+                }
+            }
 
-            for (String locationKey : keys) {
-                Usage usage = null;
+            if (params == 2) {
+                Object temp = this.vector3fCtor.newInstance();
+                Object out = this.poseTransformNormalMethod.invoke(pose, normal, temp);
+                return out != null ? out : temp;
+            }
+            if (params == 1) {
+                Object out = this.poseTransformNormalMethod.invoke(pose, normal);
+                return out != null ? out : normal;
+            }
 
-                String fieldName = fieldNameByLocationKey.get(locationKey);
-                if (fieldName != null) {
-                    usage = usageIndex.fieldUsage.get(fieldName);
-                }
+            Object out = invokeWithDefaults(this.poseTransformNormalMethod, pose);
+            return out != null ? out : normal;
+        }
 
-                if (usage == null) {
-                    String factoryName = factoryNameByLocationKey.get(locationKey);
-                    if (factoryName != null) {
-                        usage = usageIndex.factoryUsage.get(factoryName);
+        Object transformPosition(Object matrix, float x, float y, float z) throws Exception {
+            int params = this.matrixTransformPositionMethod.getParameterCount();
+            if (this.matrixTransformPositionHandle != null) {
+                try {
+                    if (params == 4) {
+                        Object temp = (Object) this.vector3fFactory.invokeExact();
+                        Object out = (Object) this.matrixTransformPositionHandle.invokeExact(matrix, x, y, z, temp);
+                        return out != null ? out : temp;
                     }
+                    return (Object) this.matrixTransformPositionHandle.invokeExact(matrix, x, y, z);
+                } catch (Throwable t) {
+                    throw asException(t);
                 }
+            }
 
-                if (usage != null) {
-                    applyByLocationKey.put(locationKey, Boolean.valueOf(usage.shouldApply()));
-                }
+            if (params == 4) {
+                Object temp = this.vector3fCtor.newInstance();
+                Object out = this.matrixTransformPositionMethod.invoke(
+                    matrix,
+                    Float.valueOf(x),
+                    Float.valueOf(y),
+                    Float.valueOf(z),
+                    temp
+                );
+                return out != null ? out : temp;
+            }
+            if (params == 3) {
+                return this.matrixTransformPositionMethod.invoke(
+                    matrix,
+                    Float.valueOf(x),
+                    Float.valueOf(y),
+                    Float.valueOf(z)
+                );
             }
+            return invokeWithDefaults(this.matrixTransformPositionMethod, matrix);
+        }
 
-            return new RuntimeOrientationResolver(applyByLocationKey);
+        float getVertexWorldX(Object vertex) {
+            return this.vertexWorldXGetter.applyAsFloat(vertex);
         }
 
-        boolean shouldApply(Object location) {
-            Boolean value = this.applyByLocationKey.get(String.valueOf(location));
-            return value == null ? true : value.booleanValue();
+        float getVertexWorldY(Object vertex) {
+            return this.vertexWorldYGetter.applyAsFloat(vertex);
         }
 
-        private static Map<String, String> discoverStaticLocations(ReflectionContext ctx) throws Exception {
-            Map<String, String> out = new HashMap<String, String>();
-            for (Field field : ctx.modelLayersClass.getDeclaredFields()) {
-                if (!Modifier.isStatic(field.getModifiers())) {
-                    continue;
-                }
-                if (!ctx.modelLayerLocationClass.equals(field.getType())) {
-                    continue;
-                }
+        float getVertexWorldZ(Object vertex) {
+            return this.vertexWorldZGetter.applyAsFloat(vertex);
+        }
 
-                ReflectionContext.makeAccessible(field);
-                Object value = field.get(null);
-                if (value != null) {
-                    out.put(String.valueOf(value), field.getName());
-                }
-            }
-            return out;
+        float getVertexU(Object vertex) {
+            return this.vertexUGetter.applyAsFloat(vertex);
         }
 
-        private static Map<String, String> discoverFactoryLocations(ReflectionContext ctx) throws Exception {
-            Map<String, String> out = new HashMap<String, String>();
-            for (Method method : ctx.modelLayersClass.getDeclaredMethods()) {
-                if (!Modifier.isStatic(method.getModifiers())) {
-                    continue;
-                }
-                if (!ctx.modelLayerLocationClass.equals(method.getReturnType())) {
-                    continue;
-                }
+        float getVertexV(Object vertex) {
+            return this.vertexVGetter.applyAsFloat(vertex);
+        }
 
-                List<Object[]> argumentSets = enumerateArguments(method.getParameterTypes());
-                if (argumentSets == null) {
-                    continue;
+        float getVectorX(Object vector) {
+            return this.vector3fXGetter.applyAsFloat(vector);
+        }
+
+        float getVectorY(Object vector) {
+            return this.vector3fYGetter.applyAsFloat(vector);
+        }
+
+        float getVectorZ(Object vector) {
+            return this.vector3fZGetter.applyAsFloat(vector);
+        }
+
+        Object getLocationModel(Object location) throws Exception {
+            return readObject(location, this.modelLayerLocationModelMethod, this.modelLayerLocationModelField, "location model", "model", "id", "getModel");
+        }
+
+        Object getLocationLayer(Object location) throws Exception {
+            return readObject(location, this.modelLayerLocationLayerMethod, this.modelLayerLocationLayerField, "location layer", "layer", "getLayer");
+        }
+
+        @SuppressWarnings("unchecked")
+        private static ToFloatFunction<Object> compileFloatGetter(
+            MethodHandles.Lookup lookup,
+            final Method method,
+            final Field field,
+            final String label,
+            final String... dynamicNames
+        ) {
+            if (method != null) {
+                try {
+                    MethodHandle handle = lookup.unreflect(method);
+                    if (!Modifier.isStatic(method.getModifiers()) && handle.type().returnType() == Float.TYPE) {
+                        CallSite site = LambdaMetafactory.metafactory(
+                            lookup,
+                            "applyAsFloat",
+                            MethodType.methodType(ToFloatFunction.class),
+                            MethodType.methodType(Float.TYPE, Object.class),
+                            handle,
+                            handle.type()
+                        );
+                        return (ToFloatFunction<Object>) site.getTarget().invoke();
+                    }
+                    return floatHandleGetter(MethodHandles.explicitCastArguments(handle, MethodType.methodType(Float.TYPE, Object.class)));
+                } catch (Throwable ignored) {
                 }
+            } else if (field != null && !Modifier.isStatic(field.getModifiers())) {
+                try {
+                    MethodHandle handle = lookup.unreflectGetter(field);
+                    return floatHandleGetter(MethodHandles.explicitCastArguments(handle, MethodType.methodType(Float.TYPE, Object.class)));
+                } catch (Throwable ignored) {
+                }
+            }
 
-                ReflectionContext.makeAccessible(method);
-                for (Object[] arguments : argumentSets) {
-                    Object value;
+            return new ToFloatFunction<Object>() {
+                @Override
+                public float applyAsFloat(Object target) {
                     try {
-                        value = method.invoke(null, arguments);
-                    } catch (Throwable ignored) {
-                        continue;
-                    }
-                    if (value != null) {
-                        out.put(String.valueOf(value), method.getName());
+                        return readFloat(target, method, field, label, dynamicNames);
+                    } catch (Exception e) {
+                        throw new IllegalStateException("Failed to read " + label + ".", e);
                     }
                 }
-            }
-            return out;
+            };
         }
 
-        private static List<Object[]> enumerateArguments(Class<?>[] parameterTypes) {
-            List<Object[]> out = new ArrayList<Object[]>();
-            out.add(new Object[parameterTypes.length]);
-
-            for (int i = 0; i < parameterTypes.length; i++) {
-                Object[] values = enumerateParameterValues(parameterTypes[i]);
-                if (values == null) {
-                    return null;
-                }
-
-                List<Object[]> next = new ArrayList<Object[]>(out.size() * Math.max(values.length, 1));
-                for (Object[] existing : out) {
-                    for (Object value : values) {
-                        Object[] copy = new Object[parameterTypes.length];
-                        System.arraycopy(existing, 0, copy, 0, existing.length);
-                        copy[i] = value;
-                        next.add(copy);
+        private static ToFloatFunction<Object> floatHandleGetter(final MethodHandle handle) {
+            return new ToFloatFunction<Object>() {
+                @Override
+                public float applyAsFloat(Object target) {
+                    try {
+                        return (float) handle.invokeExact(target);
+                    } catch (RuntimeException | Error e) {
+                        throw e;
+                    } catch (Throwable t) {
+                        throw new IllegalStateException(t);
                     }
                 }
-                out = next;
-            }
-
-            return out;
+            };
         }
 
-        private static Object[] enumerateParameterValues(Class<?> type) {
-            if (type.isEnum()) {
-                Object[] constants = type.getEnumConstants();
-                return constants != null && constants.length > 0 ? constants : null;
-            }
-            if (type == Boolean.TYPE || type == Boolean.class) {
-                return new Object[] { Boolean.FALSE, Boolean.TRUE };
-            }
+        @SuppressWarnings("unchecked")
+        private static Function<Object, Object> compileObjectGetter(MethodHandles.Lookup lookup, final Method method, final Field field) {
+            MethodHandle handle = null;
             try {
-                Method valuesMethod = type.getMethod("values");
-                if (Modifier.isStatic(valuesMethod.getModifiers()) && valuesMethod.getParameterCount() == 0) {
-                    Object values = valuesMethod.invoke(null);
-                    if (values instanceof Object[] && ((Object[]) values).length > 0) {
-                        return (Object[]) values;
-                    }
-                    if (values instanceof Stream) {
-                        try (Stream<?> stream = (Stream<?>) values) {
-                            List<?> collected = stream.collect(Collectors.toList());
-                            if (!collected.isEmpty()) {
-                                return collected.toArray();
-                            }
-                        }
+                if (method != null && !Modifier.isStatic(method.getModifiers())) {
+                    handle = lookup.unreflect(method);
+                    if (!handle.type().returnType().isPrimitive()) {
+                        CallSite site = LambdaMetafactory.metafactory(
+                            lookup,
+                            "apply",
+                            MethodType.methodType(Function.class),
+                            MethodType.methodType(Object.class, Object.class),
+                            handle,
+                            handle.type()
+                        );
+                        return (Function<Object, Object>) site.getTarget().invoke();
                     }
+                } else if (method == null && field != null && !Modifier.isStatic(field.getModifiers())) {
+                    handle = lookup.unreflectGetter(field);
                 }
             } catch (Throwable ignored) {
             }
-            return null;
-        }
-
-        private static UsageIndex scanJarUsage(Path clientJarPath) throws IOException {
-            UsageIndex index = new UsageIndex();
-            try (ZipFile zipFile = new ZipFile(clientJarPath.toFile())) {
-                Enumeration<? extends ZipEntry> entries = zipFile.entries();
-                while (entries.hasMoreElements()) {
-                    ZipEntry entry = entries.nextElement();
-                    if (entry.isDirectory()) {
-                        continue;
-                    }
 
-                    String entryName = entry.getName();
-                    RendererCategory category = RendererCategory.forClassEntry(entryName);
-                    if (category == RendererCategory.IGNORE || !entryName.endsWith(".class")) {
-                        continue;
+            if (handle != null) {
+                final MethodHandle adapted = handle.asType(MethodType.methodType(Object.class, Object.class));
+                return new Function<Object, Object>() {
+                    @Override
+                    public Object apply(Object target) {
+                        try {
+                            return (Object) adapted.invokeExact(target);
+                        } catch (RuntimeException | Error e) {
+                            throw e;
+                        } catch (Throwable t) {
+                            throw new IllegalStateException(t);
+                        }
                     }
+                };
+            }
 
-                    InputStream in = zipFile.getInputStream(entry);
+            return new Function<Object, Object>() {
+                @Override
+                public Object apply(Object target) {
                     try {
-                        scanClassReferences(in, category, index);
-                    } finally {
-                        in.close();
+                        return method != null ? method.invoke(target) : field.get(target);
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
                     }
                 }
-            }
-            return index;
+            };
         }
 
-        private static void scanClassReferences(InputStream input, RendererCategory category, UsageIndex index) throws IOException {
-            DataInputStream in = new DataInputStream(input);
-            if (in.readInt() != 0xCAFEBABE) {
-                return;
+        private static MethodHandle adaptHandle(MethodHandles.Lookup lookup, Constructor<?> constructor, MethodType type) {
+            try {
+                return lookup.unreflectConstructor(constructor).asType(type);
+            } catch (Throwable ignored) {
+                return null;
             }
+        }
 
-            in.readUnsignedShort();
-            in.readUnsignedShort();
-
-            int cpCount = in.readUnsignedShort();
-            int[] tags = new int[cpCount];
-            String[] utf8 = new String[cpCount];
-            int[] classNameIndex = new int[cpCount];
-            int[] memberClassIndex = new int[cpCount];
-            int[] memberNameAndTypeIndex = new int[cpCount];
-            int[] nameAndTypeNameIndex = new int[cpCount];
-
-            for (int i = 1; i < cpCount; i++) {
-                int tag = in.readUnsignedByte();
-                tags[i] = tag;
-                switch (tag) {
-                    case 1:
-                        utf8[i] = in.readUTF();
-                        break;
-                    case 3:
-                    case 4:
-                        in.readInt();
-                        break;
-                    case 5:
-                    case 6:
-                        in.readLong();
-                        i++;
-                        break;
-                    case 7:
-                    case 8:
-                    case 16:
-                    case 19:
-                    case 20:
-                        classNameIndex[i] = in.readUnsignedShort();
-                        break;
-                    case 9:
-                    case 10:
-                    case 11:
-                        memberClassIndex[i] = in.readUnsignedShort();
-                        memberNameAndTypeIndex[i] = in.readUnsignedShort();
-                        break;
-                    case 12:
-                        nameAndTypeNameIndex[i] = in.readUnsignedShort();
-                        in.readUnsignedShort();
-                        break;
-                    case 15:
-                        in.readUnsignedByte();
-                        in.readUnsignedShort();
-                        break;
-                    case 17:
-                    case 18:
-                        in.readUnsignedShort();
-                        in.readUnsignedShort();
-                        break;
-                    default:
-                        throw new IOException("Unsupported class file constant tag: " + tag);
-                }
+        private static MethodHandle adaptTransformNormal(MethodHandles.Lookup lookup, Method method) {
+            if (method == null || Modifier.isStatic(method.getModifiers())) {
+                return null;
             }
-
-            for (int i = 1; i < cpCount; i++) {
-                int tag = tags[i];
-                if (tag != 9 && tag != 10) {
-                    continue;
-                }
-
-                String owner = resolveClassName(utf8, classNameIndex, memberClassIndex[i]);
-                String memberName = resolveUtf8(utf8, nameAndTypeNameIndex[memberNameAndTypeIndex[i]]);
-                if (owner == null || memberName == null) {
-                    continue;
-                }
-                if (!"net/minecraft/client/model/geom/ModelLayers".equals(owner)) {
-                    continue;
+            try {
+                MethodHandle handle = lookup.unreflect(method);
+                if (method.getParameterCount() == 2) {
+                    return handle.asType(MethodType.methodType(Object.class, Object.class, Object.class, Object.class));
                 }
-
-                if (tag == 9) {
-                    index.recordField(memberName, category);
-                } else {
-                    index.recordFactory(memberName, category);
+                if (method.getParameterCount() == 1) {
+                    return handle.asType(MethodType.methodType(Object.class, Object.class, Object.class));
                 }
+            } catch (Throwable ignored) {
             }
+            return null;
         }
 
-        private static String resolveClassName(String[] utf8, int[] classNameIndex, int entryIndex) {
-            if (entryIndex <= 0 || entryIndex >= classNameIndex.length) {
-                return null;
-            }
-            int nameIndex = classNameIndex[entryIndex];
-            return resolveUtf8(utf8, nameIndex);
-        }
-
-        private static String resolveUtf8(String[] utf8, int index) {
-            if (index <= 0 || index >= utf8.length) {
+        private static MethodHandle adaptTransformPosition(MethodHandles.Lookup lookup, Method method) {
+            if (Modifier.isStatic(method.getModifiers())) {
                 return null;
             }
-            return utf8[index];
-        }
-
-        private static final class UsageIndex {
-            final Map<String, Usage> fieldUsage = new HashMap<String, Usage>();
-            final Map<String, Usage> factoryUsage = new HashMap<String, Usage>();
-
-            void recordField(String name, RendererCategory category) {
-                record(this.fieldUsage, name, category);
-            }
-
-            void recordFactory(String name, RendererCategory category) {
-                record(this.factoryUsage, name, category);
-            }
-
-            private static void record(Map<String, Usage> map, String name, RendererCategory category) {
-                Usage usage = map.get(name);
-                if (usage == null) {
-                    usage = new Usage();
-                    map.put(name, usage);
+            try {
+                MethodHandle handle = lookup.unreflect(method);
+                if (method.getParameterCount() == 4) {
+                    return handle.asType(MethodType.methodType(Object.class, Object.class, Float.TYPE, Float.TYPE, Float.TYPE, Object.class));
                 }
-                usage.record(category);
-            }
-        }
-
-        private static final class Usage {
-            boolean entity;
-            boolean nonEntity;
-
-            void record(RendererCategory category) {
-                if (category == RendererCategory.ENTITY) {
-                    this.entity = true;
-                } else if (category == RendererCategory.NON_ENTITY) {
-                    this.nonEntity = true;
+                if (method.getParameterCount() == 3) {
+                    return handle.asType(MethodType.methodType(Object.class, Object.class, Float.TYPE, Float.TYPE, Float.TYPE));
                 }
+            } catch (Throwable ignored) {
             }
-
-            boolean shouldApply() {
-                return this.entity || !this.nonEntity;
-            }
+            return null;
         }
 
-        private static enum RendererCategory {
-            ENTITY,
-            NON_ENTITY,
-            IGNORE;
-
-            static RendererCategory forClassEntry(String entryName) {
-                if (!entryName.startsWith("net/minecraft/client/renderer/")) {
-                    return IGNORE;
-                }
-                if (entryName.startsWith("net/minecraft/client/renderer/entity/")) {
-                    return ENTITY;
-                }
-                if (entryName.startsWith("net/minecraft/client/renderer/blockentity/")
-                        || entryName.startsWith("net/minecraft/client/renderer/special/")) {
-                    return NON_ENTITY;
-                }
-                return IGNORE;
+        private static Exception asException(Throwable throwable) {
+            if (throwable instanceof Exception) {
+                return (Exception) throwable;
+            }
+            if (throwable instanceof Error) {
+                throw (Error) throwable;
             }
+            return new IllegalStateException(throwable);
         }
-    }
-
-    private static final class ReflectionContext {
-        final Class<?> modelLayerLocationClass;
-        final Class<?> modelLayersClass;
-        final Class<?> poseClass;
-        final Class<?> cubeClass;
-        final Class<?> modelPartVisitorClass;
-
-        final Constructor<?> poseStackCtor;
-        final Constructor<?> vector3fCtor;
-        final Constructor<?> entityModelSetMapCtor;
-
-        final Method entityModelSetVanillaMethod;
-        final Method entityModelSetBakeLayerMethod;
-        final Method layerDefinitionsCreateRootsMethod;
-        final Method sharedConstantsTryDetectVersionMethod;
-        final Method bootstrapMethod;
-
-        final Method modelPartVisitMethod;
-        final Method posePoseMethod;
-        final Method poseTransformNormalMethod;
-        final Method matrixTransformPositionMethod;
-
-        final Method polygonVerticesMethod;
-        final Field polygonVerticesField;
-        final Method polygonNormalMethod;
-        final Field polygonNormalField;
-
-        final Method vertexWorldXMethod;
-        final Field vertexWorldXField;
-        final Method vertexWorldYMethod;
-        final Field vertexWorldYField;
-        final Method vertexWorldZMethod;
-        final Field vertexWorldZField;
-        final Method vertexUMethod;
-        final Field vertexUField;
-        final Method vertexVMethod;
-        final Field vertexVField;
-
-        final Method vector3fXMethod;
-        final Field vector3fXField;
-        final Method vector3fYMethod;
-        final Field vector3fYField;
-        final Method vector3fZMethod;
-        final Field vector3fZField;
 
-        final Method modelLayerLocationModelMethod;
-        final Field modelLayerLocationModelField;
-        final Method modelLayerLocationLayerMethod;
-        final Field modelLayerLocationLayerField;
-
-        final Method cubePolygonsMethod;
-        final Field cubePolygonsField;
-
-        ReflectionContext() throws Exception {
-            Class<?> modelLayerLocationClass = Class.forName("net.minecraft.client.model.geom.ModelLayerLocation");
-            Class<?> modelLayersClass = Class.forName("net.minecraft.client.model.geom.ModelLayers");
-            Class<?> entityModelSetClass = Class.forName("net.minecraft.client.model.geom.EntityModelSet");
-            Class<?> layerDefinitionsClass = Class.forName("net.minecraft.client.model.geom.LayerDefinitions");
-            Class<?> sharedConstantsClass = Class.forName("net.minecraft.SharedConstants");
-            Class<?> bootstrapClass = Class.forName("net.minecraft.server.Bootstrap");
-            Class<?> modelPartClass = Class.forName("net.minecraft.client.model.geom.ModelPart");
-            Class<?> poseStackClass = Class.forName("com.mojang.blaze3d.vertex.PoseStack");
-            Class<?> poseClass = Class.forName("com.mojang.blaze3d.vertex.PoseStack$Pose");
-            Class<?> vector3fcClass = Class.forName("org.joml.Vector3fc");
-            Class<?> vector3fClass = Class.forName("org.joml.Vector3f");
-            Class<?> matrix4fClass = Class.forName("org.joml.Matrix4f");
-            Class<?> cubeClass = Class.forName("net.minecraft.client.model.geom.ModelPart$Cube");
-            Class<?> polygonClass = Class.forName("net.minecraft.client.model.geom.ModelPart$Polygon");
-            Class<?> vertexClass = Class.forName("net.minecraft.client.model.geom.ModelPart$Vertex");
-
-            this.modelLayerLocationClass = modelLayerLocationClass;
-            this.modelLayersClass = modelLayersClass;
-            this.poseClass = poseClass;
-            this.cubeClass = cubeClass;
-            this.modelPartVisitorClass = Class.forName("net.minecraft.client.model.geom.ModelPart$Visitor");
+        private static Object[] asObjectArray(Object value, String label) {
+            if (value == null) {
+                return new Object[0];
+            }
+            if (value instanceof Object[]) {
+                return (Object[]) value;
+            }
+            if (value instanceof List) {
+                return ((List<?>) value).toArray();
+            }
+            throw new IllegalStateException("Unsupported " + label + " container type: " + value.getClass().getName());
+        }
 
-            this.poseStackCtor = requireNoArgConstructor(poseStackClass);
-            this.vector3fCtor = requireNoArgConstructor(vector3fClass);
-            this.entityModelSetMapCtor = findSingleArgConstructor(entityModelSetClass, Map.class);
+        private static void invokeStaticOptional(Method method) throws Exception {
+            if (method != null) {
+                invokeWithDefaults(method, null);
+            }
+        }
 
-            Method vanilla = findNoArgMethod(entityModelSetClass, true, "vanilla", "createVanilla");
-            if (vanilla == null) {
-                vanilla = findStaticFactoryMethod(entityModelSetClass);
+        private static Object invokeWithDefaults(Method method, Object target) throws Exception {
+            Class<?>[] parameterTypes = method.getParameterTypes();
+            Object[] arguments = new Object[parameterTypes.length];
+            for (int i = 0; i < parameterTypes.length; i++) {
+                arguments[i] = defaultReturnValue(parameterTypes[i]);
             }
-            this.entityModelSetVanillaMethod = vanilla;
+            return method.invoke(target, arguments);
+        }
 
-            this.entityModelSetBakeLayerMethod = requireMethodWithSingleParam(
-                entityModelSetClass,
-                false,
-                modelLayerLocationClass,
-                modelPartClass,
-                "bakeLayer"
-            );
+        private static float readFloat(Object target, Method method, Field field, String label, String... dynamicNames) throws Exception {
+            Object value;
+            if (method != null) {
+                value = method.invoke(target);
+                return asFloat(value, label);
+            }
+            if (field != null) {
+                value = field.get(target);
+                return asFloat(value, label);
+            }
 
-            Method createRoots = findMapFactoryMethod(
-                layerDefinitionsClass,
-                true,
-                "createRoots",
-                "roots",
-                "buildRoots",
-                "create"
-            );
-            if (createRoots == null) {
-                throw new NoSuchMethodException("LayerDefinitions#createRoots compatible method was not found.");
+            Method dynamicMethod = findFloatGetter(target.getClass(), dynamicNames);
+            if (dynamicMethod != null) {
+                return asFloat(dynamicMethod.invoke(target), label);
+            }
+            Field dynamicField = findFloatField(target.getClass(), dynamicNames);
+            if (dynamicField != null) {
+                return asFloat(dynamicField.get(target), label);
             }
-            this.layerDefinitionsCreateRootsMethod = createRoots;
 
-            this.sharedConstantsTryDetectVersionMethod = findNoArgMethod(sharedConstantsClass, true, "tryDetectVersion", "detectVersion");
-            Method bootstrap = findNoArgMethod(bootstrapClass, true, "bootStrap", "bootstrap");
-            if (bootstrap == null) {
-                bootstrap = findMethodWithArity(bootstrapClass, true, 1, "bootStrap", "bootstrap");
+            throw new NoSuchMethodException("No numeric accessor found for " + label + ".");
+        }
+
+        private static Object readObject(Object target, Method method, Field field, String label, String... dynamicNames) throws Exception {
+            if (method != null) {
+                return method.invoke(target);
+            }
+            if (field != null) {
+                return field.get(target);
             }
-            this.bootstrapMethod = bootstrap;
 
-            Method visit = findExactMethod(modelPartClass, "visit", poseStackClass, this.modelPartVisitorClass);
-            if (visit == null) {
-                visit = findMethodWithArity(modelPartClass, false, 2, "visit");
+            Method dynamicMethod = findNoArgMethod(target.getClass(), false, dynamicNames);
+            if (dynamicMethod != null) {
+                return dynamicMethod.invoke(target);
             }
-            if (visit == null) {
-                throw new NoSuchMethodException("ModelPart#visit compatible method was not found.");
+            Field dynamicField = findField(target.getClass(), dynamicNames);
+            if (dynamicField != null) {
+                return dynamicField.get(target);
             }
-            this.modelPartVisitMethod = visit;
 
-            this.posePoseMethod = requireNoArgMethod(poseClass, false, "pose", "positionMatrix");
+            throw new NoSuchMethodException("No accessor found for " + label + ".");
+        }
 
-            Method transformNormal = findExactMethod(poseClass, "transformNormal", vector3fcClass, vector3fClass);
-            if (transformNormal == null) {
-                transformNormal = findExactMethod(poseClass, "transformNormal", vector3fcClass);
+        private static float asFloat(Object value, String label) {
+            if (value instanceof Number) {
+                return ((Number) value).floatValue();
             }
-            if (transformNormal == null) {
-                transformNormal = findMethodWithArity(poseClass, false, 2, "transformNormal");
+            throw new IllegalStateException("Expected numeric value for " + label + " but got: " + value);
+        }
+
+        private static Constructor<?> requireNoArgConstructor(Class<?> owner) throws NoSuchMethodException {
+            try {
+                Constructor<?> constructor = owner.getConstructor();
+                makeAccessible(constructor);
+                return constructor;
+            } catch (NoSuchMethodException ignored) {
             }
-            if (transformNormal == null) {
-                transformNormal = findMethodWithArity(poseClass, false, 1, "transformNormal");
+            Constructor<?> constructor = owner.getDeclaredConstructor();
+            makeAccessible(constructor);
+            return constructor;
+        }
+
+        private static Constructor<?> findSingleArgConstructor(Class<?> owner, Class<?> parameterSuperType) {
+            for (Constructor<?> constructor : owner.getConstructors()) {
+                if (constructor.getParameterCount() != 1) {
+                    continue;
+                }
+                Class<?> argType = constructor.getParameterTypes()[0];
+                if (argType.isAssignableFrom(parameterSuperType) || parameterSuperType.isAssignableFrom(argType)) {
+                    makeAccessible(constructor);
+                    return constructor;
+                }
             }
-            this.poseTransformNormalMethod = transformNormal;
+            for (Constructor<?> constructor : owner.getDeclaredConstructors()) {
+                if (constructor.getParameterCount() != 1) {
+                    continue;
+                }
+                Class<?> argType = constructor.getParameterTypes()[0];
+                if (argType.isAssignableFrom(parameterSuperType) || parameterSuperType.isAssignableFrom(argType)) {
+                    makeAccessible(constructor);
+                    return constructor;
+                }
+            }
+            return null;
+        }
 
-            Method transformPosition = findExactMethod(
-                matrix4fClass,
-                "transformPosition",
-                Float.TYPE,
-                Float.TYPE,
-                Float.TYPE,
-                vector3fClass
-            );
-            if (transformPosition == null) {
-                transformPosition = findExactMethod(
-                    matrix4fClass,
-                    "transformPosition",
-                    Float.TYPE,
-                    Float.TYPE,
-                    Float.TYPE
-                );
+        private static Method requireNoArgMethod(Class<?> owner, boolean requireStatic, String... names) throws NoSuchMethodException {
+            Method method = findNoArgMethod(owner, requireStatic, names);
+            if (method == null) {
+                throw new NoSuchMethodException("No compatible no-arg method found on " + owner.getName());
             }
-            if (transformPosition == null) {
-                transformPosition = findMethodWithArity(matrix4fClass, false, 4, "transformPosition");
+            return method;
+        }
+
+        private static Method requireMethodWithSingleParam(
+            Class<?> owner,
+            boolean requireStatic,
+            Class<?> requiredParamType,
+            Class<?> requiredReturnType,
+            String... names
+        ) throws NoSuchMethodException {
+            Method method = findMethodWithSingleParam(owner, requireStatic, requiredParamType, requiredReturnType, names);
+            if (method == null) {
+                throw new NoSuchMethodException("No compatible single-arg method found on " + owner.getName());
             }
-            if (transformPosition == null) {
-                transformPosition = findMethodWithArity(matrix4fClass, false, 3, "transformPosition");
+            return method;
+        }
+
+        private static Method findExactMethod(Class<?> owner, String name, Class<?>... parameterTypes) {
+            try {
+                Method method = owner.getMethod(name, parameterTypes);
+                makeAccessible(method);
+                return method;
+            } catch (NoSuchMethodException ignored) {
             }
-            if (transformPosition == null) {
-                throw new NoSuchMethodException("Matrix4f#transformPosition compatible method was not found.");
+            try {
+                Method method = owner.getDeclaredMethod(name, parameterTypes);
+                makeAccessible(method);
+                return method;
+            } catch (NoSuchMethodException ignored) {
             }
-            this.matrixTransformPositionMethod = transformPosition;
+            return null;
+        }
 
-            this.polygonVerticesMethod = findNoArgMethod(polygonClass, false, "vertices", "getVertices");
-            this.polygonVerticesField = findField(polygonClass, "vertices", "vertexes");
+        private static Method findNoArgMethod(Class<?> owner, boolean requireStatic, String... names) {
+            Method method = findMethodWithArity(owner, requireStatic, 0, names);
+            return method;
+        }
 
-            this.polygonNormalMethod = findNoArgMethod(polygonClass, false, "normal", "getNormal");
-            this.polygonNormalField = findField(polygonClass, "normal");
+        private static Method findMethodWithSingleParam(
+            Class<?> owner,
+            boolean requireStatic,
+            Class<?> requiredParamType,
+            Class<?> requiredReturnType,
+            String... names
+        ) {
+            Method[] all = allMethods(owner);
+            for (String name : names) {
+                for (Method method : all) {
+                    if (!name.equals(method.getName())) {
+                        continue;
+                    }
+                    if (!isMethodCompatible(method, requireStatic, 1)) {
+                        continue;
+                    }
+                    Class<?> parameterType = method.getParameterTypes()[0];
+                    if (!parameterType.isAssignableFrom(requiredParamType) && !requiredParamType.isAssignableFrom(parameterType)) {
+                        continue;
+                    }
+                    if (requiredReturnType != null && !requiredReturnType.isAssignableFrom(method.getReturnType())) {
+                        continue;
+                    }
+                    makeAccessible(method);
+                    return method;
+                }
+            }
+            return null;
+        }
 
-            this.vertexWorldXMethod = findFloatGetter(vertexClass, "worldX", "x", "getX");
-            this.vertexWorldXField = findFloatField(vertexClass, "worldX", "x");
-            this.vertexWorldYMethod = findFloatGetter(vertexClass, "worldY", "y", "getY");
-            this.vertexWorldYField = findFloatField(vertexClass, "worldY", "y");
-            this.vertexWorldZMethod = findFloatGetter(vertexClass, "worldZ", "z", "getZ");
-            this.vertexWorldZField = findFloatField(vertexClass, "worldZ", "z");
-            this.vertexUMethod = findFloatGetter(vertexClass, "u", "getU");
-            this.vertexUField = findFloatField(vertexClass, "u");
-            this.vertexVMethod = findFloatGetter(vertexClass, "v", "getV");
-            this.vertexVField = findFloatField(vertexClass, "v");
+        private static Method findMethodWithArity(Class<?> owner, boolean requireStatic, int arity, String... names) {
+            Method[] all = allMethods(owner);
+            for (String name : names) {
+                for (Method method : all) {
+                    if (!name.equals(method.getName())) {
+                        continue;
+                    }
+                    if (!isMethodCompatible(method, requireStatic, arity)) {
+                        continue;
+                    }
+                    makeAccessible(method);
+                    return method;
+                }
+            }
+            return null;
+        }
 
-            this.vector3fXMethod = findFloatGetter(vector3fClass, "x", "getX");
-            this.vector3fXField = findFloatField(vector3fClass, "x");
-            this.vector3fYMethod = findFloatGetter(vector3fClass, "y", "getY");
-            this.vector3fYField = findFloatField(vector3fClass, "y");
-            this.vector3fZMethod = findFloatGetter(vector3fClass, "z", "getZ");
-            this.vector3fZField = findFloatField(vector3fClass, "z");
+        private static Method findStaticFactoryMethod(Class<?> owner) {
+            Method[] all = allMethods(owner);
+            for (Method method : all) {
+                if (!Modifier.isStatic(method.getModifiers())) {
+                    continue;
+                }
+                if (method.getParameterCount() != 0) {
+                    continue;
+                }
+                if (!owner.isAssignableFrom(method.getReturnType())) {
+                    continue;
+                }
+                makeAccessible(method);
+                return method;
+            }
+            return null;
+        }
 
-            this.modelLayerLocationModelMethod = findNoArgMethod(modelLayerLocationClass, false, "model", "id", "getModel");
-            this.modelLayerLocationModelField = findField(modelLayerLocationClass, "model", "id");
-            this.modelLayerLocationLayerMethod = findNoArgMethod(modelLayerLocationClass, false, "layer", "getLayer");
-            this.modelLayerLocationLayerField = findField(modelLayerLocationClass, "layer");
+        private static Method findMapFactoryMethod(Class<?> owner, boolean requireStatic, String... preferredNames) {
+            Method[] all = allMethods(owner);
+            for (String preferredName : preferredNames) {
+                Method bestNamed = null;
+                for (Method method : all) {
+                    if (!preferredName.equals(method.getName())) {
+                        continue;
+                    }
+                    if (!isMapFactoryCandidate(method, requireStatic)) {
+                        continue;
+                    }
+                    if (bestNamed == null || method.getParameterCount() < bestNamed.getParameterCount()) {
+                        bestNamed = method;
+                    }
+                }
+                if (bestNamed != null) {
+                    makeAccessible(bestNamed);
+                    return bestNamed;
+                }
+            }
 
-            this.cubePolygonsMethod = findNoArgMethod(cubeClass, false, "polygons", "getPolygons");
-            this.cubePolygonsField = findField(cubeClass, "polygons");
+            Method best = null;
+            int bestScore = Integer.MIN_VALUE;
+            for (Method method : all) {
+                if (!isMapFactoryCandidate(method, requireStatic)) {
+                    continue;
+                }
+                int score = scoreMapFactoryCandidate(method);
+                if (best == null || score > bestScore) {
+                    best = method;
+                    bestScore = score;
+                }
+            }
+            if (best != null) {
+                makeAccessible(best);
+            }
+            return best;
+        }
 
-            if (this.entityModelSetVanillaMethod == null && this.entityModelSetMapCtor == null) {
-                throw new NoSuchMethodException("No compatible EntityModelSet initializer found.");
+        private static boolean isMapFactoryCandidate(Method method, boolean requireStatic) {
+            if (requireStatic && !Modifier.isStatic(method.getModifiers())) {
+                return false;
             }
-            if (this.polygonVerticesMethod == null && this.polygonVerticesField == null) {
-                throw new NoSuchMethodException("ModelPart$Polygon vertices accessor was not found.");
+            return Map.class.isAssignableFrom(method.getReturnType());
+        }
+
+        private static int scoreMapFactoryCandidate(Method method) {
+            String name = method.getName().toLowerCase(Locale.ROOT);
+            int score = 0;
+            score -= method.getParameterCount() * 10;
+            if (name.contains("root")) {
+                score += 70;
             }
-            if (this.polygonNormalMethod == null && this.polygonNormalField == null) {
-                throw new NoSuchMethodException("ModelPart$Polygon normal accessor was not found.");
+            if (name.contains("layer")) {
+                score += 20;
             }
-            if (this.cubePolygonsMethod == null && this.cubePolygonsField == null) {
-                throw new NoSuchMethodException("ModelPart$Cube polygons accessor was not found.");
+            if (name.startsWith("create")) {
+                score += 15;
             }
+            return score;
         }
 
-        void initializeGameData() throws Exception {
-            invokeStaticOptional(this.sharedConstantsTryDetectVersionMethod);
-            invokeStaticOptional(this.bootstrapMethod);
+        private static Method findFloatGetter(Class<?> owner, String... names) {
+            Method[] all = allMethods(owner);
+            for (String name : names) {
+                for (Method method : all) {
+                    if (!name.equals(method.getName())) {
+                        continue;
+                    }
+                    if (method.getParameterCount() != 0) {
+                        continue;
+                    }
+                    if (!isNumericType(method.getReturnType())) {
+                        continue;
+                    }
+                    makeAccessible(method);
+                    return method;
+                }
+            }
+            return null;
         }
 
-        @SuppressWarnings("unchecked")
-        Map<Object, Object> createRoots() throws Exception {
-            Object value = invokeWithDefaults(this.layerDefinitionsCreateRootsMethod, null);
-            if (!(value instanceof Map)) {
-                throw new IllegalStateException("LayerDefinitions#createRoots returned non-map value: " + value);
+        private static Field findFloatField(Class<?> owner, String... names) {
+            Field field = findField(owner, names);
+            if (field == null) {
+                return null;
             }
-            return (Map<Object, Object>) value;
+            if (!isNumericType(field.getType())) {
+                return null;
+            }
+            return field;
         }
 
-        Object createEntityModelSet(Map<Object, Object> roots) throws Exception {
-            if (this.entityModelSetVanillaMethod != null) {
-                try {
-                    Object value = invokeWithDefaults(this.entityModelSetVanillaMethod, null);
-                    if (value != null) {
-                        return value;
-                    }
-                } catch (InvocationTargetException ignored) {
-                    if (this.entityModelSetMapCtor == null) {
-                        throw ignored;
+        private static Field findField(Class<?> owner, String... names) {
+            Field[] publicFields = owner.getFields();
+            for (String name : names) {
+                for (Field field : publicFields) {
+                    if (name.equals(field.getName())) {
+                        makeAccessible(field);
+                        return field;
                     }
                 }
             }
 
-            if (this.entityModelSetMapCtor != null) {
-                return this.entityModelSetMapCtor.newInstance(roots);
+            Field[] declaredFields = owner.getDeclaredFields();
+            for (String name : names) {
+                for (Field field : declaredFields) {
+                    if (name.equals(field.getName())) {
+                        makeAccessible(field);
+                        return field;
+                    }
+                }
             }
 
-            throw new IllegalStateException("No EntityModelSet creation strategy is available.");
+            return null;
         }
 
-        Object bakeLayer(Object entityModelSet, Object location) throws Exception {
-            return this.entityModelSetBakeLayerMethod.invoke(entityModelSet, location);
+        private static boolean isMethodCompatible(Method method, boolean requireStatic, int arity) {
+            if (method.getParameterCount() != arity) {
+                return false;
+            }
+            if (requireStatic && !Modifier.isStatic(method.getModifiers())) {
+                return false;
+            }
+            return true;
         }
 
-        Object[] getCubePolygons(Object cube) throws Exception {
-            Object raw = this.cubePolygonsMethod != null ? this.cubePolygonsMethod.invoke(cube) : this.cubePolygonsField.get(cube);
-            return asObjectArray(raw, "cube polygons");
+        private static boolean isNumericType(Class<?> type) {
+            if (type.isPrimitive()) {
+                return type == Float.TYPE || type == Double.TYPE || type == Integer.TYPE || type == Long.TYPE
+                    || type == Short.TYPE || type == Byte.TYPE;
+            }
+            return Number.class.isAssignableFrom(type);
         }
 
-        Object[] getPolygonVertices(Object polygon) throws Exception {
-            Object raw = this.polygonVerticesMethod != null ? this.polygonVerticesMethod.invoke(polygon) : this.polygonVerticesField.get(polygon);
-            return asObjectArray(raw, "polygon vertices");
+        private static Method[] allMethods(Class<?> owner) {
+            Method[] publicMethods = owner.getMethods();
+            Method[] declaredMethods = owner.getDeclaredMethods();
+            Method[] out = new Method[publicMethods.length + declaredMethods.length];
+            System.arraycopy(publicMethods, 0, out, 0, publicMethods.length);
+            System.arraycopy(declaredMethods, 0, out, publicMethods.length, declaredMethods.length);
+            return out;
         }
 
-        Object getPolygonNormal(Object polygon) throws Exception {
-            if (this.polygonNormalMethod != null) {
-                return this.polygonNormalMethod.invoke(polygon);
+        private static void makeAccessible(java.lang.reflect.AccessibleObject object) {
+            try {
+                object.setAccessible(true);
+            } catch (Throwable ignored) {
             }
-            return this.polygonNormalField.get(polygon);
         }
+    }
 
-        Object transformNormal(Object pose, Object normal) throws Exception {
-            if (this.poseTransformNormalMethod == null) {
-                return normal;
-            }
+    private interface ToFloatFunction<T> {
+        float applyAsFloat(T value);
+    }
 
-            int params = this.poseTransformNormalMethod.getParameterCount();
-            if (params == 2) {
-                Object temp = this.vector3fCtor.newInstance();
-                Object out = this.poseTransformNormalMethod.invoke(pose, normal, temp);
-                return out != null ? out : temp;
-            }
-            if (params == 1) {
-                Object out = this.poseTransformNormalMethod.invoke(pose, normal);
-                return out != null ? out : normal;
+    private static final class MeshBuffer {
+        private float[] positions = new float[3 * 64];
+        private float[] texCoords = new float[2 * 64];
+        private float[] normals = new float[3 * 16];
+        private int[] faceStarts = new int[17];
+        private int[] faceNormals = new int[16];
+        private boolean[] faceReversed = new boolean[16];
+        private int[] cornerVertices = new int[64];
+        private int[] cornerTexCoords = new int[64];
+        private String[] partNames = new String[4];
+        private int[] partFirstFaces = new int[4];
+
+        private int vertexCount = 0;
+        private int uvCount = 0;
+        private int normalCount = 0;
+        private int faceCount = 0;
+        private int cornerCount = 0;
+        private int partCount = 0;
+
+        private String currentPart = null;
+        private float minY = Float.POSITIVE_INFINITY;
+
+        void beginPart(String partName) {
+            if (partName.equals(this.currentPart)) {
+                return;
             }
 
-            Object out = invokeWithDefaults(this.poseTransformNormalMethod, pose);
-            return out != null ? out : normal;
+            this.currentPart = partName;
+            if (this.partCount == this.partNames.length) {
+                this.partNames = Arrays.copyOf(this.partNames, this.partCount * 2);
+                this.partFirstFaces = Arrays.copyOf(this.partFirstFaces, this.partCount * 2);
+            }
+            this.partNames[this.partCount] = partName;
+            this.partFirstFaces[this.partCount] = this.faceCount;
+            this.partCount++;
+        }
+
+        int addVertex(float x, float y, float z) {
+            this.positions = ensureCapacity(this.positions, (this.vertexCount + 1) * 3);
+            int offset = this.vertexCount * 3;
+            this.positions[offset] = finiteOrDefault(x, 0.0f);
+            this.positions[offset + 1] = finiteOrDefault(y, 0.0f);
+            this.positions[offset + 2] = finiteOrDefault(z, 0.0f);
+            this.minY = Math.min(this.minY, this.positions[offset + 1]);
+            this.vertexCount++;
+            return this.vertexCount;
         }
 
-        Object transformPosition(Object matrix, float x, float y, float z) throws Exception {
-            int params = this.matrixTransformPositionMethod.getParameterCount();
-            if (params == 4) {
-                Object temp = this.vector3fCtor.newInstance();
-                Object out = this.matrixTransformPositionMethod.invoke(
-                    matrix,
-                    Float.valueOf(x),
-                    Float.valueOf(y),
-                    Float.valueOf(z),
-                    temp
-                );
-                return out != null ? out : temp;
+        int addTexCoord(float u, float v) {
+            this.texCoords = ensureCapacity(this.texCoords, (this.uvCount + 1) * 2);
+            int offset = this.uvCount * 2;
+            this.texCoords[offset] = finiteOrDefault(u, 0.0f);
+            this.texCoords[offset + 1] = finiteOrDefault(v, 0.0f);
+            this.uvCount++;
+            return this.uvCount;
+        }
+
+        int addNormal(float x, float y, float z) {
+            this.normals = ensureCapacity(this.normals, (this.normalCount + 1) * 3);
+            int offset = this.normalCount * 3;
+            this.normals[offset] = finiteOrDefault(x, 0.0f);
+            this.normals[offset + 1] = finiteOrDefault(y, 0.0f);
+            this.normals[offset + 2] = finiteOrDefault(z, 0.0f);
+            this.normalCount++;
+            return this.normalCount;
+        }
+
+        void addFace(int[] vertices, int[] uvs, int count, int normalIndex, boolean reverseWinding) {
+            if (vertices.length < count || uvs.length < count) {
+                throw new IllegalArgumentException("Vertex and UV index count mismatch.");
             }
-            if (params == 3) {
-                return this.matrixTransformPositionMethod.invoke(
-                    matrix,
-                    Float.valueOf(x),
-                    Float.valueOf(y),
-                    Float.valueOf(z)
-                );
+
+            if (this.faceCount + 1 >= this.faceStarts.length) {
+                int capacity = this.faceStarts.length * 2;
+                this.faceStarts = Arrays.copyOf(this.faceStarts, capacity);
+                this.faceNormals = Arrays.copyOf(this.faceNormals, capacity);
+                this.faceReversed = Arrays.copyOf(this.faceReversed, capacity);
             }
-            return invokeWithDefaults(this.matrixTransformPositionMethod, matrix);
+            this.cornerVertices = ensureCapacity(this.cornerVertices, this.cornerCount + count);
+            this.cornerTexCoords = ensureCapacity(this.cornerTexCoords, this.cornerCount + count);
+
+            System.arraycopy(vertices, 0, this.cornerVertices, this.cornerCount, count);
+            System.arraycopy(uvs, 0, this.cornerTexCoords, this.cornerCount, count);
+            this.faceStarts[this.faceCount] = this.cornerCount;
+            this.faceNormals[this.faceCount] = normalIndex;
+            this.faceReversed[this.faceCount] = reverseWinding;
+            this.cornerCount += count;
+            this.faceCount++;
+            this.faceStarts[this.faceCount] = this.cornerCount;
         }
 
-        float getVertexWorldX(Object vertex) throws Exception {
-            return readFloat(vertex, this.vertexWorldXMethod, this.vertexWorldXField, "vertex worldX", "worldX", "x", "getX");
+        float gridLiftOffset() {
+            if (!Float.isFinite(this.minY) || this.minY >= -0.000001f) {
+                return 0.0f;
+            }
+            return -this.minY;
         }
 
-        float getVertexWorldY(Object vertex) throws Exception {
-            return readFloat(vertex, this.vertexWorldYMethod, this.vertexWorldYField, "vertex worldY", "worldY", "y", "getY");
+        void digest(MessageDigest digest) {
+            ByteBuffer buffer = ByteBuffer.allocate(8192);
+            putInt(digest, buffer, this.vertexCount);
+            putInt(digest, buffer, this.uvCount);
+            putInt(digest, buffer, this.normalCount);
+            putInt(digest, buffer, this.faceCount);
+            putInt(digest, buffer, this.partCount);
+
+            for (int i = 0; i < this.vertexCount * 3; i++) {
+                putInt(digest, buffer, Float.floatToIntBits(this.positions[i]));
+            }
+            for (int i = 0; i < this.uvCount * 2; i++) {
+                putInt(digest, buffer, Float.floatToIntBits(this.texCoords[i]));
+            }
+            for (int i = 0; i < this.normalCount * 3; i++) {
+                putInt(digest, buffer, Float.floatToIntBits(this.normals[i]));
+            }
+            for (int face = 0; face < this.faceCount; face++) {
+                putInt(digest, buffer, this.faceStarts[face + 1]);
+                putInt(digest, buffer, this.faceReversed[face] ? -this.faceNormals[face] : this.faceNormals[face]);
+            }
+            for (int i = 0; i < this.cornerCount; i++) {
+                putInt(digest, buffer, this.cornerVertices[i]);
+                putInt(digest, buffer, this.cornerTexCoords[i]);
+            }
+            for (int part = 0; part < this.partCount; part++) {
+                byte[] name = this.partNames[part].getBytes(StandardCharsets.UTF_8);
+                putInt(digest, buffer, this.partFirstFaces[part]);
+                putInt(digest, buffer, name.length);
+                flush(digest, buffer);
+                digest.update(name);
+            }
+            flush(digest, buffer);
         }
 
-        float getVertexWorldZ(Object vertex) throws Exception {
-            return readFloat(vertex, this.vertexWorldZMethod, this.vertexWorldZField, "vertex worldZ", "worldZ", "z", "getZ");
+        private static void putInt(MessageDigest digest, ByteBuffer buffer, int value) {
+            if (buffer.remaining() < 4) {
+                flush(digest, buffer);
+            }
+            buffer.putInt(value);
         }
 
-        float getVertexU(Object vertex) throws Exception {
-            return readFloat(vertex, this.vertexUMethod, this.vertexUField, "vertex U", "u", "getU");
+        private static void flush(MessageDigest digest, ByteBuffer buffer) {
+            digest.update(buffer.array(), 0, buffer.position());
+            buffer.clear();
         }
 
-        float getVertexV(Object vertex) throws Exception {
-            return readFloat(vertex, this.vertexVMethod, this.vertexVField, "vertex V", "v", "getV");
+        private static float[] ensureCapacity(float[] values, int required) {
+            if (required <= values.length) {
+                return values;
+            }
+            return Arrays.copyOf(values, Math.max(required, values.length * 2));
         }
 
-        float getVectorX(Object vector) throws Exception {
-            return readFloat(vector, this.vector3fXMethod, this.vector3fXField, "vector X", "x", "getX");
+        private static int[] ensureCapacity(int[] values, int required) {
+            if (required <= values.length) {
+                return values;
+            }
+            return Arrays.copyOf(values, Math.max(required, values.length * 2));
         }
+    }
 
-        float getVectorY(Object vector) throws Exception {
-            return readFloat(vector, this.vector3fYMethod, this.vector3fYField, "vector Y", "y", "getY");
-        }
+    private static final class FloatTupleInterner {
+        private int[] bits;
+        private int[] slots;
+        private int mask;
+        private int size = 0;
 
-        float getVectorZ(Object vector) throws Exception {
-            return readFloat(vector, this.vector3fZMethod, this.vector3fZField, "vector Z", "z", "getZ");
+        FloatTupleInterner(int expected) {
+            int capacity = 16;
+            while (capacity < expected * 2) {
+                capacity <<= 1;
+            }
+            this.bits = new int[Math.max(expected, 4) * 3];
+            this.slots = new int[capacity];
+            this.mask = capacity - 1;
         }
 
-        Object getLocationModel(Object location) throws Exception {
-            return readObject(location, this.modelLayerLocationModelMethod, this.modelLayerLocationModelField, "location model", "model", "id", "getModel");
+        int size() {
+            return this.size;
         }
 
-        Object getLocationLayer(Object location) throws Exception {
-            return readObject(location, this.modelLayerLocationLayerMethod, this.modelLayerLocationLayerField, "location layer", "layer", "getLayer");
+        int intern(float x, float y, float z) {
+            return intern(Float.floatToRawIntBits(x), Float.floatToRawIntBits(y), Float.floatToRawIntBits(z));
         }
 
-        private static Object[] asObjectArray(Object value, String label) {
-            if (value == null) {
-                return new Object[0];
+        int intern(int bx, int by, int bz) {
+            int slot = hash(bx, by, bz) & this.mask;
+            while (true) {
+                int index = this.slots[slot];
+                if (index == 0) {
+                    break;
+                }
+                int offset = (index - 1) * 3;
+                if (this.bits[offset] == bx && this.bits[offset + 1] == by && this.bits[offset + 2] == bz) {
+                    return index;
+                }
+                slot = (slot + 1) & this.mask;
             }
-            if (value instanceof Object[]) {
-                return (Object[]) value;
+
+            if (this.size * 3 + 3 > this.bits.length) {
+                this.bits = Arrays.copyOf(this.bits, this.bits.length * 2);
             }
-            if (value instanceof List) {
-                return ((List<?>) value).toArray();
+            int offset = this.size * 3;
+            this.bits[offset] = bx;
+            this.bits[offset + 1] = by;
+            this.bits[offset + 2] = bz;
+            this.size++;
+            this.slots[slot] = this.size;
+
+            if (this.size * 2 > this.slots.length) {
+                rehash();
             }
-            throw new IllegalStateException("Unsupported " + label + " container type: " + value.getClass().getName());
+            return this.size;
         }
 
-        private static void invokeStaticOptional(Method method) throws Exception {
-            if (method != null) {
-                invokeWithDefaults(method, null);
+        private void rehash() {
+            int[] resized = new int[this.slots.length * 2];
+            int resizedMask = resized.length - 1;
+            for (int index = 1; index <= this.size; index++) {
+                int offset = (index - 1) * 3;
+                int slot = hash(this.bits[offset], this.bits[offset + 1], this.bits[offset + 2]) & resizedMask;
+                while (resized[slot] != 0) {
+                    slot = (slot + 1) & resizedMask;
+                }
+                resized[slot] = index;
             }
+            this.slots = resized;
+            this.mask = resizedMask;
         }
 
-        private static Object invokeWithDefaults(Method method, Object target) throws Exception {
-            Class<?>[] parameterTypes = method.getParameterTypes();
-            Object[] arguments = new Object[parameterTypes.length];
-            for (int i = 0; i < parameterTypes.length; i++) {
-                arguments[i] = defaultReturnValue(parameterTypes[i]);
-            }
-            return method.invoke(target, arguments);
+        private static int hash(int x, int y, int z) {
+            int h = x * 0x9E3779B1;
+            h = (h ^ (h >>> 15) ^ y) * 0x85EBCA6B;
+            h = (h ^ (h >>> 13) ^ z) * 0xC2B2AE35;
+            return h ^ (h >>> 16);
         }
+    }
 
-        private static float readFloat(Object target, Method method, Field field, String label, String... dynamicNames) throws Exception {
-            Object value;
-            if (method != null) {
-                value = method.invoke(target);
-                return asFloat(value, label);
-            }
-            if (field != null) {
-                value = field.get(target);
-                return asFloat(value, label);
-            }
+    private static enum OutputFormat {
+        OBJ,
+        GLB,
+        BOTH;
 
-            Method dynamicMethod = findFloatGetter(target.getClass(), dynamicNames);
-            if (dynamicMethod != null) {
-                return asFloat(dynamicMethod.invoke(target), label);
-            }
-            Field dynamicField = findFloatField(target.getClass(), dynamicNames);
-            if (dynamicField != null) {
-                return asFloat(dynamicField.get(target), label);
-            }
+        boolean writesObj() {
+            return this != GLB;
+        }
 
-            throw new NoSuchMethodException("No numeric accessor found for " + label + ".");
+        boolean writesGlb() {
+            return this != OBJ;
+        }
+    }
+
+    private static final class GlbWriter {
+        private static final int GLB_MAGIC = 0x46546C67;
+        private static final int GLB_VERSION = 2;
+        private static final int CHUNK_JSON = 0x4E4F534A;
+        private static final int CHUNK_BIN = 0x004E4942;
+        private static final int VERTEX_STRIDE = 32;
+
+        private static final int COMPONENT_FLOAT = 5126;
+        private static final int COMPONENT_UNSIGNED_SHORT = 5123;
+        private static final int COMPONENT_UNSIGNED_INT = 5125;
+        private static final int TARGET_ARRAY_BUFFER = 34962;
+        private static final int TARGET_ELEMENT_ARRAY_BUFFER = 34963;
+        private static final int FILTER_NEAREST = 9728;
+        private static final int WRAP_CLAMP_TO_EDGE = 33071;
+
+        private final Path glbPath;
+        private final String sourceLocation;
+        private final ResolvedTexture texture;
+        private final boolean flipV;
+        private final boolean embedTexture;
+
+        GlbWriter(Path glbPath, String sourceLocation, ResolvedTexture texture, boolean flipV, boolean embedTexture) {
+            this.glbPath = glbPath;
+            this.sourceLocation = sourceLocation;
+            this.texture = texture;
+            this.flipV = flipV;
+            this.embedTexture = embedTexture;
         }
 
-        private static Object readObject(Object target, Method method, Field field, String label, String... dynamicNames) throws Exception {
-            if (method != null) {
-                return method.invoke(target);
+        void writeMesh(MeshBuffer mesh, float offsetY) throws IOException {
+            FloatTupleInterner corners = new FloatTupleInterner(mesh.cornerCount);
+            ByteBuffer vertexData = ByteBuffer.allocate(Math.max(mesh.cornerCount, 1) * VERTEX_STRIDE).order(ByteOrder.LITTLE_ENDIAN);
+            int[] indices = new int[Math.max(mesh.cornerCount * 3, 3)];
+            int indexCount = 0;
+            float[] min = new float[] {Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY};
+            float[] max = new float[] {Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY};
+
+            List<String> segmentNames = new ArrayList<String>();
+            List<Integer> segmentFirstIndex = new ArrayList<Integer>();
+            if (mesh.faceCount > 0 && (mesh.partCount == 0 || mesh.partFirstFaces[0] > 0)) {
+                segmentNames.add("root");
+                segmentFirstIndex.add(Integer.valueOf(0));
             }
-            if (field != null) {
-                return field.get(target);
+
+            int part = 0;
+            for (int face = 0; face <= mesh.faceCount; face++) {
+                while (part < mesh.partCount && mesh.partFirstFaces[part] == face) {
+                    segmentNames.add(mesh.partNames[part++]);
+                    segmentFirstIndex.add(Integer.valueOf(indexCount));
+                }
+                if (face == mesh.faceCount) {
+                    break;
+                }
+
+                int start = mesh.faceStarts[face];
+                int end = mesh.faceStarts[face + 1];
+                int cornerCount = end - start;
+                if (cornerCount < 3) {
+                    continue;
+                }
+
+                int normal = mesh.faceNormals[face];
+                boolean reversed = mesh.faceReversed[face];
+                int first = -1;
+                int previous = -1;
+                for (int i = 0; i < cornerCount; i++) {
+                    int corner = reversed ? end - 1 - i : start + i;
+                    int vertex = mesh.cornerVertices[corner];
+                    int uv = mesh.cornerTexCoords[corner];
+                    int size = corners.size();
+                    int index = corners.intern(vertex, uv, normal) - 1;
+                    if (index == size) {
+                        putVertex(vertexData, mesh, vertex, uv, normal, offsetY, min, max);
+                    }
+
+                    if (i == 0) {
+                        first = index;
+                    } else if (i >= 2) {
+                        indices[indexCount++] = first;
+                        indices[indexCount++] = previous;
+                        indices[indexCount++] = index;
+                    }
+                    previous = index;
+                }
             }
 
-            Method dynamicMethod = findNoArgMethod(target.getClass(), false, dynamicNames);
-            if (dynamicMethod != null) {
-                return dynamicMethod.invoke(target);
+            int vertexCount = corners.size();
+            boolean shortIndices = vertexCount < 0xFFFF;
+            int indexSize = shortIndices ? 2 : 4;
+            int vertexBytes = vertexCount * VERTEX_STRIDE;
+            int indexBytes = align4(indexCount * indexSize);
+
+            byte[] image = null;
+            if (this.embedTexture && this.texture != null && Files.isRegularFile(this.texture.extractedPath)) {
+                image = Files.readAllBytes(this.texture.extractedPath);
             }
-            Field dynamicField = findField(target.getClass(), dynamicNames);
-            if (dynamicField != null) {
-                return dynamicField.get(target);
+            int imageBytes = image != null ? align4(image.length) : 0;
+
+            ByteBuffer binary = ByteBuffer.allocate(vertexBytes + indexBytes + imageBytes).order(ByteOrder.LITTLE_ENDIAN);
+            binary.put(vertexData.array(), 0, vertexBytes);
+            for (int i = 0; i < indexCount; i++) {
+                if (shortIndices) {
+                    binary.putShort((short) indices[i]);
+                } else {
+                    binary.putInt(indices[i]);
+                }
+            }
+            binary.position(vertexBytes + indexBytes);
+            if (image != null) {
+                binary.put(image);
             }
 
-            throw new NoSuchMethodException("No accessor found for " + label + ".");
+            String json = buildJson(
+                segmentNames,
+                segmentFirstIndex,
+                indexCount,
+                vertexCount,
+                min,
+                max,
+                shortIndices,
+                vertexBytes,
+                indexCount * indexSize,
+                image != null ? image.length : -1
+            );
+            writeContainer(json.getBytes(StandardCharsets.UTF_8), vertexCount > 0 ? binary.array() : null);
+        }
+
+        private void putVertex(ByteBuffer out, MeshBuffer mesh, int vertex, int uv, int normal, float offsetY, float[] min, float[] max) {
+            int positionOffset = (vertex - 1) * 3;
+            float x = mesh.positions[positionOffset];
+            float y = mesh.positions[positionOffset + 1] + offsetY;
+            float z = mesh.positions[positionOffset + 2];
+            min[0] = Math.min(min[0], x);
+            min[1] = Math.min(min[1], y);
+            min[2] = Math.min(min[2], z);
+            max[0] = Math.max(max[0], x);
+            max[1] = Math.max(max[1], y);
+            max[2] = Math.max(max[2], z);
+            out.putFloat(x).putFloat(y).putFloat(z);
+
+            int normalOffset = (normal - 1) * 3;
+            out.putFloat(mesh.normals[normalOffset]).putFloat(mesh.normals[normalOffset + 1]).putFloat(mesh.normals[normalOffset + 2]);
+
+            int uvOffset = (uv - 1) * 2;
+            float v = mesh.texCoords[uvOffset + 1];
+            out.putFloat(mesh.texCoords[uvOffset]).putFloat(this.flipV ? 1.0f - v : v);
+        }
+
+        private String buildJson(
+            List<String> segmentNames,
+            List<Integer> segmentFirstIndex,
+            int indexCount,
+            int vertexCount,
+            float[] min,
+            float[] max,
+            boolean shortIndices,
+            int vertexBytes,
+            int indexBytes,
+            int imageLength
+        ) {
+            boolean hasGeometry = vertexCount > 0;
+            boolean hasTexture = this.texture != null;
+            StringBuilder json = new StringBuilder(1024);
+
+            json.append("{\"asset\":{\"version\":\"2.0\",\"generator\":\"EntityLayerObjExporter\",\"extras\":{\"sourceLayer\":");
+            appendString(json, this.sourceLocation);
+            json.append("}},\"scene\":0,\"scenes\":[{\"nodes\":[0]}]");
+
+            StringBuilder nodes = new StringBuilder();
+            StringBuilder meshes = new StringBuilder();
+            StringBuilder indexAccessors = new StringBuilder();
+            StringBuilder children = new StringBuilder();
+            int meshCount = 0;
+            for (int segment = 0; segment < segmentNames.size(); segment++) {
+                int firstIndex = segmentFirstIndex.get(segment).intValue();
+                int endIndex = segment + 1 < segmentNames.size() ? segmentFirstIndex.get(segment + 1).intValue() : indexCount;
+
+                children.append(segment == 0 ? "" : ",").append(segment + 1);
+                nodes.append(",{\"name\":");
+                appendString(nodes, segmentNames.get(segment));
+                if (endIndex > firstIndex) {
+                    nodes.append(",\"mesh\":").append(meshCount);
+
+                    meshes.append(meshCount == 0 ? "" : ",").append("{\"name\":");
+                    appendString(meshes, segmentNames.get(segment));
+                    meshes.append(",\"primitives\":[{\"attributes\":{\"POSITION\":0,\"NORMAL\":1,\"TEXCOORD_0\":2},\"indices\":")
+                        .append(3 + meshCount)
+                        .append(",\"material\":0,\"mode\":4}]}");
+
+                    indexAccessors.append(",{\"bufferView\":1,\"byteOffset\":")
+                        .append(firstIndex * (shortIndices ? 2 : 4))
+                        .append(",\"componentType\":")
+                        .append(shortIndices ? COMPONENT_UNSIGNED_SHORT : COMPONENT_UNSIGNED_INT)
+                        .append(",\"count\":")
+                        .append(endIndex - firstIndex)
+                        .append(",\"type\":\"SCALAR\"}");
+                    meshCount++;
+                }
+                nodes.append('}');
+            }
+
+            json.append(",\"nodes\":[{\"name\":");
+            appendString(json, this.sourceLocation);
+            if (children.length() > 0) {
+                json.append(",\"children\":[").append(children).append(']');
+            }
+            json.append('}').append(nodes).append(']');
+
+            json.append(",\"materials\":[{\"name\":\"").append(MATERIAL_NAME).append("\",\"pbrMetallicRoughness\":{");
+            if (hasTexture) {
+                json.append("\"baseColorTexture\":{\"index\":0},");
+            }
+            json.append("\"metallicFactor\":0,\"roughnessFactor\":1},\"alphaMode\":\"MASK\",\"alphaCutoff\":0.5}]");
+
+            if (hasTexture) {
+                json.append(",\"samplers\":[{\"magFilter\":").append(FILTER_NEAREST)
+                    .append(",\"minFilter\":").append(FILTER_NEAREST)
+                    .append(",\"wrapS\":").append(WRAP_CLAMP_TO_EDGE)
+                    .append(",\"wrapT\":").append(WRAP_CLAMP_TO_EDGE)
+                    .append("}],\"textures\":[{\"sampler\":0,\"source\":0}],\"images\":[{");
+                if (imageLength >= 0 && hasGeometry) {
+                    json.append("\"bufferView\":2,\"mimeType\":\"image/png\"");
+                } else {
+                    json.append("\"uri\":");
+                    appendString(json, encodeUri(this.texture.mapKdPath));
+                }
+                json.append("}]");
+            }
+
+            if (hasGeometry) {
+                int indexOffset = vertexBytes;
+                int imageOffset = vertexBytes + align4(indexBytes);
+                int bufferLength = imageOffset + (imageLength >= 0 ? align4(imageLength) : 0);
+
+                json.append(",\"meshes\":[").append(meshes).append(']');
+                json.append(",\"buffers\":[{\"byteLength\":").append(bufferLength).append("}]");
+                json.append(",\"bufferViews\":[{\"buffer\":0,\"byteOffset\":0,\"byteLength\":").append(vertexBytes)
+                    .append(",\"byteStride\":").append(VERTEX_STRIDE)
+                    .append(",\"target\":").append(TARGET_ARRAY_BUFFER)
+                    .append("},{\"buffer\":0,\"byteOffset\":").append(indexOffset)
+                    .append(",\"byteLength\":").append(indexBytes)
+                    .append(",\"target\":").append(TARGET_ELEMENT_ARRAY_BUFFER)
+                    .append('}');
+                if (imageLength >= 0) {
+                    json.append(",{\"buffer\":0,\"byteOffset\":").append(imageOffset)
+                        .append(",\"byteLength\":").append(imageLength)
+                        .append('}');
+                }
+                json.append(']');
+
+                json.append(",\"accessors\":[{\"bufferView\":0,\"byteOffset\":0,\"componentType\":").append(COMPONENT_FLOAT)
+                    .append(",\"count\":").append(vertexCount)
+                    .append(",\"type\":\"VEC3\",\"min\":[").append(min[0]).append(',').append(min[1]).append(',').append(min[2])
+                    .append("],\"max\":[").append(max[0]).append(',').append(max[1]).append(',').append(max[2])
+                    .append("]},{\"bufferView\":0,\"byteOffset\":12,\"componentType\":").append(COMPONENT_FLOAT)
+                    .append(",\"count\":").append(vertexCount)
+                    .append(",\"type\":\"VEC3\"},{\"bufferView\":0,\"byteOffset\":24,\"componentType\":").append(COMPONENT_FLOAT)
+                    .append(",\"count\":").append(vertexCount)
+                    .append(",\"type\":\"VEC2\"}")
+                    .append(indexAccessors)
+                    .append(']');
+            }
+
+            json.append('}');
+            return json.toString();
+        }
+
+        private void writeContainer(byte[] json, byte[] binary) throws IOException {
+            int jsonLength = align4(json.length);
+            int totalLength = 12 + 8 + jsonLength + (binary != null ? 8 + binary.length : 0);
+
+            ByteBuffer header = ByteBuffer.allocate(12 + 8).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(GLB_MAGIC).putInt(GLB_VERSION).putInt(totalLength);
+            header.putInt(jsonLength).putInt(CHUNK_JSON);
+
+            Path tempPath = tempSibling(this.glbPath);
+            try {
+                try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tempPath))) {
+                    out.write(header.array());
+                    out.write(json);
+                    for (int i = json.length; i < jsonLength; i++) {
+                        out.write(' ');
+                    }
+                    if (binary != null) {
+                        ByteBuffer binaryHeader = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+                        binaryHeader.putInt(binary.length).putInt(CHUNK_BIN);
+                        out.write(binaryHeader.array());
+                        out.write(binary);
+                    }
+                }
+                moveIntoPlace(tempPath, this.glbPath);
+            } finally {
+                Files.deleteIfExists(tempPath);
+            }
         }
 
-        private static float asFloat(Object value, String label) {
-            if (value instanceof Number) {
-                return ((Number) value).floatValue();
-            }
-            throw new IllegalStateException("Expected numeric value for " + label + " but got: " + value);
+        private static int align4(int value) {
+            return (value + 3) & ~3;
         }
 
-        private static Constructor<?> requireNoArgConstructor(Class<?> owner) throws NoSuchMethodException {
-            try {
-                Constructor<?> constructor = owner.getConstructor();
-                makeAccessible(constructor);
-                return constructor;
-            } catch (NoSuchMethodException ignored) {
+        private static void appendString(StringBuilder out, String value) {
+            out.append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"' || c == '\\') {
+                    out.append('\\').append(c);
+                } else if (c < 0x20) {
+                    out.append(String.format(Locale.ROOT, "\\u%04x", Integer.valueOf(c)));
+                } else {
+                    out.append(c);
+                }
             }
-            Constructor<?> constructor = owner.getDeclaredConstructor();
-            makeAccessible(constructor);
-            return constructor;
+            out.append('"');
         }
 
-        private static Constructor<?> findSingleArgConstructor(Class<?> owner, Class<?> parameterSuperType) {
-            for (Constructor<?> constructor : owner.getConstructors()) {
-                if (constructor.getParameterCount() != 1) {
-                    continue;
+        private static String encodeUri(String path) {
+            StringBuilder out = new StringBuilder(path.length());
+            for (byte b : path.getBytes(StandardCharsets.UTF_8)) {
+                int c = b & 0xFF;
+                if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '/' || c == '-' || c == '_' || c == '.' || c == '~') {
+                    out.append((char) c);
+                } else {
+                    out.append('%').append(Character.toUpperCase(Character.forDigit(c >> 4, 16))).append(Character.toUpperCase(Character.forDigit(c & 0xF, 16)));
                 }
-                Class<?> argType = constructor.getParameterTypes()[0];
-                if (argType.isAssignableFrom(parameterSuperType) || parameterSuperType.isAssignableFrom(argType)) {
-                    makeAccessible(constructor);
-                    return constructor;
+            }
+            return out.toString();
+        }
+    }
+
+    private static enum LayerDedupe {
+        OFF,
+        MTL,
+        HARDLINK
+    }
+
+    private static enum TextureMode {
+        REFERENCED,
+        ALL,
+        NONE
+    }
+
+    private static final class ExportJournal implements AutoCloseable {
+        static final String FILE_NAME = "export-journal.tsv";
+
+        private final Path directory;
+        private final Map<String, Map<String, String>> hashesByLocation;
+        private final BufferedWriter writer;
+
+        private ExportJournal(Path directory, Map<String, Map<String, String>> hashesByLocation, BufferedWriter writer) {
+            this.directory = directory;
+            this.hashesByLocation = hashesByLocation;
+            this.writer = writer;
+        }
+
+        static ExportJournal open(Path path, String outputSignature, boolean resume) throws IOException {
+            String signature = toHex(sha256().digest(outputSignature.getBytes(StandardCharsets.UTF_8)));
+            Map<String, Map<String, String>> hashesByLocation = new HashMap<String, Map<String, String>>();
+            boolean append = false;
+            boolean needsNewline = false;
+
+            if (resume && Files.isRegularFile(path)) {
+                byte[] content = Files.readAllBytes(path);
+                String text = new String(content, StandardCharsets.UTF_8);
+                String[] lines = text.split("\n", -1);
+                if (lines.length > 0 && ("signature\t" + signature).equals(lines[0])) {
+                    for (int i = 1; i < lines.length; i++) {
+                        parseEntry(lines[i], hashesByLocation);
+                    }
+                    append = true;
+                    needsNewline = content.length > 0 && content[content.length - 1] != '\n';
+                } else {
+                    System.err.println("Ignoring " + path.getFileName() + ": it was written with different export options.");
                 }
             }
-            for (Constructor<?> constructor : owner.getDeclaredConstructors()) {
-                if (constructor.getParameterCount() != 1) {
-                    continue;
+
+            BufferedWriter writer;
+            if (append) {
+                writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                if (needsNewline) {
+                    writer.write('\n');
                 }
-                Class<?> argType = constructor.getParameterTypes()[0];
-                if (argType.isAssignableFrom(parameterSuperType) || parameterSuperType.isAssignableFrom(argType)) {
-                    makeAccessible(constructor);
-                    return constructor;
+            } else {
+                writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+                writer.write("signature\t" + signature + "\n");
+            }
+            writer.flush();
+            return new ExportJournal(path.toAbsolutePath().getParent(), hashesByLocation, writer);
+        }
+
+        private static void parseEntry(String line, Map<String, Map<String, String>> hashesByLocation) {
+            String[] fields = line.split("\t", -1);
+            if (fields.length < 2 || !"done".equals(fields[0])) {
+                return;
+            }
+
+            Map<String, String> hashes = new LinkedHashMap<String, String>();
+            for (int i = 2; i < fields.length; i++) {
+                int separator = fields[i].lastIndexOf('=');
+                if (separator <= 0 || fields[i].length() - separator - 1 != 64) {
+                    return;
                 }
+                hashes.put(fields[i].substring(0, separator), fields[i].substring(separator + 1));
             }
-            return null;
+            hashesByLocation.put(fields[1], hashes);
         }
 
-        private static Method requireNoArgMethod(Class<?> owner, boolean requireStatic, String... names) throws NoSuchMethodException {
-            Method method = findNoArgMethod(owner, requireStatic, names);
-            if (method == null) {
-                throw new NoSuchMethodException("No compatible no-arg method found on " + owner.getName());
+        boolean isIntact(String locationKey) throws IOException {
+            Map<String, String> hashes = this.hashesByLocation.get(locationKey);
+            if (hashes == null || hashes.isEmpty()) {
+                return false;
             }
-            return method;
+
+            for (Map.Entry<String, String> entry : hashes.entrySet()) {
+                Path path = this.directory.resolve(entry.getKey());
+                if (!Files.isRegularFile(path) || !toHex(sha256(path)).equals(entry.getValue())) {
+                    return false;
+                }
+            }
+            return true;
         }
 
-        private static Method requireMethodWithSingleParam(
-            Class<?> owner,
-            boolean requireStatic,
-            Class<?> requiredParamType,
-            Class<?> requiredReturnType,
-            String... names
-        ) throws NoSuchMethodException {
-            Method method = findMethodWithSingleParam(owner, requireStatic, requiredParamType, requiredReturnType, names);
-            if (method == null) {
-                throw new NoSuchMethodException("No compatible single-arg method found on " + owner.getName());
+        synchronized void record(String locationKey, List<Path> outputs) throws IOException {
+            StringBuilder line = new StringBuilder(96 + outputs.size() * 96);
+            line.append("done\t").append(locationKey);
+            for (Path output : outputs) {
+                line.append('\t').append(output.getFileName()).append('=').append(toHex(sha256(output)));
             }
-            return method;
+            line.append('\n');
+            this.writer.write(line.toString());
+            this.writer.flush();
         }
 
-        private static Method findExactMethod(Class<?> owner, String name, Class<?>... parameterTypes) {
-            try {
-                Method method = owner.getMethod(name, parameterTypes);
-                makeAccessible(method);
-                return method;
-            } catch (NoSuchMethodException ignored) {
+        public synchronized void close() throws IOException {
+            this.writer.close();
+        }
+    }
+
+    private static final class ShardSpec {
+        static final ShardSpec SINGLE = new ShardSpec(1, 1);
+
+        final int index;
+        final int count;
+
+        private ShardSpec(int index, int count) {
+            this.index = index;
+            this.count = count;
+        }
+
+        static ShardSpec parse(String value) {
+            int slash = value.indexOf('/');
+            if (slash <= 0 || slash == value.length() - 1) {
+                throw new IllegalArgumentException("Invalid shard (expected <index>/<count>, e.g. 1/4): " + value);
             }
-            try {
-                Method method = owner.getDeclaredMethod(name, parameterTypes);
-                makeAccessible(method);
-                return method;
-            } catch (NoSuchMethodException ignored) {
+
+            int index = Integer.parseInt(value.substring(0, slash).trim());
+            int count = Integer.parseInt(value.substring(slash + 1).trim());
+            if (count < 1 || index < 1 || index > count) {
+                throw new IllegalArgumentException("Invalid shard (index must be between 1 and count): " + value);
             }
-            return null;
+            return new ShardSpec(index, count);
         }
 
-        private static Method findNoArgMethod(Class<?> owner, boolean requireStatic, String... names) {
-            Method method = findMethodWithArity(owner, requireStatic, 0, names);
-            return method;
+        boolean isSharded() {
+            return this.count > 1;
         }
 
-        private static Method findMethodWithSingleParam(
-            Class<?> owner,
-            boolean requireStatic,
-            Class<?> requiredParamType,
-            Class<?> requiredReturnType,
-            String... names
-        ) {
-            Method[] all = allMethods(owner);
-            for (String name : names) {
-                for (Method method : all) {
-                    if (!name.equals(method.getName())) {
-                        continue;
-                    }
-                    if (!isMethodCompatible(method, requireStatic, 1)) {
-                        continue;
-                    }
-                    Class<?> parameterType = method.getParameterTypes()[0];
-                    if (!parameterType.isAssignableFrom(requiredParamType) && !requiredParamType.isAssignableFrom(parameterType)) {
-                        continue;
-                    }
-                    if (requiredReturnType != null && !requiredReturnType.isAssignableFrom(method.getReturnType())) {
-                        continue;
-                    }
-                    makeAccessible(method);
-                    return method;
-                }
-            }
-            return null;
+        boolean owns(String key) {
+            return Math.floorMod(key.hashCode(), this.count) == this.index - 1;
         }
 
-        private static Method findMethodWithArity(Class<?> owner, boolean requireStatic, int arity, String... names) {
-            Method[] all = allMethods(owner);
-            for (String name : names) {
-                for (Method method : all) {
-                    if (!name.equals(method.getName())) {
-                        continue;
-                    }
-                    if (!isMethodCompatible(method, requireStatic, arity)) {
-                        continue;
-                    }
-                    makeAccessible(method);
-                    return method;
+        Path partialPath(Path outputDir) {
+            return outputDir.resolve(ShardManifest.FILE_PREFIX + suffix() + ".tsv");
+        }
+
+        Path manifestPath(Path outputDir) {
+            return outputDir.resolve("export-manifest.shard-" + suffix() + ".tsv");
+        }
+
+        Path journalPath(Path outputDir) {
+            return outputDir.resolve("export-journal.shard-" + suffix() + ".tsv");
+        }
+
+        private String suffix() {
+            return this.index + "-of-" + this.count;
+        }
+
+        @Override
+        public String toString() {
+            return this.index + "/" + this.count;
+        }
+    }
+
+    private static final class ShardManifest {
+        static final String FILE_PREFIX = "shard-";
+
+        final ShardSpec shard;
+        final int total;
+        final String fingerprint;
+        final String runIdentity;
+        final Map<String, String> statusByLocation = new TreeMap<String, String>();
+
+        ShardManifest(ShardSpec shard, List<Object> locations, String runIdentity) {
+            this(shard, locations.size(), fingerprint(locations), runIdentity);
+        }
+
+        private ShardManifest(ShardSpec shard, int total, String fingerprint, String runIdentity) {
+            this.shard = shard;
+            this.total = total;
+            this.fingerprint = fingerprint;
+            this.runIdentity = runIdentity;
+        }
+
+        synchronized void record(String locationKey, String status) {
+            this.statusByLocation.put(locationKey, status);
+        }
+
+        synchronized void write(Path path) throws IOException {
+            List<String> lines = new ArrayList<String>(this.statusByLocation.size() + 3);
+            lines.add("# shard\tindex\tcount\tlocations\tfingerprint\trun");
+            lines.add("shard\t" + this.shard.index + "\t" + this.shard.count + "\t" + this.total + "\t" + this.fingerprint + "\t" + this.runIdentity);
+            lines.add("# location\tkey\tstatus");
+            for (Map.Entry<String, String> entry : this.statusByLocation.entrySet()) {
+                lines.add("location\t" + entry.getKey() + "\t" + entry.getValue());
+            }
+
+            writeLinesAtomically(path, lines);
+        }
+
+        static ShardManifest load(Path path) throws IOException {
+            ShardManifest manifest = null;
+            for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+
+                String[] fields = line.split("\t", -1);
+                if ("shard".equals(fields[0]) && fields.length == 6 && manifest == null) {
+                    manifest = new ShardManifest(
+                        new ShardSpec(Integer.parseInt(fields[1]), Integer.parseInt(fields[2])),
+                        Integer.parseInt(fields[3]),
+                        fields[4],
+                        fields[5]
+                    );
+                } else if ("location".equals(fields[0]) && fields.length == 3 && manifest != null) {
+                    manifest.statusByLocation.put(fields[1], fields[2]);
+                } else {
+                    throw new IOException("Malformed shard manifest line in " + path + ": " + line);
                 }
             }
-            return null;
+            if (manifest == null) {
+                throw new IOException("Shard manifest has no header: " + path);
+            }
+            return manifest;
         }
 
-        private static Method findStaticFactoryMethod(Class<?> owner) {
-            Method[] all = allMethods(owner);
-            for (Method method : all) {
-                if (!Modifier.isStatic(method.getModifiers())) {
+        static int merge(Path outputDir, int count) throws IOException {
+            List<String> problems = new ArrayList<String>();
+            Map<String, Integer> shardByLocation = new TreeMap<String, Integer>();
+            Map<String, Integer> countsByStatus = new TreeMap<String, Integer>();
+            Set<String> resumedLocations = new HashSet<String>();
+            ExportManifest merged = new ExportManifest();
+            List<Path> partialPaths = new ArrayList<Path>(count * 2);
+            ShardManifest first = null;
+
+            for (int index = 1; index <= count; index++) {
+                ShardSpec shard = new ShardSpec(index, count);
+                Path partialPath = shard.partialPath(outputDir);
+                if (!Files.isRegularFile(partialPath)) {
+                    problems.add("missing partial manifest " + partialPath.getFileName());
                     continue;
                 }
-                if (method.getParameterCount() != 0) {
+
+                ShardManifest partial = load(partialPath);
+                if (partial.shard.index != index || partial.shard.count != count) {
+                    problems.add(partialPath.getFileName() + " was written for shard " + partial.shard);
                     continue;
                 }
-                if (!owner.isAssignableFrom(method.getReturnType())) {
+                if (first == null) {
+                    first = partial;
+                } else if (!partial.runIdentity.equals(first.runIdentity)) {
+                    problems.add("shard " + partial.shard + " was written by a different run than shard " + first.shard + " (export options or client jar differ)");
                     continue;
+                } else if (partial.total != first.total || !partial.fingerprint.equals(first.fingerprint)) {
+                    problems.add("shard " + partial.shard + " saw a different location set than shard " + first.shard);
                 }
-                makeAccessible(method);
-                return method;
-            }
-            return null;
-        }
 
-        private static Method findMapFactoryMethod(Class<?> owner, boolean requireStatic, String... preferredNames) {
-            Method[] all = allMethods(owner);
-            for (String preferredName : preferredNames) {
-                Method bestNamed = null;
-                for (Method method : all) {
-                    if (!preferredName.equals(method.getName())) {
-                        continue;
-                    }
-                    if (!isMapFactoryCandidate(method, requireStatic)) {
-                        continue;
+                for (Map.Entry<String, String> entry : partial.statusByLocation.entrySet()) {
+                    Integer previous = shardByLocation.put(entry.getKey(), Integer.valueOf(index));
+                    if (previous != null) {
+                        problems.add("duplicate location " + entry.getKey() + " in shards " + previous + "/" + count + " and " + shard);
                     }
-                    if (bestNamed == null || method.getParameterCount() < bestNamed.getParameterCount()) {
-                        bestNamed = method;
+                    if ("resumed".equals(entry.getValue())) {
+                        resumedLocations.add(entry.getKey());
                     }
+                    Integer statusCount = countsByStatus.get(entry.getValue());
+                    countsByStatus.put(entry.getValue(), Integer.valueOf(statusCount == null ? 1 : statusCount.intValue() + 1));
                 }
-                if (bestNamed != null) {
-                    makeAccessible(bestNamed);
-                    return bestNamed;
+
+                ExportManifest partialManifest = ExportManifest.load(shard.manifestPath(outputDir));
+                partialPaths.add(partialPath);
+                partialPaths.add(shard.manifestPath(outputDir));
+                merged.layers.putAll(partialManifest.layers);
+                for (ExportManifest.TextureRecord record : partialManifest.textures.values()) {
+                    merged.textures.putIfAbsent(record.entry, record);
                 }
             }
 
-            Method best = null;
-            int bestScore = Integer.MIN_VALUE;
-            for (Method method : all) {
-                if (!isMapFactoryCandidate(method, requireStatic)) {
-                    continue;
-                }
-                int score = scoreMapFactoryCandidate(method);
-                if (best == null || score > bestScore) {
-                    best = method;
-                    bestScore = score;
-                }
+            if (first != null && shardByLocation.size() != first.total) {
+                problems.add("gap: shards cover " + shardByLocation.size() + " of " + first.total + " locations");
             }
-            if (best != null) {
-                makeAccessible(best);
+            if (!problems.isEmpty()) {
+                for (String problem : problems) {
+                    System.err.println("Shard merge: " + problem);
+                }
+                throw new IllegalStateException("Shard merge failed with " + problems.size() + " problem(s).");
             }
-            return best;
-        }
 
-        private static boolean isMapFactoryCandidate(Method method, boolean requireStatic) {
-            if (requireStatic && !Modifier.isStatic(method.getModifiers())) {
-                return false;
+            Path manifestPath = outputDir.resolve(ExportManifest.FILE_NAME);
+            ExportManifest previousManifest = ExportManifest.load(manifestPath);
+            merged.retainLocations(previousManifest, resumedLocations);
+            merged.retainUnselected(previousManifest, shardByLocation.keySet());
+            merged.write(manifestPath);
+            for (Path partialPath : partialPaths) {
+                Files.deleteIfExists(partialPath);
             }
-            return Map.class.isAssignableFrom(method.getReturnType());
+
+            int failed = statusCount(countsByStatus, "failed");
+            System.out.printf(
+                Locale.ROOT,
+                "Merged %d shards: %d locations (%d exported, %d unchanged, %d resumed, %d failed)%n",
+                count,
+                shardByLocation.size(),
+                statusCount(countsByStatus, "exported"),
+                statusCount(countsByStatus, "unchanged"),
+                statusCount(countsByStatus, "resumed"),
+                failed
+            );
+            return failed;
         }
 
-        private static int scoreMapFactoryCandidate(Method method) {
-            String name = method.getName().toLowerCase(Locale.ROOT);
-            int score = 0;
-            score -= method.getParameterCount() * 10;
-            if (name.contains("root")) {
-                score += 70;
-            }
-            if (name.contains("layer")) {
-                score += 20;
-            }
-            if (name.startsWith("create")) {
-                score += 15;
-            }
-            return score;
+        private static int statusCount(Map<String, Integer> countsByStatus, String status) {
+            Integer value = countsByStatus.get(status);
+            return value == null ? 0 : value.intValue();
         }
 
-        private static Method findFloatGetter(Class<?> owner, String... names) {
-            Method[] all = allMethods(owner);
-            for (String name : names) {
-                for (Method method : all) {
-                    if (!name.equals(method.getName())) {
-                        continue;
-                    }
-                    if (method.getParameterCount() != 0) {
-                        continue;
-                    }
-                    if (!isNumericType(method.getReturnType())) {
-                        continue;
-                    }
-                    makeAccessible(method);
-                    return method;
-                }
+        static String runIdentity(Config config) throws IOException {
+            MessageDigest digest = sha256();
+            digest.update(config.outputSignature().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            if (config.clientJarPath != null) {
+                digest.update(sha256(config.clientJarPath));
             }
-            return null;
+            return toHex(digest.digest());
         }
 
-        private static Field findFloatField(Class<?> owner, String... names) {
-            Field field = findField(owner, names);
-            if (field == null) {
-                return null;
-            }
-            if (!isNumericType(field.getType())) {
-                return null;
+        private static String fingerprint(List<Object> locations) {
+            MessageDigest digest = sha256();
+            for (Object location : locations) {
+                digest.update(String.valueOf(location).getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) '\n');
             }
-            return field;
+            return toHex(digest.digest());
         }
+    }
 
-        private static Field findField(Class<?> owner, String... names) {
-            Field[] publicFields = owner.getFields();
-            for (String name : names) {
-                for (Field field : publicFields) {
-                    if (name.equals(field.getName())) {
-                        makeAccessible(field);
-                        return field;
-                    }
-                }
-            }
+    private static final class LocationFilter {
+        private static final String REGEX_PREFIX = "regex:";
+        private static final String GLOB_PREFIX = "glob:";
 
-            Field[] declaredFields = owner.getDeclaredFields();
-            for (String name : names) {
-                for (Field field : declaredFields) {
-                    if (name.equals(field.getName())) {
-                        makeAccessible(field);
-                        return field;
-                    }
-                }
-            }
+        private final List<Pattern> includes;
+        private final List<Pattern> excludes;
 
-            return null;
+        private LocationFilter(List<Pattern> includes, List<Pattern> excludes) {
+            this.includes = includes;
+            this.excludes = excludes;
         }
 
-        private static boolean isMethodCompatible(Method method, boolean requireStatic, int arity) {
-            if (method.getParameterCount() != arity) {
-                return false;
-            }
-            if (requireStatic && !Modifier.isStatic(method.getModifiers())) {
+        static LocationFilter compile(List<String> includes, List<String> excludes) {
+            return new LocationFilter(compileAll(includes), compileAll(excludes));
+        }
+
+        boolean isEmpty() {
+            return this.includes.isEmpty() && this.excludes.isEmpty();
+        }
+
+        boolean matches(String locationKey) {
+            if (!this.includes.isEmpty() && !anyMatches(this.includes, locationKey)) {
                 return false;
             }
-            return true;
+            return !anyMatches(this.excludes, locationKey);
         }
 
-        private static boolean isNumericType(Class<?> type) {
-            if (type.isPrimitive()) {
-                return type == Float.TYPE || type == Double.TYPE || type == Integer.TYPE || type == Long.TYPE
-                    || type == Short.TYPE || type == Byte.TYPE;
+        private static boolean anyMatches(List<Pattern> patterns, String locationKey) {
+            for (Pattern pattern : patterns) {
+                if (pattern.matcher(locationKey).matches()) {
+                    return true;
+                }
             }
-            return Number.class.isAssignableFrom(type);
+            return false;
         }
 
-        private static Method[] allMethods(Class<?> owner) {
-            Method[] publicMethods = owner.getMethods();
-            Method[] declaredMethods = owner.getDeclaredMethods();
-            Method[] out = new Method[publicMethods.length + declaredMethods.length];
-            System.arraycopy(publicMethods, 0, out, 0, publicMethods.length);
-            System.arraycopy(declaredMethods, 0, out, publicMethods.length, declaredMethods.length);
+        private static List<Pattern> compileAll(List<String> values) {
+            List<Pattern> out = new ArrayList<Pattern>(values.size());
+            for (String value : values) {
+                out.add(compile(value));
+            }
             return out;
         }
 
-        private static void makeAccessible(java.lang.reflect.AccessibleObject object) {
-            try {
-                object.setAccessible(true);
-            } catch (Throwable ignored) {
+        private static Pattern compile(String value) {
+            if (value.startsWith(REGEX_PREFIX)) {
+                return Pattern.compile(value.substring(REGEX_PREFIX.length()));
+            }
+
+            String glob = value.startsWith(GLOB_PREFIX) ? value.substring(GLOB_PREFIX.length()) : value;
+            StringBuilder regex = new StringBuilder(glob.length() + 8);
+            int literalStart = 0;
+            for (int i = 0; i < glob.length(); i++) {
+                char c = glob.charAt(i);
+                if (c != '*' && c != '?') {
+                    continue;
+                }
+                if (i > literalStart) {
+                    regex.append(Pattern.quote(glob.substring(literalStart, i)));
+                }
+                regex.append(c == '*' ? ".*" : ".");
+                literalStart = i + 1;
             }
+            if (literalStart < glob.length()) {
+                regex.append(Pattern.quote(glob.substring(literalStart)));
+            }
+            return Pattern.compile(regex.toString());
         }
     }
 
+    private static enum FloatFormat {
+        FIXED,
+        COMPACT
+    }
+
     private static final class ObjWriter implements AutoCloseable {
-        private final PrintWriter objWriter;
+        private static final ThreadLocal<byte[]> ENCODE_BUFFER = ThreadLocal.withInitial(() -> new byte[1 << 16]);
+        private static final long FIXED_SCALE = 100000000L;
+        private static final int FIXED_DECIMALS = 8;
+        private static final double MAX_FIXED_MAGNITUDE = 9.0e10;
+
+        private final Path objPath;
+        private final Path mtlPath;
+        private final Path objTempPath;
+        private final Path mtlTempPath;
+        private final OutputStream objOut;
         private final PrintWriter mtlWriter;
+        private final FloatFormat floatFormat;
+        private final boolean dedupe;
+        private final byte[] buffer;
+        private int position = 0;
 
         private int vertexCount = 0;
         private int uvCount = 0;
         private int normalCount = 0;
 
         private String currentPart = null;
+        private boolean committed = false;
+        private boolean closed = false;
+
+        ObjWriter(
+            Path objPath,
+            Path mtlPath,
+            String sourceLocation,
+            String textureMapPath,
+            String textureSource,
+            boolean includeTimestamp,
+            FloatFormat floatFormat,
+            boolean dedupe
+        ) throws IOException {
+            this.objPath = objPath;
+            this.mtlPath = mtlPath;
+            this.objTempPath = tempSibling(objPath);
+            this.mtlTempPath = tempSibling(mtlPath);
+            this.objOut = Files.newOutputStream(this.objTempPath);
+            this.mtlWriter = new PrintWriter(Files.newBufferedWriter(this.mtlTempPath, StandardCharsets.UTF_8));
+            this.floatFormat = floatFormat;
+            this.dedupe = dedupe;
+            this.buffer = ENCODE_BUFFER.get();
+
+            writeLine("# Exported by EntityLayerObjExporter");
+            if (includeTimestamp) {
+                writeLine("# Generated: " + Instant.now().toString());
+            }
+            writeLine("# Source layer: " + sourceLocation);
+            writeLine("mtllib " + mtlPath.getFileName().toString());
+            writeLine("");
+
+            writeMaterial(this.mtlWriter, textureMapPath, textureSource);
+        }
+
+        static void writeMaterial(Path mtlPath, String textureMapPath, String textureSource) throws IOException {
+            Path tempPath = tempSibling(mtlPath);
+            try {
+                try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(tempPath, StandardCharsets.UTF_8))) {
+                    writeMaterial(writer, textureMapPath, textureSource);
+                }
+                moveIntoPlace(tempPath, mtlPath);
+            } finally {
+                Files.deleteIfExists(tempPath);
+            }
+        }
 
-        ObjWriter(Path objPath, Path mtlPath, String sourceLocation, String textureMapPath, String textureSource) throws IOException {
-            this.objWriter = new PrintWriter(Files.newBufferedWriter(objPath, StandardCharsets.UTF_8));
-            this.mtlWriter = new PrintWriter(Files.newBufferedWriter(mtlPath, StandardCharsets.UTF_8));
-
-            this.objWriter.println("# Exported by EntityLayerObjExporter");
-            this.objWriter.println("# Generated: " + Instant.now().toString());
-            this.objWriter.println("# Source layer: " + sourceLocation);
-            this.objWriter.println("mtllib " + mtlPath.getFileName().toString());
-            this.objWriter.println();
-
-            this.mtlWriter.println("# Exported by EntityLayerObjExporter");
-            this.mtlWriter.println("newmtl " + MATERIAL_NAME);
-            this.mtlWriter.println("Ka 1.000000 1.000000 1.000000");
-            this.mtlWriter.println("Kd 1.000000 1.000000 1.000000");
-            this.mtlWriter.println("Ks 0.000000 0.000000 0.000000");
-            this.mtlWriter.println("d 1.0");
-            this.mtlWriter.println("illum 2");
+        private static void writeMaterial(PrintWriter writer, String textureMapPath, String textureSource) {
+            writer.println("# Exported by EntityLayerObjExporter");
+            writer.println("newmtl " + MATERIAL_NAME);
+            writer.println("Ka 1.000000 1.000000 1.000000");
+            writer.println("Kd 1.000000 1.000000 1.000000");
+            writer.println("Ks 0.000000 0.000000 0.000000");
+            writer.println("d 1.0");
+            writer.println("illum 2");
             if (textureMapPath != null && !textureMapPath.isEmpty()) {
                 if (textureSource != null && !textureSource.isEmpty()) {
-                    this.mtlWriter.println("# Source texture: " + textureSource);
+                    writer.println("# Source texture: " + textureSource);
                 }
-                this.mtlWriter.println("map_Kd " + textureMapPath);
+                writer.println("map_Kd " + textureMapPath);
             } else {
-                this.mtlWriter.println("# No texture match found for this layer.");
+                writer.println("# No texture match found for this layer.");
             }
         }
 
-        void beginPart(String partName) {
+        void beginPart(String partName) throws IOException {
             if (partName.equals(this.currentPart)) {
                 return;
             }
 
             this.currentPart = partName;
-            this.objWriter.println();
-            this.objWriter.println("o " + partName);
-            this.objWriter.println("usemtl " + MATERIAL_NAME);
+            writeLine("");
+            writeLine("o " + partName);
+            writeLine("usemtl " + MATERIAL_NAME);
+        }
+
+        void writeMesh(MeshBuffer mesh, float offsetY) throws IOException {
+            if (this.dedupe) {
+                writeDedupedMesh(mesh, offsetY);
+                return;
+            }
+
+            int writtenVertices = 0;
+            int writtenTexCoords = 0;
+            int writtenNormals = 0;
+            int part = 0;
+
+            for (int face = 0; face < mesh.faceCount; face++) {
+                while (part < mesh.partCount && mesh.partFirstFaces[part] == face) {
+                    beginPart(mesh.partNames[part++]);
+                }
+
+                int normal = mesh.faceNormals[face];
+                while (writtenNormals < normal) {
+                    int offset = writtenNormals++ * 3;
+                    writeNormal(mesh.normals[offset], mesh.normals[offset + 1], mesh.normals[offset + 2]);
+                }
+
+                int start = mesh.faceStarts[face];
+                int end = mesh.faceStarts[face + 1];
+                for (int corner = start; corner < end; corner++) {
+                    int vertex = mesh.cornerVertices[corner];
+                    while (writtenVertices < vertex) {
+                        int offset = writtenVertices++ * 3;
+                        writeVertex(mesh.positions[offset], mesh.positions[offset + 1] + offsetY, mesh.positions[offset + 2]);
+                    }
+                    int uv = mesh.cornerTexCoords[corner];
+                    while (writtenTexCoords < uv) {
+                        int offset = writtenTexCoords++ * 2;
+                        writeTexCoord(mesh.texCoords[offset], mesh.texCoords[offset + 1]);
+                    }
+                }
+
+                writeFace(mesh.cornerVertices, mesh.cornerTexCoords, start, end, normal, mesh.faceReversed[face]);
+            }
+
+            while (part < mesh.partCount) {
+                beginPart(mesh.partNames[part++]);
+            }
+        }
+
+        private void writeDedupedMesh(MeshBuffer mesh, float offsetY) throws IOException {
+            FloatTupleInterner positions = new FloatTupleInterner(mesh.vertexCount);
+            FloatTupleInterner texCoords = new FloatTupleInterner(mesh.uvCount);
+            FloatTupleInterner normals = new FloatTupleInterner(mesh.normalCount);
+            int[] vertexRemap = new int[mesh.vertexCount + 1];
+            int[] texCoordRemap = new int[mesh.uvCount + 1];
+            int[] normalRemap = new int[mesh.normalCount + 1];
+            int[] faceVertices = new int[4];
+            int[] faceTexCoords = new int[4];
+
+            int processedVertices = 0;
+            int processedTexCoords = 0;
+            int processedNormals = 0;
+            int part = 0;
+
+            for (int face = 0; face < mesh.faceCount; face++) {
+                while (part < mesh.partCount && mesh.partFirstFaces[part] == face) {
+                    beginPart(mesh.partNames[part++]);
+                }
+
+                int normal = mesh.faceNormals[face];
+                while (processedNormals < normal) {
+                    int offset = processedNormals++ * 3;
+                    float x = mesh.normals[offset];
+                    float y = mesh.normals[offset + 1];
+                    float z = mesh.normals[offset + 2];
+                    int index = normals.intern(x, y, z);
+                    if (index > this.normalCount) {
+                        writeNormal(x, y, z);
+                    }
+                    normalRemap[processedNormals] = index;
+                }
+
+                int start = mesh.faceStarts[face];
+                int corners = mesh.faceStarts[face + 1] - start;
+                if (faceVertices.length < corners) {
+                    faceVertices = new int[corners];
+                    faceTexCoords = new int[corners];
+                }
+                for (int i = 0; i < corners; i++) {
+                    int vertex = mesh.cornerVertices[start + i];
+                    while (processedVertices < vertex) {
+                        int offset = processedVertices++ * 3;
+                        float x = mesh.positions[offset];
+                        float y = mesh.positions[offset + 1] + offsetY;
+                        float z = mesh.positions[offset + 2];
+                        int index = positions.intern(x, y, z);
+                        if (index > this.vertexCount) {
+                            writeVertex(x, y, z);
+                        }
+                        vertexRemap[processedVertices] = index;
+                    }
+                    int uv = mesh.cornerTexCoords[start + i];
+                    while (processedTexCoords < uv) {
+                        int offset = processedTexCoords++ * 2;
+                        float u = mesh.texCoords[offset];
+                        float v = mesh.texCoords[offset + 1];
+                        int index = texCoords.intern(u, v, 0.0f);
+                        if (index > this.uvCount) {
+                            writeTexCoord(u, v);
+                        }
+                        texCoordRemap[processedTexCoords] = index;
+                    }
+                    faceVertices[i] = vertexRemap[vertex];
+                    faceTexCoords[i] = texCoordRemap[uv];
+                }
+
+                writeFace(faceVertices, faceTexCoords, 0, corners, normalRemap[normal], mesh.faceReversed[face]);
+            }
+
+            while (part < mesh.partCount) {
+                beginPart(mesh.partNames[part++]);
+            }
         }
 
-        int writeVertex(float x, float y, float z) {
-            x = finiteOrDefault(x, 0.0f);
-            y = finiteOrDefault(y, 0.0f);
-            z = finiteOrDefault(z, 0.0f);
+        int writeVertex(float x, float y, float z) throws IOException {
+            ensureCapacity(96);
+            put('v');
+            put(' ');
+            putFloat(finiteOrDefault(x, 0.0f));
+            put(' ');
+            putFloat(finiteOrDefault(y, 0.0f));
+            put(' ');
+            putFloat(finiteOrDefault(z, 0.0f));
+            put('\n');
             this.vertexCount++;
-            this.objWriter.printf(Locale.ROOT, "v %.8f %.8f %.8f%n", Float.valueOf(x), Float.valueOf(y), Float.valueOf(z));
             return this.vertexCount;
         }
 
-        int writeTexCoord(float u, float v) {
-            u = finiteOrDefault(u, 0.0f);
-            v = finiteOrDefault(v, 0.0f);
+        int writeTexCoord(float u, float v) throws IOException {
+            ensureCapacity(96);
+            put('v');
+            put('t');
+            put(' ');
+            putFloat(finiteOrDefault(u, 0.0f));
+            put(' ');
+            putFloat(finiteOrDefault(v, 0.0f));
+            put('\n');
             this.uvCount++;
-            this.objWriter.printf(Locale.ROOT, "vt %.8f %.8f%n", Float.valueOf(u), Float.valueOf(v));
             return this.uvCount;
         }
 
-        int writeNormal(float x, float y, float z) {
-            x = finiteOrDefault(x, 0.0f);
-            y = finiteOrDefault(y, 0.0f);
-            z = finiteOrDefault(z, 0.0f);
+        int writeNormal(float x, float y, float z) throws IOException {
+            ensureCapacity(96);
+            put('v');
+            put('n');
+            put(' ');
+            putFloat(finiteOrDefault(x, 0.0f));
+            put(' ');
+            putFloat(finiteOrDefault(y, 0.0f));
+            put(' ');
+            putFloat(finiteOrDefault(z, 0.0f));
+            put('\n');
             this.normalCount++;
-            this.objWriter.printf(Locale.ROOT, "vn %.8f %.8f %.8f%n", Float.valueOf(x), Float.valueOf(y), Float.valueOf(z));
             return this.normalCount;
         }
 
-        void writeFace(int[] vertices, int[] uvs, int normalIndex, boolean reverseWinding) {
-            if (vertices.length != uvs.length) {
-                throw new IllegalArgumentException("Vertex and UV index count mismatch.");
+        void writeFace(int[] vertices, int[] uvs, int start, int end, int normalIndex, boolean reverseWinding) throws IOException {
+            ensureCapacity(2);
+            put('f');
+            for (int i = start; i < end; i++) {
+                int index = reverseWinding ? (end - 1 - (i - start)) : i;
+                ensureCapacity(40);
+                put(' ');
+                putInt(vertices[index]);
+                put('/');
+                putInt(uvs[index]);
+                put('/');
+                putInt(normalIndex);
             }
+            put('\n');
+        }
 
-            StringBuilder builder = new StringBuilder("f");
-            for (int i = 0; i < vertices.length; i++) {
-                int index = reverseWinding ? (vertices.length - 1 - i) : i;
-                builder.append(' ')
-                    .append(vertices[index])
-                    .append('/')
-                    .append(uvs[index])
-                    .append('/')
-                    .append(normalIndex);
+        private void writeLine(String line) throws IOException {
+            byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+            ensureCapacity(bytes.length + 1);
+            if (bytes.length + 1 > this.buffer.length) {
+                this.objOut.write(bytes);
+            } else {
+                System.arraycopy(bytes, 0, this.buffer, this.position, bytes.length);
+                this.position += bytes.length;
+            }
+            put('\n');
+        }
+
+        private void ensureCapacity(int bytes) throws IOException {
+            if (this.position + bytes > this.buffer.length) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            this.objOut.write(this.buffer, 0, this.position);
+            this.position = 0;
+        }
+
+        private void put(char value) {
+            this.buffer[this.position++] = (byte) value;
+        }
+
+        private void putInt(int value) {
+            putLong(value);
+        }
+
+        private void putLong(long value) {
+            if (value < 0) {
+                put('-');
+                value = -value;
+            }
+            int digits = 1;
+            for (long rest = value / 10; rest != 0; rest /= 10) {
+                digits++;
+            }
+            int end = this.position + digits;
+            for (int i = end - 1; i >= this.position; i--) {
+                this.buffer[i] = (byte) ('0' + (value % 10));
+                value /= 10;
+            }
+            this.position = end;
+        }
+
+        private void putFloat(float value) throws IOException {
+            if (!(Math.abs(value) < MAX_FIXED_MAGNITUDE)) {
+                putFormatted(value);
+                return;
+            }
+
+            boolean negative = Float.floatToRawIntBits(value) < 0;
+            long units = fixedUnits(Math.abs((double) value));
+            long whole = units / FIXED_SCALE;
+            long fraction = units % FIXED_SCALE;
+
+            if (this.floatFormat == FloatFormat.COMPACT) {
+                if (negative && units != 0) {
+                    put('-');
+                }
+                putLong(whole);
+                if (fraction == 0) {
+                    return;
+                }
+                int decimals = FIXED_DECIMALS;
+                while (fraction % 10 == 0) {
+                    fraction /= 10;
+                    decimals--;
+                }
+                put('.');
+                putPadded(fraction, decimals);
+                return;
+            }
+
+            if (negative) {
+                put('-');
+            }
+            putLong(whole);
+            put('.');
+            putPadded(fraction, FIXED_DECIMALS);
+        }
+
+        private void putFormatted(float value) throws IOException {
+            String text = String.format(Locale.ROOT, "%.8f", value);
+            if (this.floatFormat == FloatFormat.COMPACT && text.indexOf('.') >= 0) {
+                int end = text.length();
+                while (text.charAt(end - 1) == '0') {
+                    end--;
+                }
+                if (text.charAt(end - 1) == '.') {
+                    end--;
+                }
+                text = text.substring(0, end);
+            }
+
+            ensureCapacity(text.length());
+            for (int i = 0; i < text.length(); i++) {
+                put(text.charAt(i));
+            }
+        }
+
+        private void putPadded(long value, int digits) {
+            int end = this.position + digits;
+            for (int i = end - 1; i >= this.position; i--) {
+                this.buffer[i] = (byte) ('0' + (value % 10));
+                value /= 10;
+            }
+            this.position = end;
+        }
+
+        private static long fixedUnits(double magnitude) {
+            double scaled = magnitude * FIXED_SCALE;
+            if (scaled < 1.0e15) {
+                double floor = Math.floor(scaled);
+                double fraction = scaled - floor;
+                if (Math.abs(fraction - 0.5) > 1.0e-4) {
+                    return (long) floor + (fraction > 0.5 ? 1L : 0L);
+                }
             }
-            this.objWriter.println(builder.toString());
+            return new BigDecimal(Double.toString(magnitude))
+                .setScale(FIXED_DECIMALS, RoundingMode.HALF_UP)
+                .unscaledValue()
+                .longValueExact();
+        }
+
+        void commit() throws IOException {
+            this.committed = true;
+            close();
         }
 
         @Override
-        public void close() {
-            this.objWriter.close();
-            this.mtlWriter.close();
+        public void close() throws IOException {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+
+            try {
+                try {
+                    flush();
+                    this.objOut.close();
+                } finally {
+                    this.mtlWriter.close();
+                }
+                if (this.committed) {
+                    if (this.mtlWriter.checkError()) {
+                        throw new IOException("Failed to write " + this.mtlPath);
+                    }
+                    moveIntoPlace(this.mtlTempPath, this.mtlPath);
+                    moveIntoPlace(this.objTempPath, this.objPath);
+                }
+            } finally {
+                Files.deleteIfExists(this.objTempPath);
+                Files.deleteIfExists(this.mtlTempPath);
+            }
         }
     }
-}
+}
@@ -0,0 +1,83 @@
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+final class VectorVertexKernel implements EntityLayerObjExporter.VertexTransformKernel {
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    @Override
+    public void transformPositions(float[] m, float scaleX, float scaleY, float scaleZ, float[] xs, float[] ys, float[] zs, int count) {
+        int bound = SPECIES.loopBound(count);
+        for (int i = 0; i < bound; i += SPECIES.length()) {
+            FloatVector x = FloatVector.fromArray(SPECIES, xs, i);
+            FloatVector y = FloatVector.fromArray(SPECIES, ys, i);
+            FloatVector z = FloatVector.fromArray(SPECIES, zs, i);
+            row(x, y, z, m[0], m[4], m[8], m[12]).mul(scaleX).intoArray(xs, i);
+            row(x, y, z, m[1], m[5], m[9], m[13]).mul(scaleY).intoArray(ys, i);
+            row(x, y, z, m[2], m[6], m[10], m[14]).mul(scaleZ).intoArray(zs, i);
+        }
+        EntityLayerObjExporter.ScalarVertexKernel.transformPositionRange(m, scaleX, scaleY, scaleZ, xs, ys, zs, bound, count);
+    }
+
+    @Override
+    public void transformNormals(float[] n, boolean normalize, float signX, float signY, float signZ, float[] xs, float[] ys, float[] zs, int count) {
+        int bound = SPECIES.loopBound(count);
+        for (int i = 0; i < bound; i += SPECIES.length()) {
+            FloatVector x = FloatVector.fromArray(SPECIES, xs, i);
+            FloatVector y = FloatVector.fromArray(SPECIES, ys, i);
+            FloatVector z = FloatVector.fromArray(SPECIES, zs, i);
+            FloatVector normalX = x.mul(n[0]).add(y.mul(n[3]).add(z.mul(n[6])));
+            FloatVector normalY = x.mul(n[1]).add(y.mul(n[4]).add(z.mul(n[7])));
+            FloatVector normalZ = x.mul(n[2]).add(y.mul(n[5]).add(z.mul(n[8])));
+            if (normalize) {
+                FloatVector length = normalX.mul(normalX).add(normalY.mul(normalY).add(normalZ.mul(normalZ))).lanewise(VectorOperators.SQRT);
+                FloatVector inverseLength = FloatVector.broadcast(SPECIES, 1.0f).div(length);
+                normalX = normalX.mul(inverseLength);
+                normalY = normalY.mul(inverseLength);
+                normalZ = normalZ.mul(inverseLength);
+            }
+            normalX.mul(signX).intoArray(xs, i);
+            normalY.mul(signY).intoArray(ys, i);
+            normalZ.mul(signZ).intoArray(zs, i);
+        }
+        EntityLayerObjExporter.ScalarVertexKernel.transformNormalRange(n, normalize, signX, signY, signZ, xs, ys, zs, bound, count);
+    }
+
+    @Override
+    public void adjustTexCoords(boolean flipV, boolean clampUv, float[] us, float[] vs, int count) {
+        if (!flipV && !clampUv) {
+            return;
+        }
+
+        int bound = SPECIES.loopBound(count);
+        for (int i = 0; i < bound; i += SPECIES.length()) {
+            FloatVector u = FloatVector.fromArray(SPECIES, us, i);
+            FloatVector v = FloatVector.fromArray(SPECIES, vs, i);
+            if (flipV) {
+                v = FloatVector.broadcast(SPECIES, 1.0f).sub(v);
+            }
+            if (clampUv) {
+                u = clamp01(u);
+                v = clamp01(v);
+            }
+            u.intoArray(us, i);
+            v.intoArray(vs, i);
+        }
+        EntityLayerObjExporter.ScalarVertexKernel.adjustTexCoordRange(flipV, clampUv, us, vs, bound, count);
+    }
+
+    private static FloatVector row(FloatVector x, FloatVector y, FloatVector z, float m0, float m1, float m2, float m3) {
+        return x.mul(m0).add(y.mul(m1).add(z.mul(m2).add(m3)));
+    }
+
+    private static FloatVector clamp01(FloatVector value) {
+        return value
+            .blend(0.0f, value.compare(VectorOperators.LT, 0.0f))
+            .blend(1.0f, value.compare(VectorOperators.GT, 1.0f));
+    }
+
+    @Override
+    public String toString() {
+        return "FloatVector x" + SPECIES.length();
+    }
+}
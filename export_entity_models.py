@@ -277,6 +277,21 @@ def build_parser(default_output_dir: Path, default_libraries_dir: Path) -> argpa
     parser.add_argument("--no-split-cubes", action="store_true", help="Merge cubes per model part instead of splitting per cube.")
     parser.add_argument("--no-clamp-uv", action="store_true", help="Do not clamp UVs to [0, 1] before writing OBJ.")
     parser.add_argument("--scale", type=float, default=1.0, help="Global scale multiplier.")
+    parser.add_argument("--threads", type=int, default=1, help="Number of worker threads used to scan the client jar and export layers.")
+    parser.add_argument("--no-jar-cache", action="store_true", help="Always rescan the client jar instead of using the cached jar index.")
+    parser.add_argument("--incremental", action="store_true", help="Skip layers and textures that are unchanged since the last run (uses export-manifest.tsv).")
+    parser.add_argument("--deterministic", action="store_true", help="Omit the generation timestamp so identical exports produce identical files.")
+    parser.add_argument("--float-format", choices=["fixed", "compact"], default="fixed", help="OBJ number format: fixed 8 decimals or compact (trailing zeros dropped).")
+    parser.add_argument("--dedupe", action="store_true", help="Share identical OBJ positions, UVs and normals instead of writing one per polygon corner.")
+    parser.add_argument("--format", choices=["obj", "glb", "both"], default="obj", help="Model output format.")
+    parser.add_argument("--embed-textures", action="store_true", help="Embed PNG textures inside GLB files instead of referencing them by URI.")
+    parser.add_argument("--vertex-kernel", choices=["scalar", "vector"], default="scalar", help="Vertex transform kernel: scalar loops, or jdk.incubator.vector SIMD (falls back to scalar if the module is unavailable).")
+    parser.add_argument("--dedupe-layers", choices=["off", "mtl", "hardlink"], default="off", help="Write each unique layer mesh once; duplicates get their own MTL plus a shared-geometry.tsv entry, or a hardlinked OBJ.")
+    parser.add_argument("--textures", choices=["referenced", "all", "none"], help="Which entity textures to extract: only those used by exported layers, every tracked texture, or none (default: all, or referenced when --include/--exclude is given).")
+    parser.add_argument("--include", action="append", default=[], metavar="PATTERN", help="Export only layer locations matching this glob (e.g. 'minecraft:boat/*') or 'regex:' pattern. Repeatable.")
+    parser.add_argument("--exclude", action="append", default=[], metavar="PATTERN", help="Skip layer locations matching this glob or 'regex:' pattern. Repeatable.")
+    parser.add_argument("--resume", action="store_true", help="Skip layers recorded as complete in the export journal whose output files are unchanged.")
+    parser.add_argument("--shards", type=int, default=1, help="Split the export across this many concurrent exporter processes, then merge their partial manifests.")
 
     return parser
 
@@ -284,6 +299,7 @@ def build_parser(default_output_dir: Path, default_libraries_dir: Path) -> argpa
 def main() -> int:
     script_dir = Path(__file__).resolve().parent
     exporter_source = script_dir / "EntityLayerObjExporter.java"
+    vector_kernel_source = script_dir / "VectorVertexKernel.java"
     build_dir = script_dir / "build" / "entity-exporter"
     default_output = script_dir / "exports" / "entity-models"
 
@@ -358,9 +374,21 @@ def main() -> int:
         eprint(f"ERROR: javac failed with exit code {compile_result.returncode}.")
         return compile_result.returncode
 
+    java_options: list[str] = []
+    if args.vertex_kernel == "vector":
+        vector_args = ["--add-modules", "jdk.incubator.vector"]
+        vector_result = run(
+            [str(javac_bin), "-encoding", "UTF-8", "-nowarn", *vector_args, "-cp", str(build_dir), "-d", str(build_dir), str(vector_kernel_source)]
+        )
+        if vector_result.returncode == 0:
+            java_options = vector_args
+        else:
+            eprint("WARNING: Could not compile the vector kernel (jdk.incubator.vector missing?). Falling back to the scalar kernel.")
+
     classpath = os.pathsep.join([str(build_dir)] + [str(p) for p in classpath_entries])
     run_args = [
         str(java_bin),
+        *java_options,
         "-cp",
         classpath,
         "EntityLayerObjExporter",
@@ -382,13 +410,66 @@ def main() -> int:
         "false" if args.no_clamp_uv else "true",
         "--scale",
         f"{args.scale:.8g}",
+        "--threads",
+        str(args.threads),
+        "--jar-cache",
+        "false" if args.no_jar_cache else "true",
+        "--incremental",
+        "true" if args.incremental else "false",
+        "--deterministic",
+        "true" if args.deterministic else "false",
+        "--float-format",
+        args.float_format,
+        "--dedupe",
+        "true" if args.dedupe else "false",
+        "--format",
+        args.format,
+        "--embed-textures",
+        "true" if args.embed_textures else "false",
+        "--vertex-kernel",
+        args.vertex_kernel,
+        "--dedupe-layers",
+        args.dedupe_layers,
+        "--resume",
+        "true" if args.resume else "false",
     ]
-
-    oprint("Running exporter...")
-    run_result = run(run_args)
-    if run_result.returncode != 0:
-        eprint(f"ERROR: Exporter failed with exit code {run_result.returncode}.")
-        return run_result.returncode
+    if args.textures:
+        run_args.extend(["--textures", args.textures])
+    for pattern in args.include:
+        run_args.extend(["--include", pattern])
+    for pattern in args.exclude:
+        run_args.extend(["--exclude", pattern])
+
+    if args.shards < 1:
+        eprint("ERROR: --shards must be at least 1.")
+        return 2
+
+    if args.shards == 1:
+        oprint("Running exporter...")
+        run_result = run(run_args)
+        if run_result.returncode != 0:
+            eprint(f"ERROR: Exporter failed with exit code {run_result.returncode}.")
+            return run_result.returncode
+    else:
+        oprint(f"Running exporter in {args.shards} shards...")
+        processes = [
+            subprocess.Popen(run_args + ["--shard", f"{index}/{args.shards}"], text=True)
+            for index in range(1, args.shards + 1)
+        ]
+        shard_codes = [process.wait() for process in processes]
+        for index, code in enumerate(shard_codes, start=1):
+            if code not in (0, 2):
+                eprint(f"ERROR: Exporter shard {index}/{args.shards} failed with exit code {code}.")
+                return code
+
+        oprint("Merging shard manifests...")
+        merge_result = run([str(java_bin), "-cp", classpath, "EntityLayerObjExporter", "--out", str(output_dir), "--merge-shards", str(args.shards)])
+        if merge_result.returncode == 2:
+            eprint(f"ERROR: Exporter failed with exit code {merge_result.returncode}.")
+            return merge_result.returncode
+        if merge_result.returncode != 0:
+            eprint(f"ERROR: Shard merge failed with exit code {merge_result.returncode}.")
+            return merge_result.returncode
 
     if missing_count > 0:
         eprint(